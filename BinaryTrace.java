@@ -0,0 +1,274 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Compact binary trace format, little endian.
+//
+// Header (16 bytes): magic "CSBT", version, flags, address width in bytes (4
+// or 8), one unused byte, then number of records as a long.
+//
+// Plain files keep one column of op code bytes followed by one column of
+// addresses, each column starting 8 byte aligned, so they are read from the
+// mapped file without copying. Delta encoded files keep one varint per record
+// holding the zigzag difference to previous address shifted left by two with
+// the op code on the low bits, they are decoded into arrays when loaded. A
+// difference whose zigzag doesn't fit in 62 bits, a jump of 2^61 or more,
+// gets an escape record instead, DELTA_ESCAPE on the low bits and the op code
+// above, followed by a second varint with the whole zigzag difference.
+class BinaryTrace {
+  static final int MAGIC = 0x54425343; // "CSBT" read as little endian int
+  static final byte VERSION = 1;
+  static final byte FLAG_DELTA = 1;
+  static final int HEADER_BYTES = 16;
+
+  // Op codes as stored in delta records.
+  static final int DELTA_READ = 0;
+  static final int DELTA_WRITE = 1;
+  static final int DELTA_OTHER = 2;
+  static final int DELTA_ESCAPE = 3;
+  // Longest delta record, an escape record and a full 64 bit varint.
+  static final int MAX_DELTA_RECORD_BYTES = 11;
+
+  static boolean isBinaryTrace(FileChannel channel) throws IOException {
+    if (channel.size() < HEADER_BYTES) {
+      return false;
+    }
+    ByteBuffer magic = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+    channel.read(magic, 0);
+    return magic.getInt(0) == MAGIC;
+  }
+
+  static TraceList load(FileChannel channel) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    channel.read(header, 0);
+    byte version = header.get(4);
+    byte flags = header.get(5);
+    int address_width = header.get(6);
+    long records = header.getLong(8);
+    if (version != VERSION || (address_width != 4 && address_width != 8)) {
+      throw new IOException("Unsupported binary trace version " + version + " width " + address_width);
+    }
+    if (records > Integer.MAX_VALUE - 8) {
+      throw new IOException("Binary trace has too many records: " + records);
+    }
+    if ((flags & FLAG_DELTA) != 0) {
+      return loadDelta(channel, (int) records);
+    }
+    return new MappedTraceList(channel, (int) records, address_width);
+  }
+
+  private static TraceList loadDelta(FileChannel channel, int records) throws IOException {
+    TraceList trace_list = new TraceList(records);
+    long position = HEADER_BYTES;
+    long file_size = channel.size();
+    long address = 0;
+    while (trace_list.length < records) {
+      // Maps in windows, a record never spans more than MAX_DELTA_RECORD_BYTES.
+      int window_size = (int) Math.min(TraceLoader.MAP_WINDOW, file_size - position);
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, window_size);
+      boolean last_window = position + window_size == file_size;
+      int limit = last_window ? window_size : window_size - MAX_DELTA_RECORD_BYTES;
+      while (buffer.position() < limit && trace_list.length < records) {
+        long value = readVarint(buffer);
+        int op_code = (int) (value & 3);
+        long zigzag = value >>> 2;
+        if (op_code == DELTA_ESCAPE) {
+          op_code = (int) zigzag;
+          zigzag = readVarint(buffer);
+        }
+        address += (zigzag >>> 1) ^ -(zigzag & 1);
+        trace_list.add(fromDeltaOpCode(op_code), address);
+      }
+      if (buffer.position() == 0 && trace_list.length < records) {
+        throw new IOException("Truncated binary trace");
+      }
+      position += buffer.position();
+    }
+    return trace_list;
+  }
+
+  private static long readVarint(ByteBuffer buffer) throws IOException {
+    long value = 0;
+    int shift = 0;
+    byte b;
+    do {
+      if (!buffer.hasRemaining()) {
+        throw new IOException("Truncated binary trace");
+      }
+      b = buffer.get();
+      value |= (long) (b & 0x7f) << shift;
+      shift += 7;
+    } while (b < 0);
+    return value;
+  }
+
+  // Writes trace in binary format, returns number of bytes written.
+  static long write(TraceList trace_list, Path path, boolean delta) throws IOException {
+    int address_width = 4;
+    for (int i = 0; i < trace_list.length; i++) {
+      if ((trace_list.address(i) >>> 32) != 0) {
+        address_width = 8;
+        break;
+      }
+    }
+
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+      buffer.putInt(MAGIC);
+      buffer.put(VERSION);
+      buffer.put(delta ? FLAG_DELTA : 0);
+      buffer.put((byte) address_width);
+      buffer.put((byte) 0);
+      buffer.putLong(trace_list.length);
+
+      if (delta) {
+        long previous = 0;
+        for (int i = 0; i < trace_list.length; i++) {
+          if (buffer.remaining() < MAX_DELTA_RECORD_BYTES) {
+            flush(channel, buffer);
+          }
+          long difference = trace_list.address(i) - previous;
+          previous = trace_list.address(i);
+          long zigzag = (difference << 1) ^ (difference >> 63);
+          int op_code = toDeltaOpCode(trace_list.opCode(i));
+          if ((zigzag >>> 62) == 0) {
+            putVarint(buffer, (zigzag << 2) | op_code);
+          } else {
+            putVarint(buffer, ((long) op_code << 2) | DELTA_ESCAPE);
+            putVarint(buffer, zigzag);
+          }
+        }
+      } else {
+        for (int i = 0; i < trace_list.length; i++) {
+          if (!buffer.hasRemaining()) {
+            flush(channel, buffer);
+          }
+          buffer.put(trace_list.opCode(i));
+        }
+        pad(channel, buffer);
+        for (int i = 0; i < trace_list.length; i++) {
+          if (buffer.remaining() < 8) {
+            flush(channel, buffer);
+          }
+          if (address_width == 4) {
+            buffer.putInt((int) trace_list.address(i));
+          } else {
+            buffer.putLong(trace_list.address(i));
+          }
+        }
+      }
+      flush(channel, buffer);
+      return channel.size();
+    }
+  }
+
+  // Column start in a plain file, columns are 8 byte aligned.
+  static long alignedOffset(long offset) {
+    return (offset + 7) & ~7L;
+  }
+
+  private static void pad(FileChannel channel, ByteBuffer buffer) throws IOException {
+    long written = channel.position() + buffer.position();
+    for (long i = written; i < alignedOffset(written); i++) {
+      if (!buffer.hasRemaining()) {
+        flush(channel, buffer);
+      }
+      buffer.put((byte) 0);
+    }
+  }
+
+  private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  private static void putVarint(ByteBuffer buffer, long value) {
+    while ((value & ~0x7fL) != 0) {
+      buffer.put((byte) ((value & 0x7f) | 0x80));
+      value >>>= 7;
+    }
+    buffer.put((byte) value);
+  }
+
+  private static int toDeltaOpCode(byte op_code) {
+    if (op_code == Cache.OP_READ) {
+      return DELTA_READ;
+    } else if (op_code == Cache.OP_WRITE) {
+      return DELTA_WRITE;
+    }
+    return DELTA_OTHER;
+  }
+
+  private static byte fromDeltaOpCode(int op_code) {
+    if (op_code == DELTA_READ) {
+      return Cache.OP_READ;
+    } else if (op_code == DELTA_WRITE) {
+      return Cache.OP_WRITE;
+    }
+    return Cache.OP_OTHER;
+  }
+}
+
+// Trace read in place from the columns of a plain binary trace. Columns are
+// mapped in chunks so files bigger than a single mapping still work.
+class MappedTraceList extends TraceList {
+  static final int CHUNK_SHIFT = 27;
+  static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+
+  ByteBuffer[] op_chunks;
+  ByteBuffer[] address_chunks;
+  boolean wide_addresses;
+
+  MappedTraceList(FileChannel channel, int records, int address_width) throws IOException {
+    this.length = records;
+    this.wide_addresses = address_width == 8;
+    int chunks = (int) (((long) records + CHUNK_MASK) >>> CHUNK_SHIFT);
+    this.op_chunks = new ByteBuffer[chunks];
+    this.address_chunks = new ByteBuffer[chunks];
+
+    long op_column = BinaryTrace.HEADER_BYTES;
+    long address_column = BinaryTrace.alignedOffset(op_column + records);
+    if (channel.size() < address_column + (long) records * address_width) {
+      throw new IOException("Truncated binary trace");
+    }
+    for (int chunk = 0; chunk < chunks; chunk++) {
+      long first = (long) chunk << CHUNK_SHIFT;
+      long chunk_records = Math.min(1L << CHUNK_SHIFT, records - first);
+      this.op_chunks[chunk] = channel.map(FileChannel.MapMode.READ_ONLY, op_column + first, chunk_records);
+      this.address_chunks[chunk] = channel
+          .map(FileChannel.MapMode.READ_ONLY, address_column + first * address_width, chunk_records * address_width)
+          .order(ByteOrder.LITTLE_ENDIAN);
+    }
+  }
+
+  @Override
+  public byte opCode(int trace_index) {
+    return this.op_chunks[trace_index >>> CHUNK_SHIFT].get(trace_index & CHUNK_MASK);
+  }
+
+  @Override
+  public long address(int trace_index) {
+    ByteBuffer chunk = this.address_chunks[trace_index >>> CHUNK_SHIFT];
+    if (this.wide_addresses) {
+      return chunk.getLong((trace_index & CHUNK_MASK) << 3);
+    }
+    return chunk.getInt((trace_index & CHUNK_MASK) << 2) & 0xffffffffL;
+  }
+
+  @Override
+  public void add(byte op_code, long address) {
+    throw new UnsupportedOperationException("Mapped traces are read only");
+  }
+
+  @Override
+  public void trim() {
+  }
+}
@@ -0,0 +1,66 @@
+import java.util.Arrays;
+
+// Distinct blocks of a trace, numbered densely so per block state can live in
+// plain arrays indexed by id instead of hash maps keyed by address. Built
+// walking the trace backwards once, ids going in order of last access, and
+// shared by everything simulating the trace with the same block size, see
+// TraceList.blockDictionary.
+class BlockDictionary {
+  final int block_offset;
+  // Id of the block of every trace position.
+  final int[] block_ids;
+  // Block address of every id.
+  final long[] blocks;
+  final int count;
+
+  private final LongIntHashMap ids;
+  private NextUseTable next_use_table;
+
+  BlockDictionary(TraceList trace_list, int block_offset) {
+    this.block_offset = block_offset;
+    this.block_ids = new int[trace_list.length];
+    this.ids = new LongIntHashMap(1024);
+    long[] blocks = new long[1024];
+
+    for (int i = trace_list.length - 1; i >= 0; i--) {
+      long block_address = trace_list.address(i) >>> block_offset;
+      int block_id = this.ids.get(block_address);
+      if (block_id == LongIntHashMap.NO_VALUE) {
+        block_id = this.ids.size();
+        this.ids.put(block_address, block_id);
+        if (block_id == blocks.length) {
+          blocks = Arrays.copyOf(blocks, blocks.length * 2);
+        }
+        blocks[block_id] = block_address;
+      }
+      this.block_ids[i] = block_id;
+    }
+    this.count = this.ids.size();
+    this.blocks = Arrays.copyOf(blocks, this.count);
+  }
+
+  // Id of the block, NO_VALUE when the trace never accesses it.
+  int id(long block_address) {
+    return this.ids.get(block_address);
+  }
+
+  // Id of the block, which is usually the one accessed at trace_index so the
+  // map is only looked up when it isn't.
+  int id(long block_address, int trace_index) {
+    if (trace_index >= 0 && trace_index < this.block_ids.length) {
+      int block_id = this.block_ids[trace_index];
+      if (this.blocks[block_id] == block_address) {
+        return block_id;
+      }
+    }
+    return this.ids.get(block_address);
+  }
+
+  // Next uses of every position, built on first call for all levels at once.
+  synchronized NextUseTable nextUseTable() {
+    if (this.next_use_table == null) {
+      this.next_use_table = new NextUseTable(this);
+    }
+    return this.next_use_table;
+  }
+}
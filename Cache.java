@@ -1,171 +1,526 @@
+import java.io.IOException;
 import java.lang.Math;
 import java.util.Arrays;
 
 public class Cache {
-  public int block_size;
-  public int cache_size;
-  public int cache_assoc;
-  public int replacement_policy;
-  public int inclusion_property;
-  // Each instance of cache keeps track of its record
-  public int read_hits = 0;
-  public int read_misses = 0;
-  public int write_hits = 0;
-  public int write_misses = 0;
-  public int write_back = 0;
-  public int mem_trafic = 0;
-
-  public int sets;
-  public int block_offset;
-  public int index_offset;
-
-  public int trace_index;
-
-  String[][] cache_memory;
-  TraceObject trace_list[];
+  // Op codes, "x" is only issued internally to invalidate blocks on inclusive
+  // caches. Anything else in the trace is kept as OP_OTHER.
+  static final byte OP_READ = 'r';
+  static final byte OP_WRITE = 'w';
+  static final byte OP_INVALIDATE = 'x';
+  static final byte OP_OTHER = '?';
+  // Block fetched ahead by a prefetcher, filled like a read without counting
+  // as an access.
+  static final byte OP_PREFETCH = 'p';
+  // Requests a private cache of a multi-core run logs besides its misses, see
+  // MultiCoreSimulation: a write to a clean line, a dirty victim written back
+  // and a clean victim dropped.
+  static final byte OP_UPGRADE = 'u';
+  static final byte OP_WRITEBACK = 'b';
+  static final byte OP_EVICT = 'e';
+
+  // Each line is packed in a long, tag on the upper bits followed by dirty and
+  // valid bits. An empty line is simply 0.
+  static final long LINE_VALID = 1L;
+  static final long LINE_DIRTY = 2L;
+  static final int LINE_TAG_SHIFT = 2;
+
+  // Configuration is fixed once created, so caches of different simulations
+  // can run on separate threads sharing only the read only trace.
+  public final int block_size;
+  public final int cache_size;
+  public final int cache_assoc;
+  public final ReplacementPolicyProvider replacement_policy;
+  public final int inclusion_property;
+  // Each instance of cache keeps track of its record, only touched by the
+  // thread running its simulation.
+  long read_hits = 0;
+  long read_misses = 0;
+  long write_hits = 0;
+  long write_misses = 0;
+  long write_back = 0;
+  long mem_trafic = 0;
+  // Per set, windowed and miss class statistics, null unless asked for so
+  // plain runs only pay for the checks.
+  CacheMetrics metrics = null;
+  // Fetches blocks ahead of demand accesses, null for none.
+  Prefetcher prefetcher = null;
+
+  public final int sets;
+  public final int block_offset;
+  public final int index_offset;
+  // Shift to get the tag and mask to get the index once shifted by block offset.
+  public final int tag_shift;
+  public final long index_mask;
+  // Top address bits the tag loses when shifted past the state bits, only
+  // levels whose block size times sets is below 1 << LINE_TAG_SHIFT have any.
+  // Accesses with any of them set are refused, see checkTagBits.
+  final long lost_address_bits;
+
+  // Lines are laid out set by set, way of a set is at set * cache_assoc + way.
+  final LineStore cache_memory;
+  // Whole set scans for the hit check, with the lines they go through when
+  // kept on the heap. Null for the loop in findWay.
+  SetScan set_scan = null;
+  long[] scanned_lines = null;
   LRUInterface lru_object;
+  // Block address to way, only kept in high associativity mode.
+  LongIntHashMap tag_index = null;
   Cache prevCache = null;
   Cache nextCache = null;
+  // Private caches of a multi-core run log what they ask of the shared levels
+  // here instead of sending it, see MultiCoreSimulation. The shared level
+  // below them has them all as private_caches for back invalidations.
+  TraceList coherence_requests = null;
+  Cache[] private_caches = null;
+  // While the shared levels handle a miss of this private cache, the block
+  // its line replaced still counts as cached and the block missed as not yet
+  // cached, as in a single hierarchy until the next level returns. Set by
+  // MultiCoreSimulation.
+  boolean replacing = false;
+  long replaced_block = 0;
+  long replacing_address = 0;
+  // Set when levels run on their own threads, see PipelinedHierarchy. Events
+  // for a neighbour level then go through these rings instead of a call.
+  EventRing to_next = null;
+  EventRing from_next = null;
+  EventRing to_previous = null;
+  EventRing from_previous = null;
+  // Events sent down on the current access still to be acknowledged.
+  private int pending_acks = 0;
+
+  public Cache(int block_size, int cache_size, int cache_assoc, String replacement_policy, int inclusion_property,
+      TraceList trace_list) {
+    this(block_size, cache_size, cache_assoc, replacement_policy, inclusion_property, trace_list, 0);
+  }
+
+  public Cache(int block_size, int cache_size, int cache_assoc, String replacement_policy, int inclusion_property,
+      TraceList trace_list, int lookahead) {
+    this(block_size, cache_size, cache_assoc, replacement_policy, inclusion_property, trace_list, lookahead, false);
+  }
 
-  public Cache(int block_size, int cache_size, int cache_assoc, int replacement_policy, int inclusion_property,
-      TraceObject trace_list[]) {
+  // Only Optimal looks at the trace. With a lookahead it sees that many
+  // accesses ahead instead, fed through WindowedOptimalLRU.lookAhead, and the
+  // trace may be null. Off heap, lines and the policy state when the policy
+  // allows it are kept outside the Java heap, for caches of many gigabytes.
+  public Cache(int block_size, int cache_size, int cache_assoc, String replacement_policy, int inclusion_property,
+      TraceList trace_list, int lookahead, boolean off_heap) {
     this.block_size = block_size;
     this.cache_size = cache_size;
     this.cache_assoc = cache_assoc;
-    this.replacement_policy = replacement_policy;
+    // Policies go by name, 0, 1 and 2 still stand for LRU, PLRU and Optimal.
+    this.replacement_policy = ReplacementPolicies.find(replacement_policy);
+    if (this.replacement_policy == null) {
+      throw new IllegalArgumentException("Unsupported Replacement Policy, 0 for LRU, 1 for PLRU, 2 for Optimal, or one"
+          + " of " + ReplacementPolicies.names() + ".");
+    }
     this.inclusion_property = inclusion_property;
-    this.trace_list = trace_list;
 
     // Calculate set size, block offset, and index offset. Tag is assumed to be
     // remaining bits.
     this.sets = cache_size / (block_size * cache_assoc);
     this.block_offset = (int) (Math.log(block_size) / Math.log(2));
     this.index_offset = (int) (Math.log(sets) / Math.log(2));
+    this.tag_shift = this.block_offset + this.index_offset;
+    this.index_mask = this.sets - 1;
 
     // Check for set as power of 2
     if ((this.sets & this.sets - 1) != 0 || this.sets < 1) {
-      System.out.println("Number of sets must be power of 2 and at least 1");
-      System.exit(0);
-    }
-
-    // 0 for LRU, 1 for PLRU, 2 for Optimal.
-    switch (replacement_policy) {
-    case 0:
-      this.lru_object = new BasicLRU(this.cache_assoc, this.sets);
-      break;
-    case 1:
-      this.lru_object = new PseudoLRU(this.cache_assoc, this.sets);
-      break;
-    case 2:
-      this.lru_object = new OptimalLRU(this.cache_assoc, this.sets, this.trace_list);
-      break;
-    default:
-      System.out.println("Unsupported Replacement Policy, 0 for LRU, 1 for PLRU, 2 for Optimal.");
-      System.exit(0);
+      throw new IllegalArgumentException("Number of sets must be power of 2 and at least 1");
+    }
+    this.lost_address_bits = this.tag_shift < LINE_TAG_SHIFT ? -1L << (64 - LINE_TAG_SHIFT + this.tag_shift) : 0;
+
+    if (off_heap) {
+      this.lru_object = this.replacement_policy.createOffHeap(this.cache_assoc, this.sets, this.block_offset,
+          trace_list, lookahead);
+    } else {
+      this.lru_object = this.replacement_policy.create(this.cache_assoc, this.sets, this.block_offset, trace_list,
+          lookahead);
     }
 
     // Initiates cache memory where we keep our records.
-    this.cache_memory = new String[this.cache_assoc][this.sets];
+    this.cache_memory = LineStore.create(this.sets * this.cache_assoc, off_heap);
   }
 
-  public String checkCache(int trace_index, String op_code, String binary_address) {
-    if (this.trace_list[trace_index] == null) {
-      return null;
+  private void sendNext(int trace_index, byte op_code, long address) {
+    if (this.to_next == null) {
+      this.nextCache.checkCache(trace_index, op_code, address);
+    } else {
+      this.to_next.put(trace_index, op_code, address);
+      if (this.inclusion_property == 1) {
+        this.pending_acks++;
+      }
     }
-    if (op_code == null) {
-      op_code = this.trace_list[trace_index].op_code;
+  }
+
+  private void sendPrevious(int trace_index, byte op_code, long address) {
+    if (this.private_caches != null) {
+      for (Cache private_cache : this.private_caches) {
+        private_cache.checkCache(trace_index, op_code, address);
+      }
+    } else if (this.to_previous == null) {
+      this.prevCache.checkCache(trace_index, op_code, address);
+    } else {
+      this.to_previous.put(trace_index, op_code, address);
     }
-    if (binary_address == null) {
-      binary_address = this.trace_list[trace_index].binary_address;
+  }
+
+  // Applies invalidations coming up until the next level handled every event
+  // sent on this access, as if it had been called directly.
+  private void awaitNext() {
+    while (this.pending_acks > 0) {
+      this.from_next.take();
+      if (this.from_next.taken_op_code == EventRing.OP_ACK) {
+        this.pending_acks--;
+      } else {
+        checkCache(this.from_next.taken_trace_index, this.from_next.taken_op_code, this.from_next.taken_address);
+      }
     }
+  }
 
-    // Get index and tag, we don't care for block offset in this project.
-    String address_offset = binary_address.substring(31 - this.block_offset);
-    String address_index = binary_address.substring(31 - (this.index_offset + this.block_offset),
-        31 - this.block_offset);
-    String address_tag = binary_address.substring(0, 31 - (this.index_offset + this.block_offset));
-
-    // Converts binary address_index to an integer number since we will use it as an
-    // index.
-    int address_index_integer = 0;
-    if (address_index.length() == 0) {
-      address_index_integer = 0;
+  // Accounts in bulk for a run of accesses right after an access to the same
+  // block, trace_index being the last of them. Nothing else reached this cache
+  // in between, so they all hit that line. The policy is told about them at
+  // once, see LRUInterface.repeatAccess.
+  void repeatHits(int trace_index, long address, int accesses, int reads, int writes) {
+    this.read_hits += reads;
+    this.write_hits += writes;
+    int address_index = (int) ((address >>> this.block_offset) & this.index_mask);
+    long block_address = address >>> this.block_offset;
+    int set_base = address_index * this.cache_assoc;
+    int assoc_index = findWay(set_base, address >>> this.tag_shift, block_address);
+    if (writes > 0) {
+      long line = cache_memory.get(set_base + assoc_index);
+      if (this.coherence_requests != null && (line & LINE_DIRTY) == 0) {
+        this.coherence_requests.add(OP_UPGRADE, address);
+      }
+      cache_memory.set(set_base + assoc_index, line | LINE_DIRTY);
+    }
+    lru_object.repeatAccess(assoc_index, address_index, trace_index, block_address, accesses);
+  }
+
+  // Switches to a hash index for tag lookup and, for LRU, a linked recency
+  // list, so accesses don't scan every way of a set. Same results, meant for
+  // fully associative or very high associativity caches. Off heap levels keep
+  // both off the heap too. Must be called before the first access.
+  public void useHighAssociativityMode() {
+    this.tag_index = newTagIndex();
+    if (this.lru_object instanceof BasicLRU) {
+      this.lru_object = new LinkedLRU(this.cache_assoc, this.sets);
+    } else if (this.lru_object instanceof OffHeapLRU) {
+      this.lru_object = new OffHeapLinkedLRU(this.cache_assoc, this.sets);
+    }
+  }
+
+  // Empty tag index with room for every line, stored where the lines are.
+  LongIntHashMap newTagIndex() {
+    int lines = this.sets * this.cache_assoc;
+    return this.cache_memory instanceof HeapLineStore ? new LongIntHashMap(lines) : new OffHeapLongIntHashMap(lines);
+  }
+
+  // Scans whole sets with set_scan for the hit check and, for LRU, the victim
+  // search. Lines must be on the heap and the hash index not in use, else
+  // nothing changes. Must be called before the first access.
+  public void useSetScan(SetScan set_scan) {
+    if (!(this.cache_memory instanceof HeapLineStore) || this.tag_index != null) {
+      return;
+    }
+    this.set_scan = set_scan;
+    this.scanned_lines = ((HeapLineStore) this.cache_memory).lines;
+    if (this.lru_object instanceof BasicLRU) {
+      ((BasicLRU) this.lru_object).set_scan = set_scan;
+    }
+  }
+
+  // Whether the block of address is cached.
+  boolean holds(long address) {
+    int set_base = (int) ((address >>> this.block_offset) & this.index_mask) * this.cache_assoc;
+    return findWay(set_base, address >>> this.tag_shift, address >>> this.block_offset) >= 0;
+  }
+
+  // Reads a block for a prefetcher that keeps it aside, from the next level
+  // or from memory.
+  void fetchBelow(int trace_index, long address) {
+    if (this.nextCache == null) {
+      this.mem_trafic++;
+      return;
+    }
+    sendNext(trace_index, OP_PREFETCH, address);
+    if (this.pending_acks > 0) {
+      awaitNext();
+    }
+  }
+
+  // Another core of a multi-core run asks for the block of address, to write
+  // it when invalidate is set, else to read it. The line is dropped in the
+  // first case and loses its dirty bit in the second, as the caller writes it
+  // back. Returns the line as it was, 0 when the block wasn't cached.
+  long snoop(long address, boolean invalidate) {
+    int address_index = (int) ((address >>> this.block_offset) & this.index_mask);
+    long block_address = address >>> this.block_offset;
+    int set_base = address_index * this.cache_assoc;
+    int assoc_index = findWay(set_base, address >>> this.tag_shift, block_address);
+    if (assoc_index < 0) {
+      return 0;
+    }
+    long line = cache_memory.get(set_base + assoc_index);
+    if (invalidate) {
+      cache_memory.set(set_base + assoc_index, 0);
+      if (this.tag_index != null) {
+        this.tag_index.remove(block_address);
+      }
+      lru_object.resetTag(assoc_index, address_index);
+    } else {
+      cache_memory.set(set_base + assoc_index, line & ~LINE_DIRTY);
+    }
+    return line;
+  }
+
+  // Back invalidation of the block a private cache is replacing, see
+  // replacing. A single hierarchy would find it in the way being refilled and
+  // reset that way, which then gets the new line all the same.
+  private void invalidateReplaced(int address_index, int set_base) {
+    this.replacing = false;
+    this.mem_trafic++;
+    int assoc_index = findWay(set_base, this.replacing_address >>> this.tag_shift,
+        this.replacing_address >>> this.block_offset);
+    if (assoc_index >= 0) {
+      lru_object.resetTag(assoc_index, address_index);
+    }
+  }
+
+  // Lines of a level with lost address bits can't tell apart addresses that
+  // differ only in them, and those are too high for traces of real programs.
+  private void checkTagBits(long address) {
+    if ((address & this.lost_address_bits) != 0) {
+      throw new IllegalStateException("Address " + Long.toHexString(address) + " is too high for a level of "
+          + this.block_size + " byte blocks and " + this.sets + " sets");
+    }
+  }
+
+  // Way holding the block in its set, -1 when it is not cached.
+  private int findWay(int set_base, long address_tag, long block_address) {
+    if (this.tag_index != null) {
+      int assoc_index = this.tag_index.get(block_address);
+      return assoc_index == LongIntHashMap.NO_VALUE ? -1 : assoc_index;
+    }
+    if (this.set_scan != null) {
+      return this.set_scan.findLine(this.scanned_lines, set_base, this.cache_assoc,
+          (address_tag << LINE_TAG_SHIFT) | LINE_VALID);
+    }
+    for (int assoc_index = 0; assoc_index < this.cache_assoc; assoc_index++) {
+      long line = cache_memory.get(set_base + assoc_index);
+      if ((line & LINE_VALID) != 0 && (line >>> LINE_TAG_SHIFT) == address_tag) {
+        return assoc_index;
+      }
+    }
+    return -1;
+  }
+
+  // Functional warming, see SampledSimulation. Leaves lines and replacement
+  // state as checkCache would, without counting anything. Levels with a
+  // prefetcher or metrics, or with neighbours they don't call directly, go
+  // through checkCache and the caller drops their counts.
+  void warm(int trace_index, byte op_code, long address) {
+    if (this.prefetcher != null || this.metrics != null || this.to_next != null || this.to_previous != null
+        || this.coherence_requests != null || this.private_caches != null) {
+      checkCache(trace_index, op_code, address);
+      return;
+    }
+    checkTagBits(address);
+    int address_index = (int) ((address >>> this.block_offset) & this.index_mask);
+    long address_tag = address >>> this.tag_shift;
+    long block_address = address >>> this.block_offset;
+    int set_base = address_index * this.cache_assoc;
+
+    int assoc_index = findWay(set_base, address_tag, block_address);
+    if (assoc_index >= 0) {
+      if (op_code == OP_INVALIDATE) {
+        cache_memory.set(set_base + assoc_index, 0);
+        if (this.tag_index != null) {
+          this.tag_index.remove(block_address);
+        }
+        lru_object.resetTag(assoc_index, address_index);
+        return;
+      } else if (op_code == OP_WRITE) {
+        cache_memory.set(set_base + assoc_index, cache_memory.get(set_base + assoc_index) | LINE_DIRTY);
+      }
+      lru_object.cacheAccess(assoc_index, address_index, trace_index, block_address);
+      return;
+    }
+    if (op_code == OP_INVALIDATE) {
+      return;
+    }
+
+    assoc_index = lru_object.getLRU(address_index);
+    lru_object.fill(assoc_index, address_index, trace_index, block_address);
+    long line = cache_memory.get(set_base + assoc_index);
+    if ((line & LINE_DIRTY) != 0) {
+      long evicted_address = ((line >>> LINE_TAG_SHIFT) << this.tag_shift)
+          | (address & ((1L << this.tag_shift) - 1));
+      if (this.nextCache != null) {
+        this.nextCache.warm(trace_index, OP_WRITE, evicted_address);
+      }
+      if (this.inclusion_property == 1 && this.prevCache != null) {
+        this.prevCache.warm(trace_index, OP_INVALIDATE, evicted_address);
+      }
+    }
+    if (this.nextCache != null) {
+      this.nextCache.warm(trace_index, OP_READ, address);
+    }
+
+    if (this.tag_index != null) {
+      long victim = cache_memory.get(set_base + assoc_index);
+      if ((victim & LINE_VALID) != 0) {
+        this.tag_index.remove(((victim >>> LINE_TAG_SHIFT) << this.index_offset) | address_index);
+      }
+      this.tag_index.put(block_address, assoc_index);
+    }
+    if (op_code == OP_READ) {
+      cache_memory.set(set_base + assoc_index, (address_tag << LINE_TAG_SHIFT) | LINE_VALID);
     } else {
-      address_index_integer = Integer.parseInt(address_index, 2);
+      cache_memory.set(set_base + assoc_index, (address_tag << LINE_TAG_SHIFT) | LINE_DIRTY | LINE_VALID);
     }
+  }
+
+  public void checkCache(int trace_index, byte op_code, long address) {
+    checkTagBits(address);
+    // Get index and tag, we don't care for block offset in this project.
+    int address_index = (int) ((address >>> this.block_offset) & this.index_mask);
+    long address_tag = address >>> this.tag_shift;
+    long block_address = address >>> this.block_offset;
+    int set_base = address_index * this.cache_assoc;
     int assoc_index;
 
-    if (op_code.equals("r")) {
+    if (op_code == OP_READ) {
       this.read_hits++;
-    } else if (op_code.equals("w")) {
+    } else if (op_code == OP_WRITE) {
       this.write_hits++;
     }
 
     // Check for existance of tag, if it exists, ends.
-    for (assoc_index = 0; assoc_index < this.cache_assoc; assoc_index++) {
-      if (cache_memory[assoc_index][address_index_integer] != null
-          && cache_memory[assoc_index][address_index_integer].substring(1).compareTo(address_tag) == 0) {
-        if (op_code.equals("x")) {
-          this.mem_trafic++;
-          cache_memory[assoc_index][address_index_integer] = null;
-          lru_object.resetTag(assoc_index, address_index_integer);
-          return null;
-        } else if (op_code.equals("w")) {
-          // Writes to existing indexes makes it dirty
-          cache_memory[assoc_index][address_index_integer] = "1" + address_tag;
+    assoc_index = findWay(set_base, address_tag, block_address);
+    if (assoc_index >= 0) {
+      if (op_code == OP_INVALIDATE) {
+        if (this.replacing && block_address == this.replacing_address >>> this.block_offset) {
+          return;
+        }
+        this.mem_trafic++;
+        cache_memory.set(set_base + assoc_index, 0);
+        if (this.tag_index != null) {
+          this.tag_index.remove(block_address);
+        }
+        lru_object.resetTag(assoc_index, address_index);
+        return;
+      } else if (op_code == OP_WRITE) {
+        // Writes to existing indexes makes it dirty
+        long line = cache_memory.get(set_base + assoc_index);
+        if (this.coherence_requests != null && (line & LINE_DIRTY) == 0) {
+          this.coherence_requests.add(OP_UPGRADE, address);
         }
-        // Every access must be registered in LRU policy.
-        lru_object.cacheAccess(assoc_index, address_index_integer, trace_index, address_tag + address_index);
-        // Hits do not cascade, so we end.
-        return null;
+        cache_memory.set(set_base + assoc_index, line | LINE_DIRTY);
+      } else if (op_code == OP_PREFETCH) {
+        return;
       }
+      if (this.metrics != null) {
+        this.metrics.hit(address_index, block_address);
+      }
+      // Every access must be registered in LRU policy.
+      lru_object.cacheAccess(assoc_index, address_index, trace_index, block_address);
+      if (this.prefetcher != null) {
+        this.prefetcher.hit(trace_index, set_base + assoc_index, block_address);
+      }
+      // Hits do not cascade, so we end.
+      return;
     }
-    if (op_code.equals("x")) {
-      return null;
+    if (op_code == OP_INVALIDATE) {
+      if (this.replacing && block_address == this.replaced_block) {
+        invalidateReplaced(address_index, set_base);
+      }
+      return;
     }
-    // At this point, a miss has occurred
-    if (op_code.equals("r")) {
+    // At this point, a miss has occurred, unless a stream buffer holds the
+    // block and only the line is left to fill.
+    boolean fetched = this.prefetcher != null && op_code != OP_PREFETCH && this.prefetcher.take(block_address);
+    if (fetched || op_code == OP_PREFETCH) {
+      // Not a demand miss.
+    } else if (op_code == OP_READ) {
       this.read_misses++;
     } else {
       this.write_misses++;
     }
+    if (this.metrics != null) {
+      this.metrics.miss(address_index, block_address);
+    }
 
     // Read and write misses will trigger a write.
-    assoc_index = lru_object.getLRU(address_index_integer);
-    lru_object.cacheAccess(assoc_index, address_index_integer, trace_index, address_tag + address_index);
-
-    if (cache_memory[assoc_index][address_index_integer] != null) {
-      // Check for dirty bit bit.
-      char first_bit = cache_memory[assoc_index][address_index_integer].charAt(0);
-      if (first_bit == '1') {
-        // If bit is dirty, trigger write back
-        this.write_back++;
-        // Write back triggers a write to next level cache or memory.
-        String current_tag = cache_memory[assoc_index][address_index_integer].substring(1);
-        if (this.nextCache != null) {
-          this.nextCache.checkCache(trace_index, "w", current_tag + address_index + address_offset);
-        }
-        // for inclusive, must invalidate previous cache
-        if (this.inclusion_property == 1 && this.prevCache != null) {
-          this.prevCache.checkCache(trace_index, "x", current_tag + address_index + address_offset);
-        }
+    assoc_index = lru_object.getLRU(address_index);
+    lru_object.fill(assoc_index, address_index, trace_index, block_address);
+
+    long line = cache_memory.get(set_base + assoc_index);
+    if (this.metrics != null && (line & LINE_VALID) != 0) {
+      this.metrics.eviction(address_index);
+    }
+    if (this.prefetcher != null) {
+      this.prefetcher.replace(set_base + assoc_index, line, address_index, op_code == OP_PREFETCH);
+    }
+    // Check for dirty bit bit.
+    if ((line & LINE_DIRTY) != 0) {
+      // If bit is dirty, trigger write back
+      this.write_back++;
+      // Write back triggers a write to next level cache or memory, the evicted
+      // block keeps the offset of current address.
+      long evicted_address = ((line >>> LINE_TAG_SHIFT) << this.tag_shift)
+          | (address & ((1L << this.tag_shift) - 1));
+      if (this.nextCache != null) {
+        sendNext(trace_index, OP_WRITE, evicted_address);
+      }
+      // for inclusive, must invalidate previous cache
+      if (this.inclusion_property == 1 && (this.prevCache != null || this.private_caches != null)) {
+        sendPrevious(trace_index, OP_INVALIDATE, evicted_address);
       }
     }
 
-    // Read/write miss cascade to lower cache as read.
-    if (this.nextCache != null) {
-      this.nextCache.checkCache(trace_index, "r", null);
+    // Private caches log the victim and the miss, the shared levels see them
+    // once the quantum is over.
+    if (this.coherence_requests != null) {
+      if ((line & LINE_VALID) != 0) {
+        long victim_address = ((line >>> LINE_TAG_SHIFT) << this.tag_shift)
+            | (address & ((1L << this.tag_shift) - 1));
+        this.coherence_requests.add((line & LINE_DIRTY) != 0 ? OP_WRITEBACK : OP_EVICT, victim_address);
+      }
+      this.coherence_requests.add(op_code, address);
     }
 
-    // "dirty_indicator" + "tag"
-    // Since we are doing an eviction, new bit is not dirty.
-    if (op_code.equals("r")) {
-      cache_memory[assoc_index][address_index_integer] = "0" + address_tag;
-    } else {
-      cache_memory[assoc_index][address_index_integer] = "1" + address_tag;
+    // Read/write miss cascade to lower cache as read, prefetches go on as
+    // prefetches and are read from memory past the last level.
+    if (this.nextCache != null && !fetched) {
+      sendNext(trace_index, op_code == OP_PREFETCH ? OP_PREFETCH : OP_READ, address);
+    } else if (this.nextCache == null && op_code == OP_PREFETCH) {
+      this.mem_trafic++;
+    }
+    if (this.pending_acks > 0) {
+      awaitNext();
     }
 
-    return null;
+    // Victim leaves the index unless a back invalidation already removed it.
+    if (this.tag_index != null) {
+      long victim = cache_memory.get(set_base + assoc_index);
+      if ((victim & LINE_VALID) != 0) {
+        this.tag_index.remove(((victim >>> LINE_TAG_SHIFT) << this.index_offset) | address_index);
+      }
+      this.tag_index.put(block_address, assoc_index);
+    }
+
+    // Since we are doing an eviction, new bit is not dirty unless it is a write.
+    if (op_code == OP_READ || op_code == OP_PREFETCH) {
+      cache_memory.set(set_base + assoc_index, (address_tag << LINE_TAG_SHIFT) | LINE_VALID);
+    } else {
+      cache_memory.set(set_base + assoc_index, (address_tag << LINE_TAG_SHIFT) | LINE_DIRTY | LINE_VALID);
+    }
+    if (this.prefetcher != null && op_code != OP_PREFETCH) {
+      this.prefetcher.miss(trace_index, block_address);
+    }
   }
 }
 
@@ -185,134 +540,533 @@ class LRU {
   public void resetTag(int assoc_index, int address_index_integer) {
     this.lru_list[assoc_index][address_index_integer] = 0;
   }
-}
 
-interface LRUInterface {
-  public void resetTag(int assoc_index, int address_index_integer);
-
-  public void cacheAccess(int assoc_index, int address_index_integer, int traceIndex, String binary_address);
-
-  public int getLRU(int address_index_integer);
+  void saveLists(CheckpointWriter out) throws IOException {
+    for (int[] way_list : this.lru_list) {
+      out.writeInts(way_list);
+    }
+  }
 
+  void restoreLists(CheckpointReader in) throws IOException {
+    for (int[] way_list : this.lru_list) {
+      in.readInts(way_list);
+    }
+  }
 }
 
 // BasicLRU type, increments counter and find smallest one as the LRU.
-class BasicLRU extends LRU implements LRUInterface {
+// Counters are kept set by set so a victim search reads one run of memory, a
+// set at a time with a SetScan when given one. Saved way by way like LRU.
+class BasicLRU implements LRUInterface {
+  int sets;
+  int cache_assoc;
+  int[] lru_list;
   int counters;
+  SetScan set_scan = null;
 
   public BasicLRU(int cache_assoc, int sets) {
-    super(cache_assoc, sets);
+    this.sets = sets;
+    this.cache_assoc = cache_assoc;
+    this.lru_list = new int[sets * cache_assoc];
   }
 
   // When accessing block, assign counter value to set, making it largest.
-  public void cacheAccess(int assoc_index, int address_index_integer, int traceIndex, String binary_address) {
+  public void cacheAccess(int assoc_index, int address_index_integer, int traceIndex, long block_address) {
+    if (this.counters == Integer.MAX_VALUE) {
+      renumber();
+    }
     this.counters++;
-    lru_list[assoc_index][address_index_integer] = this.counters;
+    this.lru_list[address_index_integer * this.cache_assoc + assoc_index] = this.counters;
+  }
+
+  // Counters only order the ways of a set, so before the shared counter wraps
+  // every set numbers its used ways from 1 in the same order, leaving the
+  // counter at most cache_assoc. Unused ways keep 0.
+  private void renumber() {
+    long[] ways = new long[this.cache_assoc];
+    int highest = 0;
+    for (int set = 0; set < this.sets; set++) {
+      int set_base = set * this.cache_assoc;
+      int used = 0;
+      for (int i = 0; i < this.cache_assoc; i++) {
+        if (this.lru_list[set_base + i] != 0) {
+          ways[used++] = (long) this.lru_list[set_base + i] << 32 | i;
+        }
+      }
+      Arrays.sort(ways, 0, used);
+      for (int rank = 0; rank < used; rank++) {
+        this.lru_list[set_base + (int) ways[rank]] = rank + 1;
+      }
+      highest = Math.max(highest, used);
+    }
+    this.counters = highest;
+  }
+
+  public void resetTag(int assoc_index, int address_index_integer) {
+    this.lru_list[address_index_integer * this.cache_assoc + assoc_index] = 0;
+  }
+
+  public void saveState(CheckpointWriter out) throws IOException {
+    for (int assoc_index = 0; assoc_index < this.cache_assoc; assoc_index++) {
+      out.writeInt(this.sets);
+      for (int set = 0; set < this.sets; set++) {
+        out.writeInt(this.lru_list[set * this.cache_assoc + assoc_index]);
+      }
+    }
+    out.writeInt(this.counters);
+  }
+
+  public void restoreState(CheckpointReader in) throws IOException {
+    for (int assoc_index = 0; assoc_index < this.cache_assoc; assoc_index++) {
+      if (in.readInt() != this.sets) {
+        throw new IOException("Checkpoint was taken with another configuration");
+      }
+      for (int set = 0; set < this.sets; set++) {
+        this.lru_list[set * this.cache_assoc + assoc_index] = in.readInt();
+      }
+    }
+    this.counters = in.readInt();
   }
 
   // Sets LRU as the first set, then loop through set values looking for lowest
   // value.
   public int getLRU(int address_index_integer) {
-    int lru_count = lru_list[0][address_index_integer];
+    int set_base = address_index_integer * this.cache_assoc;
+    if (this.set_scan != null) {
+      return this.set_scan.findMin(this.lru_list, set_base, this.cache_assoc);
+    }
+    int lru_count = this.lru_list[set_base];
     int lru_results = 0;
-    for (int i = 1; i < super.cache_assoc; i++) {
-      if (lru_list[i][address_index_integer] < lru_count) {
+    for (int i = 1; i < this.cache_assoc; i++) {
+      if (this.lru_list[set_base + i] < lru_count) {
         lru_results = i;
-        lru_count = lru_list[i][address_index_integer];
+        lru_count = this.lru_list[set_base + i];
       }
     }
     return lru_results;
   }
 }
 
-// PseudoLRU type, uses tree structure to find LRU.
-class PseudoLRU extends LRU implements LRUInterface {
+// BasicLRU with its counters off the heap, same layout and saved the same way.
+class OffHeapLRU implements LRUInterface {
+  int sets;
+  int cache_assoc;
+  DirectArray lru_list;
+  int counters;
+
+  public OffHeapLRU(int cache_assoc, int sets) {
+    this.sets = sets;
+    this.cache_assoc = cache_assoc;
+    this.lru_list = DirectArray.ints(sets * cache_assoc);
+  }
 
-  public PseudoLRU(int cache_assoc, int sets) {
-    // Reverts order or cache assoc and sets.
-    super(cache_assoc, sets);
-    // Initiates all values to 1, so when we look for free we look to left.
-    for (int[] fill_array : super.lru_list) {
-      Arrays.fill(fill_array, 1);
+  public void cacheAccess(int assoc_index, int address_index_integer, int traceIndex, long block_address) {
+    if (this.counters == Integer.MAX_VALUE) {
+      renumber();
     }
+    this.counters++;
+    this.lru_list.setInt(address_index_integer * this.cache_assoc + assoc_index, this.counters);
   }
 
-  // When accessing block, marks latest access to the set
-  public void cacheAccess(int assoc_index, int address_index_integer, int traceIndex, String binary_address) {
-    setCacheAccess(address_index_integer, 0, super.cache_assoc - 1, assoc_index);
+  // Same as BasicLRU.renumber.
+  private void renumber() {
+    long[] ways = new long[this.cache_assoc];
+    int highest = 0;
+    for (int set = 0; set < this.sets; set++) {
+      int set_base = set * this.cache_assoc;
+      int used = 0;
+      for (int i = 0; i < this.cache_assoc; i++) {
+        int count = this.lru_list.getInt(set_base + i);
+        if (count != 0) {
+          ways[used++] = (long) count << 32 | i;
+        }
+      }
+      Arrays.sort(ways, 0, used);
+      for (int rank = 0; rank < used; rank++) {
+        this.lru_list.setInt(set_base + (int) ways[rank], rank + 1);
+      }
+      highest = Math.max(highest, used);
+    }
+    this.counters = highest;
   }
 
   public int getLRU(int address_index_integer) {
-    return getPseudoLRU(address_index_integer, 0, super.cache_assoc - 1);
+    int set_base = address_index_integer * this.cache_assoc;
+    int lru_count = this.lru_list.getInt(set_base);
+    int lru_results = 0;
+    for (int i = 1; i < this.cache_assoc; i++) {
+      int count = this.lru_list.getInt(set_base + i);
+      if (count < lru_count) {
+        lru_results = i;
+        lru_count = count;
+      }
+    }
+    return lru_results;
+  }
+
+  public void resetTag(int assoc_index, int address_index_integer) {
+    this.lru_list.setInt(address_index_integer * this.cache_assoc + assoc_index, 0);
+  }
+
+  public void saveState(CheckpointWriter out) throws IOException {
+    for (int assoc_index = 0; assoc_index < this.cache_assoc; assoc_index++) {
+      out.writeInt(this.sets);
+      for (int set = 0; set < this.sets; set++) {
+        out.writeInt(this.lru_list.getInt(set * this.cache_assoc + assoc_index));
+      }
+    }
+    out.writeInt(this.counters);
+  }
+
+  public void restoreState(CheckpointReader in) throws IOException {
+    for (int assoc_index = 0; assoc_index < this.cache_assoc; assoc_index++) {
+      if (in.readInt() != this.sets) {
+        throw new IOException("Checkpoint was taken with another configuration");
+      }
+      for (int set = 0; set < this.sets; set++) {
+        this.lru_list.setInt(set * this.cache_assoc + assoc_index, in.readInt());
+      }
+    }
+    this.counters = in.readInt();
+  }
+}
+
+// LRU for high associativity. Used ways of a set are kept in a doubly linked
+// list from most to least recently used, so access and victim selection are
+// O(1). Picks the same victims as BasicLRU: ways never used or reset first,
+// lowest index first, then the least recently used.
+class LinkedLRU implements LRUInterface {
+  static final int NONE = -1;
+
+  int sets;
+  int cache_assoc;
+  // Links of way i of set s are at s * cache_assoc + i, they hold way indexes.
+  int[] more_recent;
+  int[] less_recent;
+  int[] most_recent;
+  int[] least_recent;
+  // Ways not in the list, as a bit set per set.
+  int words;
+  long[] unused_ways;
+  int[] unused_count;
+
+  public LinkedLRU(int cache_assoc, int sets) {
+    this(cache_assoc, sets, new int[sets * cache_assoc], new int[sets * cache_assoc]);
+  }
+
+  // Links are null for subclasses that keep them elsewhere.
+  LinkedLRU(int cache_assoc, int sets, int[] more_recent, int[] less_recent) {
+    this.sets = sets;
+    this.cache_assoc = cache_assoc;
+    this.more_recent = more_recent;
+    this.less_recent = less_recent;
+    this.most_recent = new int[sets];
+    this.least_recent = new int[sets];
+    Arrays.fill(this.most_recent, NONE);
+    Arrays.fill(this.least_recent, NONE);
+    this.words = (cache_assoc + 63) >>> 6;
+    this.unused_ways = new long[sets * this.words];
+    this.unused_count = new int[sets];
+    for (int set = 0; set < sets; set++) {
+      for (int assoc_index = 0; assoc_index < cache_assoc; assoc_index++) {
+        this.unused_ways[set * this.words + (assoc_index >>> 6)] |= 1L << assoc_index;
+      }
+      this.unused_count[set] = cache_assoc;
+    }
+  }
+
+  int moreRecent(int slot) {
+    return this.more_recent[slot];
+  }
+
+  void setMoreRecent(int slot, int assoc_index) {
+    this.more_recent[slot] = assoc_index;
+  }
+
+  int lessRecent(int slot) {
+    return this.less_recent[slot];
+  }
+
+  void setLessRecent(int slot, int assoc_index) {
+    this.less_recent[slot] = assoc_index;
+  }
+
+  // Moves way to the most recent end of its set.
+  public void cacheAccess(int assoc_index, int address_index_integer, int traceIndex, long block_address) {
+    if (this.most_recent[address_index_integer] == assoc_index) {
+      return;
+    }
+    if (!takeUnused(assoc_index, address_index_integer)) {
+      unlink(assoc_index, address_index_integer);
+    }
+    int base = address_index_integer * this.cache_assoc;
+    int head = this.most_recent[address_index_integer];
+    setMoreRecent(base + assoc_index, NONE);
+    setLessRecent(base + assoc_index, head);
+    if (head == NONE) {
+      this.least_recent[address_index_integer] = assoc_index;
+    } else {
+      setMoreRecent(base + head, assoc_index);
+    }
+    this.most_recent[address_index_integer] = assoc_index;
+  }
+
+  public int getLRU(int address_index_integer) {
+    if (this.unused_count[address_index_integer] > 0) {
+      int set_word = address_index_integer * this.words;
+      for (int word = 0; word < this.words; word++) {
+        long bits = this.unused_ways[set_word + word];
+        if (bits != 0) {
+          return (word << 6) + Long.numberOfTrailingZeros(bits);
+        }
+      }
+    }
+    return this.least_recent[address_index_integer];
+  }
+
+  // Way goes back to never used.
+  public void resetTag(int assoc_index, int address_index_integer) {
+    int word = address_index_integer * this.words + (assoc_index >>> 6);
+    if ((this.unused_ways[word] & (1L << assoc_index)) == 0) {
+      unlink(assoc_index, address_index_integer);
+      this.unused_ways[word] |= 1L << assoc_index;
+      this.unused_count[address_index_integer]++;
+    }
+  }
+
+  public void saveState(CheckpointWriter out) throws IOException {
+    saveLinks(out);
+    out.writeInts(this.most_recent);
+    out.writeInts(this.least_recent);
+    out.writeLongs(this.unused_ways);
+    out.writeInts(this.unused_count);
+  }
+
+  public void restoreState(CheckpointReader in) throws IOException {
+    restoreLinks(in);
+    in.readInts(this.most_recent);
+    in.readInts(this.least_recent);
+    in.readLongs(this.unused_ways);
+    in.readInts(this.unused_count);
+  }
+
+  void saveLinks(CheckpointWriter out) throws IOException {
+    out.writeInts(this.more_recent);
+    out.writeInts(this.less_recent);
+  }
+
+  void restoreLinks(CheckpointReader in) throws IOException {
+    in.readInts(this.more_recent);
+    in.readInts(this.less_recent);
+  }
+
+  private boolean takeUnused(int assoc_index, int address_index_integer) {
+    int word = address_index_integer * this.words + (assoc_index >>> 6);
+    if ((this.unused_ways[word] & (1L << assoc_index)) == 0) {
+      return false;
+    }
+    this.unused_ways[word] &= ~(1L << assoc_index);
+    this.unused_count[address_index_integer]--;
+    return true;
+  }
+
+  private void unlink(int assoc_index, int address_index_integer) {
+    int base = address_index_integer * this.cache_assoc;
+    int more = moreRecent(base + assoc_index);
+    int less = lessRecent(base + assoc_index);
+    if (more == NONE) {
+      this.most_recent[address_index_integer] = less;
+    } else {
+      setLessRecent(base + more, less);
+    }
+    if (less == NONE) {
+      this.least_recent[address_index_integer] = more;
+    } else {
+      setMoreRecent(base + less, more);
+    }
+  }
+}
+
+// LinkedLRU with the links of every way off the heap, saved the same way.
+// What is left on the heap is an int or two per set and a bit per way.
+class OffHeapLinkedLRU extends LinkedLRU {
+  DirectArray more_links;
+  DirectArray less_links;
+
+  public OffHeapLinkedLRU(int cache_assoc, int sets) {
+    super(cache_assoc, sets, null, null);
+    this.more_links = DirectArray.ints(sets * cache_assoc);
+    this.less_links = DirectArray.ints(sets * cache_assoc);
+  }
+
+  @Override
+  int moreRecent(int slot) {
+    return this.more_links.getInt(slot);
   }
 
-  // Essentially a binary search setting the values to 0 and 1 as it finds the
-  // address index.
-  private void setCacheAccess(int address_index_integer, int left_index, int right_index, int assoc_index) {
-    // Left and right index will be getting closer, eventually crossing when at end
-    // of tree.
-    if (right_index >= left_index) {
-      int mid = left_index + (right_index - left_index) / 2;
+  @Override
+  void setMoreRecent(int slot, int assoc_index) {
+    this.more_links.setInt(slot, assoc_index);
+  }
+
+  @Override
+  int lessRecent(int slot) {
+    return this.less_links.getInt(slot);
+  }
+
+  @Override
+  void setLessRecent(int slot, int assoc_index) {
+    this.less_links.setInt(slot, assoc_index);
+  }
+
+  @Override
+  void saveLinks(CheckpointWriter out) throws IOException {
+    out.writeInts(this.more_links);
+    out.writeInts(this.less_links);
+  }
+
+  @Override
+  void restoreLinks(CheckpointReader in) throws IOException {
+    in.readInts(this.more_links);
+    in.readInts(this.less_links);
+  }
+}
+
+// PseudoLRU type, uses tree structure to find LRU. The tree is a binary search
+// over way indexes where each step checks the node of its mid way, so a set
+// needs one bit per way. Bits of a set are packed in longs, a single one up to
+// 64 ways, instead of an int per bit.
+class PseudoLRU implements LRUInterface {
+  int sets;
+  int cache_assoc;
+  // Longs used by each set, bit of way i is bit i % 64 of long i / 64.
+  int words;
+  long[] tree_bits;
+  // An access always walks the same path for a given way, so the bits it
+  // changes and their new values are worked out once per way.
+  long[] access_mask;
+  long[] access_value;
+
+  public PseudoLRU(int cache_assoc, int sets) {
+    this.sets = sets;
+    this.cache_assoc = cache_assoc;
+    this.words = (cache_assoc + 63) >>> 6;
+    // Initiates all values to 1, so when we look for free we look to left.
+    this.tree_bits = new long[sets * this.words];
+    Arrays.fill(this.tree_bits, -1L);
 
+    this.access_mask = new long[cache_assoc * this.words];
+    this.access_value = new long[cache_assoc * this.words];
+    for (int assoc_index = 0; assoc_index < cache_assoc; assoc_index++) {
+      int left_index = 0;
+      int right_index = cache_assoc - 1;
       // If value is to left of mid index mark as 0, if to right mark as 1.
-      // Recursive call to that branch of tree.
-      if (assoc_index <= mid) {
-        lru_list[mid][address_index_integer] = 0;
-        setCacheAccess(address_index_integer, left_index, mid - 1, assoc_index);
-      } else {
-        lru_list[mid][address_index_integer] = 1;
-        setCacheAccess(address_index_integer, mid + 1, right_index, assoc_index);
+      while (right_index >= left_index) {
+        int mid = left_index + (right_index - left_index) / 2;
+        int word = assoc_index * this.words + (mid >>> 6);
+        this.access_mask[word] |= 1L << mid;
+        if (assoc_index <= mid) {
+          right_index = mid - 1;
+        } else {
+          this.access_value[word] |= 1L << mid;
+          left_index = mid + 1;
+        }
       }
     }
   }
 
-  private int getPseudoLRU(int address_index_integer, int left_index, int right_index) {
-    // Same logic as above, implemented as while loop.
+  // When accessing block, marks latest access to the set
+  public void cacheAccess(int assoc_index, int address_index_integer, int traceIndex, long block_address) {
+    int set_word = address_index_integer * this.words;
+    int way_word = assoc_index * this.words;
+    for (int word = 0; word < this.words; word++) {
+      long mask = this.access_mask[way_word + word];
+      this.tree_bits[set_word + word] = (this.tree_bits[set_word + word] & ~mask) | this.access_value[way_word + word];
+    }
+  }
+
+  public int getLRU(int address_index_integer) {
+    int set_word = address_index_integer * this.words;
+    int left_index = 0;
+    int right_index = this.cache_assoc - 1;
     int mid = 0;
-    // Right and left index are converging in this loop.
+    long bit = 0;
+    // Right and left index are converging in this loop. Each node is flipped
+    // on the way, if it was 1 go left, if 0 go right.
     while (right_index >= left_index) {
-      // Pick mid point of array.
       mid = left_index + (right_index - left_index) / 2;
-      // If value 1, go left, if 0, go right
-      if (lru_list[mid][address_index_integer] == 1) {
-        lru_list[mid][address_index_integer] = 0;
-        right_index = mid - 1;
-      } else {
-        lru_list[mid][address_index_integer] = 1;
-        left_index = mid + 1;
-      }
+      int word = set_word + (mid >>> 6);
+      bit = (this.tree_bits[word] >>> mid) & 1;
+      this.tree_bits[word] ^= 1L << mid;
+      right_index = bit == 1 ? mid - 1 : right_index;
+      left_index = bit == 1 ? left_index : mid + 1;
     }
     // After converging, return value.
-    int result = mid + lru_list[mid][address_index_integer];
+    int result = mid + (int) (bit ^ 1);
     if (result >= this.cache_assoc) {
       result = this.cache_assoc - 1;
     }
     return result;
   }
 
+  public void resetTag(int assoc_index, int address_index_integer) {
+    this.tree_bits[address_index_integer * this.words + (assoc_index >>> 6)] &= ~(1L << assoc_index);
+  }
+
+  // Access masks only depend on associativity, just the tree is saved.
+  public void saveState(CheckpointWriter out) throws IOException {
+    out.writeLongs(this.tree_bits);
+  }
+
+  public void restoreState(CheckpointReader in) throws IOException {
+    in.readLongs(this.tree_bits);
+  }
 }
 
 // OptimalLRU type, Looks into future for LRU.
 class OptimalLRU extends LRU implements LRUInterface {
-  TraceObject trace_list[];
+  BlockDictionary dictionary;
+  NextUseTable next_use_table;
+  // Latest known position of each block id that is not past the trace index,
+  // only moves forward since trace index never goes back.
+  int[] block_cursor;
 
-  public OptimalLRU(int cache_assoc, int sets, TraceObject trace_list[]) {
+  public OptimalLRU(int cache_assoc, int sets, int block_offset, TraceList trace_list) {
+    super(cache_assoc, sets);
+    this.dictionary = trace_list.blockDictionary(block_offset);
+    this.next_use_table = this.dictionary.nextUseTable();
+    this.block_cursor = this.next_use_table.first_use.clone();
+  }
+
+  // For subclasses that find next uses without the whole trace.
+  OptimalLRU(int cache_assoc, int sets) {
     super(cache_assoc, sets);
-    this.trace_list = trace_list;
   }
 
   //
-  public void cacheAccess(int assoc_index, int address_index_integer, int trace_index, String binary_address) {
-    // We will look for 0 values as possibility of replacement, this is placeholder.
-    lru_list[assoc_index][address_index_integer] = 0;
-    trace_index++;
-    // Loop through trace_list to find next occurance of address.
-    for (int i = trace_index; i < this.trace_list.length; i++) {
-      if (this.trace_list[i].binary_address.substring(0, binary_address.length()).compareTo(binary_address) == 0) {
-        lru_list[assoc_index][address_index_integer] = i;
-        break;
+  public void cacheAccess(int assoc_index, int address_index_integer, int trace_index, long block_address) {
+    // Stores next occurance of block, 0 marks it as possibility of replacement.
+    lru_list[assoc_index][address_index_integer] = nextUse(block_address, trace_index);
+  }
+
+  // Finds first access to block after trace index by walking its chain of next
+  // uses from the cursor.
+  private int nextUse(long block_address, int trace_index) {
+    int block_id = this.dictionary.id(block_address, trace_index);
+    if (block_id == LongIntHashMap.NO_VALUE) {
+      return 0;
+    }
+    int[] next_use = this.next_use_table.next_use;
+    int position = this.block_cursor[block_id];
+    while (position <= trace_index) {
+      int next_position = next_use[position];
+      if (next_position == 0 || next_position > trace_index) {
+        this.block_cursor[block_id] = position;
+        return next_position;
       }
+      position = next_position;
     }
+    return position;
   }
 
   public int getLRU(int address_index_integer) {
@@ -329,4 +1083,447 @@ class OptimalLRU extends LRU implements LRUInterface {
     }
     return next_LRU;
   }
+
+  // Next use table is built again from the trace, cursors are only saved so
+  // they don't walk from the start.
+  public void saveState(CheckpointWriter out) throws IOException {
+    saveLists(out);
+    out.writeInts(this.block_cursor);
+  }
+
+  public void restoreState(CheckpointReader in) throws IOException {
+    restoreLists(in);
+    in.readInts(this.block_cursor);
+  }
+}
+
+// Optimal over a sliding window, only the next lookahead accesses are known.
+// Blocks not used again inside the window are treated as never used again, so
+// huge or streamed traces are handled approximately with bounded memory. The
+// driver calls lookAhead for access i + lookahead before simulating access i.
+class WindowedOptimalLRU extends OptimalLRU {
+  // Ring arrays start this long and grow as the window fills, so a lookahead
+  // longer than the trace costs no more than the trace.
+  static final int INITIAL_RING = 1 << 12;
+
+  int block_offset;
+  // Positions in the window are kept in a ring, position p at p % ring_size.
+  int ring_size;
+  long[] ring_block;
+  int[] ring_next_use;
+  // Earliest and latest position of every block inside the window.
+  LongIntHashMap first_position;
+  LongIntHashMap last_position;
+
+  public WindowedOptimalLRU(int cache_assoc, int sets, int block_offset, int lookahead) {
+    super(cache_assoc, sets);
+    this.block_offset = block_offset;
+    this.ring_size = lookahead + 1;
+    this.ring_block = new long[Math.min(this.ring_size, INITIAL_RING)];
+    this.ring_next_use = new int[this.ring_block.length];
+    this.first_position = new LongIntHashMap(1024);
+    this.last_position = new LongIntHashMap(1024);
+  }
+
+  public void lookAhead(int position, long address) {
+    // Position right before the one about to be simulated leaves the window.
+    int retired = position - this.ring_size;
+    if (retired >= 0) {
+      int slot = retired % this.ring_size;
+      long retired_block = this.ring_block[slot];
+      if (this.first_position.get(retired_block) == retired) {
+        int next_position = this.ring_next_use[slot];
+        if (next_position == 0) {
+          this.first_position.remove(retired_block);
+          this.last_position.remove(retired_block);
+        } else {
+          this.first_position.put(retired_block, next_position);
+        }
+      }
+    }
+
+    long block_address = address >>> this.block_offset;
+    int slot = position % this.ring_size;
+    // Until the window is full, slots are taken in order.
+    if (slot == this.ring_block.length) {
+      int length = (int) Math.min(this.ring_size, 2L * slot);
+      this.ring_block = Arrays.copyOf(this.ring_block, length);
+      this.ring_next_use = Arrays.copyOf(this.ring_next_use, length);
+    }
+    this.ring_block[slot] = block_address;
+    this.ring_next_use[slot] = 0;
+    int last = this.last_position.get(block_address);
+    if (last == LongIntHashMap.NO_VALUE) {
+      this.first_position.put(block_address, position);
+    } else {
+      this.ring_next_use[last % this.ring_size] = position;
+    }
+    this.last_position.put(block_address, position);
+  }
+
+  @Override
+  public void cacheAccess(int assoc_index, int address_index_integer, int trace_index, long block_address) {
+    int position = this.first_position.get(block_address);
+    // Walks past current access, positions are still in the ring.
+    while (position != LongIntHashMap.NO_VALUE && position <= trace_index) {
+      position = this.ring_next_use[position % this.ring_size];
+      if (position == 0) {
+        position = LongIntHashMap.NO_VALUE;
+      }
+    }
+    lru_list[assoc_index][address_index_integer] = position == LongIntHashMap.NO_VALUE ? 0 : position;
+  }
+
+  // Takes shift off every position, a multiple of the ring size so slots
+  // don't move. Positions in the window and next uses still to come stay
+  // positive. Next uses of lines that already went by, left at lower levels
+  // by accesses their upper level served, become 1 and so stay below those.
+  void rebase(int shift) {
+    for (int slot = 0; slot < this.ring_next_use.length; slot++) {
+      if (this.ring_next_use[slot] != 0) {
+        this.ring_next_use[slot] -= shift;
+      }
+    }
+    rebaseValues(this.first_position, shift);
+    rebaseValues(this.last_position, shift);
+    for (int[] way_list : this.lru_list) {
+      for (int set = 0; set < way_list.length; set++) {
+        if (way_list[set] != 0) {
+          way_list[set] = Math.max(way_list[set] - shift, 1);
+        }
+      }
+    }
+  }
+
+  private static void rebaseValues(LongIntHashMap positions, int shift) {
+    for (int slot = 0; slot < positions.values.length; slot++) {
+      if (positions.values[slot] != LongIntHashMap.NO_VALUE) {
+        positions.values[slot] -= shift;
+      }
+    }
+  }
+
+  // Window only exists while streaming, which can't be checkpointed.
+  @Override
+  public void saveState(CheckpointWriter out) throws IOException {
+    throw new IOException("Optimal with a lookahead can't be checkpointed");
+  }
+
+  @Override
+  public void restoreState(CheckpointReader in) throws IOException {
+    throw new IOException("Optimal with a lookahead can't be checkpointed");
+  }
+}
+
+// Re-reference interval prediction, a 2 bit value per way, 32 ways to a long.
+// Hits predict a near re-reference (0) and fills a long one (2), or for the
+// bimodal variant a distant one (3) on all but one fill in BIMODAL_THROTTLE.
+// Victim is the first way predicted distant, aging the set until there is one.
+class RRIP implements LRUInterface {
+  static final long DISTANT = 3;
+  static final long LONG = 2;
+  static final int BIMODAL_THROTTLE = 32;
+  // Low bit of every value in a long.
+  static final long LOW_BITS = 0x5555555555555555L;
+
+  int sets;
+  int cache_assoc;
+  int words;
+  long[] values;
+  // Values in use in the last long of a set, unused ones stay 0.
+  long last_word_mask;
+  boolean bimodal;
+  int fills = 0;
+
+  public RRIP(int cache_assoc, int sets, boolean bimodal) {
+    this.sets = sets;
+    this.cache_assoc = cache_assoc;
+    this.bimodal = bimodal;
+    this.words = (cache_assoc + 31) >>> 5;
+    this.last_word_mask = (cache_assoc & 31) == 0 ? -1L : (1L << ((cache_assoc & 31) << 1)) - 1;
+    // Empty ways are distant, so they are taken first.
+    this.values = new long[sets * this.words];
+    for (int word = 0; word < this.values.length; word++) {
+      this.values[word] = wordMask(word % this.words);
+    }
+  }
+
+  public void cacheAccess(int assoc_index, int address_index_integer, int traceIndex, long block_address) {
+    setValue(assoc_index, address_index_integer, 0);
+  }
+
+  @Override
+  public void fill(int assoc_index, int address_index_integer, int traceIndex, long block_address) {
+    long value = LONG;
+    if (this.bimodal) {
+      this.fills = (this.fills + 1) % BIMODAL_THROTTLE;
+      value = this.fills == 0 ? LONG : DISTANT;
+    }
+    setValue(assoc_index, address_index_integer, value);
+  }
+
+  public int getLRU(int address_index_integer) {
+    int set_word = address_index_integer * this.words;
+    while (true) {
+      for (int word = 0; word < this.words; word++) {
+        long value = this.values[set_word + word];
+        long distant = value & (value >>> 1) & LOW_BITS;
+        if (distant != 0) {
+          return (word << 5) + (Long.numberOfTrailingZeros(distant) >>> 1);
+        }
+      }
+      // No value is 3, so adding 1 to each never carries into the next.
+      for (int word = 0; word < this.words; word++) {
+        this.values[set_word + word] += LOW_BITS & wordMask(word);
+      }
+    }
+  }
+
+  public void resetTag(int assoc_index, int address_index_integer) {
+    setValue(assoc_index, address_index_integer, DISTANT);
+  }
+
+  public void saveState(CheckpointWriter out) throws IOException {
+    out.writeLongs(this.values);
+    out.writeInt(this.fills);
+  }
+
+  public void restoreState(CheckpointReader in) throws IOException {
+    in.readLongs(this.values);
+    this.fills = in.readInt();
+  }
+
+  private long wordMask(int word) {
+    return word == this.words - 1 ? this.last_word_mask : -1L;
+  }
+
+  private void setValue(int assoc_index, int address_index_integer, long value) {
+    int word = address_index_integer * this.words + (assoc_index >>> 5);
+    int shift = (assoc_index & 31) << 1;
+    this.values[word] = (this.values[word] & ~(DISTANT << shift)) | (value << shift);
+  }
+}
+
+// CLOCK, a reference bit per way, 64 ways to a long, and a hand per set.
+// Accesses and fills set the bit. The hand sweeps on from where it stopped,
+// clearing bits, up to the first way without one, which is the victim.
+class Clock implements LRUInterface {
+  int sets;
+  int cache_assoc;
+  int words;
+  long[] referenced;
+  int[] hand;
+
+  public Clock(int cache_assoc, int sets) {
+    this.sets = sets;
+    this.cache_assoc = cache_assoc;
+    this.words = (cache_assoc + 63) >>> 6;
+    this.referenced = new long[sets * this.words];
+    this.hand = new int[sets];
+  }
+
+  public void cacheAccess(int assoc_index, int address_index_integer, int traceIndex, long block_address) {
+    this.referenced[address_index_integer * this.words + (assoc_index >>> 6)] |= 1L << assoc_index;
+  }
+
+  public int getLRU(int address_index_integer) {
+    int set_word = address_index_integer * this.words;
+    int start = this.hand[address_index_integer];
+    int victim = firstUnreferenced(set_word, start, this.cache_assoc);
+    if (victim >= 0) {
+      clear(set_word, start, victim);
+    } else {
+      clear(set_word, start, this.cache_assoc);
+      victim = firstUnreferenced(set_word, 0, start);
+      if (victim >= 0) {
+        clear(set_word, 0, victim);
+      } else {
+        // Every way was referenced, the sweep got back to where it started.
+        clear(set_word, 0, start);
+        victim = start;
+      }
+    }
+    this.hand[address_index_integer] = victim + 1 == this.cache_assoc ? 0 : victim + 1;
+    return victim;
+  }
+
+  public void resetTag(int assoc_index, int address_index_integer) {
+    this.referenced[address_index_integer * this.words + (assoc_index >>> 6)] &= ~(1L << assoc_index);
+  }
+
+  public void saveState(CheckpointWriter out) throws IOException {
+    out.writeLongs(this.referenced);
+    out.writeInts(this.hand);
+  }
+
+  public void restoreState(CheckpointReader in) throws IOException {
+    in.readLongs(this.referenced);
+    in.readInts(this.hand);
+  }
+
+  // First way from first up to last, not included, without its bit, -1 if none.
+  private int firstUnreferenced(int set_word, int first, int last) {
+    for (int way = first; way < last;) {
+      int word = way >>> 6;
+      int end = Math.min(last, (word + 1) << 6);
+      long bits = ~this.referenced[set_word + word] & rangeMask(way, end);
+      if (bits != 0) {
+        return (word << 6) + Long.numberOfTrailingZeros(bits);
+      }
+      way = end;
+    }
+    return -1;
+  }
+
+  private void clear(int set_word, int first, int last) {
+    for (int way = first; way < last;) {
+      int word = way >>> 6;
+      int end = Math.min(last, (word + 1) << 6);
+      this.referenced[set_word + word] &= ~rangeMask(way, end);
+      way = end;
+    }
+  }
+
+  // Bits of ways first up to end inside the long of first.
+  private static long rangeMask(int first, int end) {
+    return (-1L << first) & ((end & 63) == 0 ? -1L : (1L << end) - 1);
+  }
+}
+
+// LFU with aging, a 4 bit use count per way, 16 ways to a long. Fills start at
+// 1 and a hit on a saturated count halves every count of its set first, so
+// old popularity fades. Victim is the lowest count, lowest way first.
+class AgingLFU implements LRUInterface {
+  static final long MAX_COUNT = 15;
+  // Every value but its top bit, to halve all values of a long at once.
+  static final long HALVE_MASK = 0x7777777777777777L;
+
+  int sets;
+  int cache_assoc;
+  int words;
+  long[] counts;
+
+  public AgingLFU(int cache_assoc, int sets) {
+    this.sets = sets;
+    this.cache_assoc = cache_assoc;
+    this.words = (cache_assoc + 15) >>> 4;
+    this.counts = new long[sets * this.words];
+  }
+
+  public void cacheAccess(int assoc_index, int address_index_integer, int traceIndex, long block_address) {
+    int word = address_index_integer * this.words + (assoc_index >>> 4);
+    int shift = (assoc_index & 15) << 2;
+    if (((this.counts[word] >>> shift) & MAX_COUNT) == MAX_COUNT) {
+      int set_word = address_index_integer * this.words;
+      for (int i = 0; i < this.words; i++) {
+        this.counts[set_word + i] = (this.counts[set_word + i] >>> 1) & HALVE_MASK;
+      }
+    }
+    this.counts[word] += 1L << shift;
+  }
+
+  @Override
+  public void fill(int assoc_index, int address_index_integer, int traceIndex, long block_address) {
+    setCount(assoc_index, address_index_integer, 1);
+  }
+
+  // Every access counts, so they are all replayed.
+  @Override
+  public void repeatAccess(int assoc_index, int address_index_integer, int traceIndex, long block_address,
+      int accesses) {
+    for (int i = 0; i < accesses; i++) {
+      cacheAccess(assoc_index, address_index_integer, traceIndex, block_address);
+    }
+  }
+
+  public int getLRU(int address_index_integer) {
+    int set_word = address_index_integer * this.words;
+    int lru_results = 0;
+    long lru_count = MAX_COUNT + 1;
+    for (int i = 0; i < this.cache_assoc; i++) {
+      long count = (this.counts[set_word + (i >>> 4)] >>> ((i & 15) << 2)) & MAX_COUNT;
+      if (count < lru_count) {
+        if (count == 0) {
+          return i;
+        }
+        lru_results = i;
+        lru_count = count;
+      }
+    }
+    return lru_results;
+  }
+
+  public void resetTag(int assoc_index, int address_index_integer) {
+    setCount(assoc_index, address_index_integer, 0);
+  }
+
+  public void saveState(CheckpointWriter out) throws IOException {
+    out.writeLongs(this.counts);
+  }
+
+  public void restoreState(CheckpointReader in) throws IOException {
+    in.readLongs(this.counts);
+  }
+
+  private void setCount(int assoc_index, int address_index_integer, long count) {
+    int word = address_index_integer * this.words + (assoc_index >>> 4);
+    int shift = (assoc_index & 15) << 2;
+    this.counts[word] = (this.counts[word] & ~(MAX_COUNT << shift)) | (count << shift);
+  }
+}
+
+// Random replacement from a fixed seed so runs repeat, drawn with xorshift64*.
+// Ways never used or reset are taken first, lowest first, so a bit per way
+// tells which are in use.
+class SeededRandom implements LRUInterface {
+  static final long SEED = 1;
+
+  int sets;
+  int cache_assoc;
+  int words;
+  long[] used_ways;
+  long state = SEED;
+
+  public SeededRandom(int cache_assoc, int sets) {
+    this.sets = sets;
+    this.cache_assoc = cache_assoc;
+    this.words = (cache_assoc + 63) >>> 6;
+    this.used_ways = new long[sets * this.words];
+  }
+
+  public void cacheAccess(int assoc_index, int address_index_integer, int traceIndex, long block_address) {
+    this.used_ways[address_index_integer * this.words + (assoc_index >>> 6)] |= 1L << assoc_index;
+  }
+
+  public int getLRU(int address_index_integer) {
+    int set_word = address_index_integer * this.words;
+    for (int word = 0; word < this.words; word++) {
+      long unused = ~this.used_ways[set_word + word];
+      if (unused != 0) {
+        int way = (word << 6) + Long.numberOfTrailingZeros(unused);
+        if (way < this.cache_assoc) {
+          return way;
+        }
+      }
+    }
+    this.state ^= this.state >>> 12;
+    this.state ^= this.state << 25;
+    this.state ^= this.state >>> 27;
+    long random = (this.state * 0x2545F4914F6CDD1DL) >>> 32;
+    return (int) ((random * this.cache_assoc) >>> 32);
+  }
+
+  public void resetTag(int assoc_index, int address_index_integer) {
+    this.used_ways[address_index_integer * this.words + (assoc_index >>> 6)] &= ~(1L << assoc_index);
+  }
+
+  public void saveState(CheckpointWriter out) throws IOException {
+    out.writeLongs(this.used_ways);
+    out.writeLong(this.state);
+  }
+
+  public void restoreState(CheckpointReader in) throws IOException {
+    in.readLongs(this.used_ways);
+    this.state = in.readLong();
+  }
 }
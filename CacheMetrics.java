@@ -0,0 +1,182 @@
+import java.util.Arrays;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// Opt in statistics of one cache level, updated by Cache.checkCache when set.
+// Keeps hits, misses and evictions of every set, the miss rate of every window
+// of accesses, and splits misses into compulsory, capacity and conflict ones.
+//
+// A miss is compulsory when the block was never accessed before, capacity
+// when a fully associative LRU cache with as many lines also misses, conflict
+// otherwise. Back invalidations don't reach the fully associative model, so
+// misses on invalidated lines count as conflict or capacity.
+class CacheMetrics {
+  static final int DEFAULT_WINDOW = 100000;
+
+  final int level_number;
+  final int window;
+  final long[] set_hits;
+  final long[] set_misses;
+  final long[] set_evictions;
+  long compulsory_misses = 0;
+  long capacity_misses = 0;
+  long conflict_misses = 0;
+
+  // Misses of every full window, accesses and misses of the one going on.
+  long[] window_misses = new long[16];
+  int windows = 0;
+  long window_accesses = 0;
+  long current_misses = 0;
+
+  private final LongIntHashMap seen_blocks = new LongIntHashMap(1 << 16);
+  private final FullyAssociativeLRU shadow;
+
+  CacheMetrics(Cache cache, int level_number, int window) {
+    this.level_number = level_number;
+    this.window = window;
+    this.set_hits = new long[cache.sets];
+    this.set_misses = new long[cache.sets];
+    this.set_evictions = new long[cache.sets];
+    this.shadow = new FullyAssociativeLRU(cache.sets * cache.cache_assoc);
+  }
+
+  // Attaches metrics to every level from l1_cache down.
+  static void enable(Cache l1_cache, int window) {
+    int level_number = 1;
+    for (Cache level = l1_cache; level != null; level = level.nextCache, level_number++) {
+      level.metrics = new CacheMetrics(level, level_number, window);
+    }
+  }
+
+  void hit(int set, long block_address) {
+    this.set_hits[set]++;
+    this.shadow.access(block_address);
+    countAccess(false);
+  }
+
+  void miss(int set, long block_address) {
+    this.set_misses[set]++;
+    boolean shadow_hit = this.shadow.access(block_address);
+    if (this.seen_blocks.get(block_address) == LongIntHashMap.NO_VALUE) {
+      this.seen_blocks.put(block_address, 0);
+      this.compulsory_misses++;
+    } else if (shadow_hit) {
+      this.conflict_misses++;
+    } else {
+      this.capacity_misses++;
+    }
+    countAccess(true);
+  }
+
+  void eviction(int set) {
+    this.set_evictions[set]++;
+  }
+
+  long misses() {
+    return this.compulsory_misses + this.capacity_misses + this.conflict_misses;
+  }
+
+  // Ends the trace, a window with some accesses left is not counted in the
+  // series. Sends the totals to a recording.
+  void finish() {
+    MissSummaryEvent event = new MissSummaryEvent();
+    if (event.isEnabled()) {
+      event.level = this.level_number;
+      event.compulsory_misses = this.compulsory_misses;
+      event.capacity_misses = this.capacity_misses;
+      event.conflict_misses = this.conflict_misses;
+      event.commit();
+    }
+  }
+
+  private void countAccess(boolean miss) {
+    if (miss) {
+      this.current_misses++;
+    }
+    if (++this.window_accesses < this.window) {
+      return;
+    }
+    if (this.windows == this.window_misses.length) {
+      this.window_misses = Arrays.copyOf(this.window_misses, this.windows * 2);
+    }
+    this.window_misses[this.windows++] = this.current_misses;
+    MissRateWindowEvent event = new MissRateWindowEvent();
+    if (event.isEnabled()) {
+      event.level = this.level_number;
+      event.window = this.windows - 1;
+      event.accesses = this.window_accesses;
+      event.misses = this.current_misses;
+      event.miss_rate = (double) this.current_misses / this.window_accesses;
+      event.commit();
+    }
+    this.window_accesses = 0;
+    this.current_misses = 0;
+  }
+}
+
+// Fully associative LRU cache of block addresses, only tells hits from misses.
+class FullyAssociativeLRU {
+  private final LinkedLRU lru;
+  private final LongIntHashMap ways;
+  private final long[] blocks;
+  private int used = 0;
+
+  FullyAssociativeLRU(int lines) {
+    this.lru = new LinkedLRU(lines, 1);
+    this.ways = new LongIntHashMap(lines);
+    this.blocks = new long[lines];
+  }
+
+  // Returns whether the block was cached, it is afterwards.
+  boolean access(long block_address) {
+    int way = this.ways.get(block_address);
+    boolean hit = way != LongIntHashMap.NO_VALUE;
+    if (!hit) {
+      if (this.used < this.blocks.length) {
+        way = this.used++;
+      } else {
+        way = this.lru.getLRU(0);
+        this.ways.remove(this.blocks[way]);
+      }
+      this.blocks[way] = block_address;
+      this.ways.put(block_address, way);
+    }
+    this.lru.cacheAccess(way, 0, 0, block_address);
+    return hit;
+  }
+}
+
+@Name("cachesim.MissRateWindow")
+@Label("Cache Miss Rate Window")
+@Category("Cache Simulator")
+@Description("Accesses and misses of one cache level over a window of accesses")
+class MissRateWindowEvent extends Event {
+  @Label("Level")
+  int level;
+  @Label("Window")
+  int window;
+  @Label("Accesses")
+  long accesses;
+  @Label("Misses")
+  long misses;
+  @Label("Miss Rate")
+  double miss_rate;
+}
+
+@Name("cachesim.MissSummary")
+@Label("Cache Miss Classification")
+@Category("Cache Simulator")
+@Description("Compulsory, capacity and conflict misses of one cache level at the end of a run")
+class MissSummaryEvent extends Event {
+  @Label("Level")
+  int level;
+  @Label("Compulsory Misses")
+  long compulsory_misses;
+  @Label("Capacity Misses")
+  long capacity_misses;
+  @Label("Conflict Misses")
+  long conflict_misses;
+}
@@ -1,89 +1,310 @@
 import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
-import java.util.Scanner;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 public class CacheSimulator {
+  static final String OPTIONS_USAGE = "Options: --stream --lookahead=<accesses> --high-assoc=<ways>"
+      + " --levels=<SIZE>:<ASSOC>,... --pipeline --sharded[=<threads>]"
+      + " --format=text|json|csv --no-contents --metrics[=<window>] --sample=<interval> --sample-window=<accesses>"
+      + " --sample-warmup=<accesses> --sample-skip --sample-validate --checkpoint=<file> --checkpoint-at=<index>"
+      + " --restore=<file> --off-heap[=<level>,...] --simd[=<ways>] --prefetch=<level>:<kind>[:<degree>],...";
+  // Caches get int trace indexes, streams past this many accesses have them
+  // rebased, see simulateStream.
+  static final int REBASE_AT = 1 << 30;
+  static final int MAX_LOOKAHEAD = REBASE_AT / 4;
+
   // Variables used to handle cache parameters,
   // public String trace_file;
   Cache l1_cache = null;
   Cache l2_cache = null;
-  private int trace_file_lines;
 
   // Initiates variable when class is instantiated,
   public CacheSimulator(String[] args) {
     // Check if correct number of arguments are passed,
-    if (args.length != 8) {
+    if (args.length < 8) {
       System.out.println("You must enter all input");
       System.out.println(
           "<BLOCKSIZE> <L1_SIZE> <L1_ASSOC> <L2_SIZE> <L2_ASSOC> <REPLACEMENT_POLICY> <INCLUSION_PROPERTY> <trace_file>");
       System.exit(0);
     }
+    // Optional settings come after the trace file.
+    SimOptions options = null;
+    try {
+      options = new SimOptions(args, 8, "stream", "lookahead", "high-assoc", "levels", "pipeline", "sharded", "format",
+          "no-contents", "metrics", "sample", "sample-window", "sample-warmup", "sample-skip", "sample-validate",
+          "checkpoint", "checkpoint-at", "restore", "off-heap", "simd", "prefetch");
+    } catch (IllegalArgumentException e) {
+      System.out.println(e.getMessage());
+      System.out.println(OPTIONS_USAGE);
+      System.exit(0);
+    }
     // Assigns value to cache
     int block_size = Integer.parseInt(args[0]);
     int l1_size = Integer.parseInt(args[1]);
     int l1_assoc = Integer.parseInt(args[2]);
     int l2_size = Integer.parseInt(args[3]);
     int l2_assoc = Integer.parseInt(args[4]);
-    int replacement_policy = Integer.parseInt(args[5]);
+    String replacement_policy = args[5];
     int inclusion_property = Integer.parseInt(args[6]);
 
     if ((block_size & block_size - 1) != 0) {
       System.out.println("Blocksize must be power of 2");
       System.exit(0);
     }
+    ReplacementPolicyProvider policy = ReplacementPolicies.find(replacement_policy);
+    if (policy == null) {
+      System.out.println("Unsupported Replacement Policy, 0 for LRU, 1 for PLRU, 2 for Optimal, or one of "
+          + ReplacementPolicies.names() + ".");
+      System.exit(0);
+    }
 
     String trace_file_name = args[7];
-    TraceObject trace_list[] = loadFile(trace_file_name);
+    // Streamed traces are simulated while being read, "-" reads from stdin.
+    boolean streaming = options.has("stream") || trace_file_name.equals("-");
+    int lookahead = options.getInt("lookahead", 0);
+    if (lookahead < 0 || lookahead > MAX_LOOKAHEAD || (lookahead > 0 && !streaming)) {
+      System.out.println("Lookahead must be positive, at most " + MAX_LOOKAHEAD + " and is only used when streaming");
+      System.exit(0);
+    }
+    if (streaming && policy.needsTrace() && lookahead == 0) {
+      System.out.println(policy.displayName() + " needs --lookahead=<accesses> when streaming");
+      System.exit(0);
+    }
+    // Lower levels run on their own threads, lookahead feeds every level from
+    // this thread so it can't be pipelined.
+    boolean pipelined = options.has("pipeline");
+    if (pipelined && lookahead > 0) {
+      System.out.println("Pipelined levels can't be used with --lookahead");
+      System.exit(0);
+    }
+    // Sets are split on threads, a whole loaded trace is needed for that.
+    int shard_threads = 1;
+    if (options.has("sharded")) {
+      String threads = options.get("sharded", "");
+      shard_threads = threads.isEmpty() ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(threads);
+      if (shard_threads < 1 || streaming || pipelined) {
+        System.out.println("Sharded runs need at least 1 thread and can't be streamed or pipelined");
+        System.exit(0);
+      }
+    }
 
     // Create simulated cache
-    this.l1_cache = new Cache(block_size, l1_size, l1_assoc, replacement_policy, inclusion_property, trace_list);
-    if (l2_size > 0) {
-      this.l2_cache = new Cache(block_size, l2_size, l2_assoc, replacement_policy, inclusion_property, trace_list);
-      this.l2_cache.prevCache = this.l1_cache;
-      this.l1_cache.nextCache = this.l2_cache;
+    SimulationConfig config = new SimulationConfig(block_size, l1_size, l1_assoc, l2_size, l2_assoc,
+        replacement_policy, inclusion_property);
+    config.high_assoc_threshold = options.getInt("high-assoc", SimulationConfig.DEFAULT_HIGH_ASSOC_THRESHOLD);
+    // Vector set scans when available, scalar loops otherwise.
+    if (options.has("simd")) {
+      String ways = options.get("simd", "");
+      config.set_scan_min_ways = ways.isEmpty() ? SetScan.DEFAULT_MIN_WAYS : Integer.parseInt(ways);
     }
+    try {
+      if (options.has("levels")) {
+        parseLevels(config, options.get("levels", ""));
+      }
+      if (options.has("off-heap")) {
+        parseOffHeap(config, options.get("off-heap", ""));
+      }
+      if (options.has("prefetch")) {
+        parsePrefetch(config, options.get("prefetch", ""));
+      }
+    } catch (IllegalArgumentException e) {
+      System.out.println(e.getMessage());
+      System.exit(0);
+    }
+    String config_error = config.validate();
+    if (config.lower_sizes.length > 0 && config_error != null) {
+      System.out.println(config_error);
+      System.exit(0);
+    }
+    String format = options.get("format", "text");
+    if (!format.equals("text") && !format.equals("json") && !format.equals("csv")) {
+      System.out.println("Format must be text, json or csv");
+      System.exit(0);
+    }
+    boolean contents = !options.has("no-contents");
+    // Per set and windowed statistics need every access of a level in order.
+    int metrics_window = 0;
+    if (options.has("metrics")) {
+      String window = options.get("metrics", "");
+      metrics_window = window.isEmpty() ? CacheMetrics.DEFAULT_WINDOW : Integer.parseInt(window);
+      if (metrics_window < 1 || shard_threads > 1) {
+        System.out.println("Metrics window must be at least 1 and metrics can't be sharded");
+        System.exit(0);
+      }
+    }
+    // Sampling measures windows of a loaded or streamed trace, counts must be
+    // read between windows on this thread.
+    SampledSimulation sampling = null;
+    if (options.has("sample")) {
+      sampling = new SampledSimulation(options.getInt("sample", 0),
+          options.getInt("sample-window", SampledSimulation.DEFAULT_WINDOW),
+          options.getInt("sample-warmup", SampledSimulation.DEFAULT_WARMUP), options.has("sample-skip"));
+      if (sampling.window < 1 || sampling.warmup < 0 || sampling.interval < sampling.window) {
+        System.out.println("Sample interval must hold a window of at least 1 access and warmup can't be negative");
+        System.exit(0);
+      }
+      if (lookahead > 0 || pipelined || shard_threads > 1 || metrics_window > 0) {
+        System.out.println("Sampled runs can't look ahead, be pipelined, sharded or use metrics");
+        System.exit(0);
+      }
+      if (trace_file_name.equals("-") && options.has("sample-validate")) {
+        System.out.println("Sampled runs can only be validated on a trace file, stdin can't be read twice");
+        System.exit(0);
+      }
+    }
+    // Checkpoints save the state after the given number of accesses of a
+    // loaded trace, restored runs go on from there.
+    String checkpoint_file = options.get("checkpoint", null);
+    int checkpoint_at = options.getInt("checkpoint-at", -1);
+    String restore_file = options.get("restore", null);
+    if ((checkpoint_file == null) != (checkpoint_at < 0)) {
+      System.out.println("Checkpoints need both --checkpoint=<file> and --checkpoint-at=<index>");
+      System.exit(0);
+    }
+    if ((checkpoint_file != null || restore_file != null)
+        && (streaming || pipelined || shard_threads > 1 || metrics_window > 0 || sampling != null)) {
+      System.out.println("Checkpointed runs can't be streamed, pipelined, sharded, sampled or use metrics");
+      System.exit(0);
+    }
+    // Prefetches cross sets and shards, leave no trace index of their own for
+    // Optimal and aren't kept in metrics or checkpoints.
+    if (options.has("prefetch") && policy.needsTrace()) {
+      System.out.println("Prefetchers can't be used with " + policy.displayName());
+      System.exit(0);
+    }
+    if (options.has("prefetch") && (shard_threads > 1 || metrics_window > 0 || checkpoint_file != null
+        || restore_file != null)) {
+      System.out.println("Prefetchers can't be used on sharded, metrics or checkpointed runs");
+      System.exit(0);
+    }
+    TraceList trace_list = streaming ? null : loadFile(trace_file_name);
+    try {
+      this.l1_cache = config.buildHierarchy(trace_list, lookahead);
+    } catch (IllegalArgumentException e) {
+      System.out.println(e.getMessage());
+      System.exit(0);
+    }
+    this.l2_cache = this.l1_cache.nextCache;
 
-    // Sends index of operation for first cache to handle
-    for (int i = 0; i < trace_list.length; i++) {
-      this.l1_cache.checkCache(i, null, null);
+    if (metrics_window > 0) {
+      CacheMetrics.enable(this.l1_cache, metrics_window);
+    }
+    PipelinedHierarchy pipeline = pipelined ? PipelinedHierarchy.start(this.l1_cache) : null;
+    if (streaming && sampling != null) {
+      try {
+        sampling.simulate(this.l1_cache, openStream(trace_file_name));
+        if (options.has("sample-validate")) {
+          sampling.validate(config, openStream(trace_file_name));
+        }
+      } catch (IOException | InterruptedException e) {
+        System.out.println("Error reading file");
+        System.out.println("Error: " + e);
+        System.exit(0);
+      }
+    } else if (streaming) {
+      try {
+        simulateStream(this.l1_cache, openStream(trace_file_name), lookahead);
+      } catch (IOException | InterruptedException e) {
+        System.out.println("Error reading file");
+        System.out.println("Error: " + e);
+        System.exit(0);
+      } catch (IllegalStateException e) {
+        // A pipelined level failed, see PipelinedHierarchy.
+        System.out.println("Error: " + e);
+        System.exit(0);
+      }
+    } else if (sampling != null) {
+      sampling.simulate(this.l1_cache, trace_list);
+      if (options.has("sample-validate")) {
+        sampling.validate(config, trace_list);
+      }
+    } else if (shard_threads > 1) {
+      try {
+        ShardedSimulation.simulate(config, this.l1_cache, trace_list, shard_threads);
+      } catch (InterruptedException | ExecutionException e) {
+        System.out.println("Error: " + e);
+        System.exit(0);
+      }
+    } else if (checkpoint_file != null || restore_file != null) {
+      try {
+        int first = 0;
+        if (restore_file != null) {
+          first = Checkpoint.restore(this.l1_cache, trace_list, Paths.get(restore_file));
+        }
+        if (checkpoint_file != null) {
+          if (checkpoint_at < first || checkpoint_at > trace_list.length) {
+            System.out.println("Checkpoint index must be between " + first + " and " + trace_list.length);
+            System.exit(0);
+          }
+          simulate(this.l1_cache, trace_list, first, checkpoint_at);
+          Checkpoint.write(this.l1_cache, trace_list, checkpoint_at, Paths.get(checkpoint_file));
+          first = checkpoint_at;
+        }
+        simulate(this.l1_cache, trace_list, first, trace_list.length);
+      } catch (IOException | IllegalStateException e) {
+        System.out.println("Error: " + e);
+        System.exit(0);
+      }
+    } else {
+      try {
+        simulate(this.l1_cache, trace_list);
+      } catch (IllegalStateException e) {
+        System.out.println("Error: " + e);
+        System.exit(0);
+      }
+    }
+    if (pipeline != null) {
+      try {
+        pipeline.finish();
+      } catch (InterruptedException | IllegalStateException e) {
+        System.out.println("Error: " + e);
+        System.exit(0);
+      }
+    }
+    for (Cache level = this.l1_cache; level != null && metrics_window > 0; level = level.nextCache) {
+      level.metrics.finish();
     }
     // The code below this point is essentially creating the output to terminal in
     // appropriate format.
-
-    // Translates replacement policy to text for output.
-    String replacement_policy_string = "";
-    switch (replacement_policy) {
-    case 0:
-      replacement_policy_string = "LRU";
-      break;
-    case 1:
-      replacement_policy_string = "Pseudo-LRU";
-      break;
-    case 2:
-      replacement_policy_string = "Optimal";
-      break;
-    default:
-      System.out.println("Unsupported Replacement Policy, 0 for LRU, 1 for PLRU, 2 for Optimal.");
+    if (inclusion_property != 0 && inclusion_property != 1) {
+      System.out.println("Unsupported inclusion property, 0 for non-inclusive, 1 for inclusive.");
       System.exit(0);
     }
-
-    // Translates inclusion property to text for output.
-    String inclusion_property_string = "";
-    switch (inclusion_property) {
-    case 0:
-      inclusion_property_string = "non-inclusive";
-      break;
-    case 1:
-      inclusion_property_string = "inclusive";
-      break;
-
-    default:
-      System.out.println("Unsupported inclusion property, 0 for non-inclusive, 1 for inclusive.");
+    String outputResult = textHeader(config, trace_file_name);
+    // Contents and statistics are written straight out as they are formatted.
+    ReportWriter report = new ReportWriter(System.out);
+    try {
+      if (sampling != null) {
+        if (format.equals("json")) {
+          report.writeSampledJson(config, trace_file_name, sampling);
+        } else if (format.equals("csv")) {
+          report.writeSampledCsv(sampling);
+        } else {
+          report.writeSampledText(outputResult, this.l1_cache, sampling, contents);
+        }
+      } else {
+        writeReport(report, format, config, trace_file_name, this.l1_cache, contents);
+      }
+      report.flush();
+    } catch (IOException e) {
+      System.out.println("Error: " + e);
       System.exit(0);
     }
 
-    // Output result is string variable that holds the final output.
-    // We will be appending to this string for each section of the output.
+  }
+
+  // Configuration lines of the text report.
+  static String textHeader(SimulationConfig config, String trace_file_name) {
+    // Translates replacement policy and inclusion property to text for output.
+    String replacement_policy_string = ReplacementPolicies.find(config.replacement_policy).displayName();
+    String inclusion_property_string = config.inclusion_property == 1 ? "inclusive" : "non-inclusive";
+
     String outputResult = String.format("""
         ===== Simulator configuration =====
         BLOCKSIZE:             %s
@@ -91,168 +312,260 @@ public class CacheSimulator {
         L1_ASSOC:              %s
         L2_SIZE:               %s
         L2_ASSOC:              %s
+        """, config.block_size, config.l1_size, config.l1_assoc, config.l2_size, config.l2_assoc);
+    for (int level = 0; level < config.lower_sizes.length; level++) {
+      outputResult += String.format("L%d_SIZE:               %s\n", level + 3, config.lower_sizes[level]);
+      outputResult += String.format("L%d_ASSOC:              %s\n", level + 3, config.lower_assocs[level]);
+    }
+    outputResult += String.format("""
         REPLACEMENT POLICY:    %s
         INCLUSION PROPERTY:    %s
-        trace_file:            %s""", block_size, l1_size, l1_assoc, l2_size, l2_assoc, replacement_policy_string,
-        inclusion_property_string, trace_file_name);
-    outputResult += "\n";
-    // To keep things neat, the output from l1 and l2 cache will be added from a
-    // helper function.
-    printOutput(outputResult, this.l1_cache, this.l2_cache);
+        trace_file:            %s""", replacement_policy_string, inclusion_property_string, trace_file_name);
+    return outputResult + "\n";
+  }
 
+  // Report of a whole simulation in text, json or csv.
+  static void writeReport(ReportWriter report, String format, SimulationConfig config, String trace_file_name,
+      Cache l1_cache, boolean contents) throws IOException {
+    if (format.equals("json")) {
+      report.writeJson(config, trace_file_name, l1_cache, contents);
+    } else if (format.equals("csv")) {
+      report.writeCsv(config, l1_cache, contents);
+    } else {
+      report.writeText(textHeader(config, trace_file_name), l1_cache, contents);
+    }
   }
 
-  // Helper function to format the output.
-  private void printOutput(String outputResult, Cache l1_cache, Cache l2_cache) {
-    // From here on, we creat lines based on the output desired from l1 and l2
-    // cache.
-    if (l1_cache != null) {
-      outputResult += "===== L1 contents =====";
-      outputResult += "\n";
-      String set_line = "";
-      String dirty_bit = "";
-      String hex_address = "";
-      String address = "";
-      char first_bit = 0;
-      for (int set = 0; set < l1_cache.sets; set++) {
-        for (int assoc_index = 0; assoc_index < l1_cache.cache_assoc; assoc_index++) {
-          address = l1_cache.cache_memory[assoc_index][set];
-          first_bit = address.charAt(0);
-          if (first_bit == '1') {
-            dirty_bit = " D 	";
-          } else {
-            dirty_bit = "  	";
-          }
-          hex_address = binaryToHex(address.substring(1));
-          set_line += hex_address.toLowerCase() + dirty_bit;
-        }
-        outputResult += "Set     " + set + ":	" + set_line;
-        outputResult += "\n";
-        set_line = "";
+  // Reads --levels, SIZE:ASSOC of each level below L2 separated by commas.
+  static void parseLevels(SimulationConfig config, String levels) {
+    String[] entries = levels.split(",");
+    config.lower_sizes = new int[entries.length];
+    config.lower_assocs = new int[entries.length];
+    for (int level = 0; level < entries.length; level++) {
+      String[] fields = entries[level].split(":");
+      if (fields.length != 2) {
+        throw new IllegalArgumentException("Levels must be given as <SIZE>:<ASSOC>, got " + entries[level]);
       }
-    } else {
-      System.out.println("Error loading cache 1");
-      System.exit(0);
+      config.lower_sizes[level] = Integer.parseInt(fields[0]);
+      config.lower_assocs[level] = Integer.parseInt(fields[1]);
+    }
+  }
+
+  // Reads --off-heap, numbers of the levels kept off the heap separated by
+  // commas, every level when none is given.
+  static void parseOffHeap(SimulationConfig config, String levels) {
+    int level_count = 2 + config.lower_sizes.length;
+    if (levels.isEmpty()) {
+      config.off_heap_levels = (1 << level_count) - 1;
+      return;
     }
+    for (String entry : levels.split(",")) {
+      int level = Integer.parseInt(entry);
+      if (level < 1 || level > level_count) {
+        throw new IllegalArgumentException("Off heap levels must be between 1 and " + level_count + ", got " + entry);
+      }
+      config.off_heap_levels |= 1 << (level - 1);
+    }
+  }
 
-    if (l2_cache != null) {
-      outputResult += "===== L2 contents =====";
-      outputResult += "\n";
-      String set_line = "";
-      String dirty_bit = "";
-      String hex_address = "";
-      String address = "";
-      char first_bit = 0;
-      for (int set = 0; set < l2_cache.sets; set++) {
-        for (int assoc_index = 0; assoc_index < l2_cache.cache_assoc; assoc_index++) {
-          address = l2_cache.cache_memory[assoc_index][set];
-          first_bit = address.charAt(0);
-          if (first_bit == '1') {
-            dirty_bit = " D 	";
-          } else {
-            dirty_bit = "  	";
-          }
-          hex_address = binaryToHex(address.substring(1));
-          set_line += hex_address.toLowerCase() + dirty_bit;
+  // Reads --prefetch, level, prefetcher kind and optionally degree of each
+  // level with a prefetcher, separated by commas.
+  static void parsePrefetch(SimulationConfig config, String prefetchers) {
+    int level_count = 2 + config.lower_sizes.length;
+    config.prefetch_kinds = new String[level_count];
+    config.prefetch_degrees = new int[level_count];
+    for (String entry : prefetchers.split(",")) {
+      String[] fields = entry.split(":");
+      if (fields.length < 2 || fields.length > 3) {
+        throw new IllegalArgumentException("Prefetchers must be given as <level>:<kind>[:<degree>], got " + entry);
+      }
+      int level = Integer.parseInt(fields[0]);
+      int degree = fields.length == 3 ? Integer.parseInt(fields[2]) : 0;
+      if (level < 1 || level > level_count || (fields.length == 3 && degree < 1)) {
+        throw new IllegalArgumentException("Prefetcher levels must be between 1 and " + level_count
+            + " and degrees at least 1, got " + entry);
+      }
+      if (!fields[1].equals("next") && !fields[1].equals("stride") && !fields[1].equals("stream")) {
+        throw new IllegalArgumentException("Prefetcher kind must be " + Prefetcher.KINDS + ", got " + fields[1]);
+      }
+      config.prefetch_kinds[level - 1] = fields[1];
+      config.prefetch_degrees[level - 1] = degree;
+    }
+  }
+
+  // Sends index of operation for first cache to handle
+  static void simulate(Cache l1_cache, TraceList trace_list) {
+    simulate(l1_cache, trace_list, 0, trace_list.length);
+  }
+
+  // Same for accesses first up to last, not included. Accesses to the same
+  // block as the one before are gathered in runs and counted at once, they
+  // can only hit in L1. Metrics need every access so they go one by one, as
+  // do prefetchers, whose fills can evict the line of a run.
+  static void simulate(Cache l1_cache, TraceList trace_list, int first, int last) {
+    if (l1_cache.metrics != null || hasPrefetcher(l1_cache)) {
+      for (int i = first; i < last; i++) {
+        l1_cache.checkCache(i, trace_list.opCode(i), trace_list.address(i));
+      }
+      return;
+    }
+    int block_offset = l1_cache.block_offset;
+    // Every block number is valid, so the first access starts no run.
+    boolean in_run = false;
+    long run_block = 0;
+    long run_address = 0;
+    int run_reads = 0;
+    int run_writes = 0;
+    int run_length = 0;
+    for (int i = first; i < last; i++) {
+      byte op_code = trace_list.opCode(i);
+      long address = trace_list.address(i);
+      if (in_run && address >>> block_offset == run_block) {
+        if (op_code == Cache.OP_READ) {
+          run_reads++;
+        } else if (op_code == Cache.OP_WRITE) {
+          run_writes++;
         }
-        outputResult += "Set     " + set + ":	" + set_line;
-        outputResult += "\n";
-        set_line = "";
+        run_length++;
+        continue;
       }
+      if (run_length > 0) {
+        l1_cache.repeatHits(i - 1, run_address, run_length, run_reads, run_writes);
+        run_reads = 0;
+        run_writes = 0;
+        run_length = 0;
+      }
+      l1_cache.checkCache(i, op_code, address);
+      in_run = true;
+      run_block = address >>> block_offset;
+      run_address = address;
+    }
+    if (run_length > 0) {
+      l1_cache.repeatHits(last - 1, run_address, run_length, run_reads, run_writes);
     }
+  }
 
-    double l1_missrate = ((double) l1_cache.read_misses + l1_cache.write_misses)
-        / (l1_cache.read_hits + l1_cache.write_hits);
-    outputResult += String.format("""
-        ===== Simulation results (raw) =====
-        a. number of L1 reads:        %s
-        b. number of L1 read misses:  %s
-        c. number of L1 writes:       %s
-        d. number of L1 write misses: %s
-        e. L1 miss rate:              %.6f
-        f. number of L1 writebacks:   %s
-         """, l1_cache.read_hits, l1_cache.read_misses, l1_cache.write_hits, l1_cache.write_misses, l1_missrate,
-        l1_cache.write_back);
+  private static boolean hasPrefetcher(Cache l1_cache) {
+    for (Cache level = l1_cache; level != null; level = level.nextCache) {
+      if (level.prefetcher != null) {
+        return true;
+      }
+    }
+    return false;
+  }
 
-    if (l2_cache == null) {
-      outputResult += String.format("""
-          g. number of L2 reads:        0
-          h. number of L2 read misses:  0
-          i. number of L2 writes:       0
-          j. number of L2 write misses: 0
-          k. L2 miss rate:              0
-          l. number of L2 writebacks:   0
-          m. total memory traffic:      %s
-                     """, l1_cache.read_misses + l1_cache.write_misses + l1_cache.write_back + l1_cache.mem_trafic);
-    } else {
-      double l2_missrate = ((double) l2_cache.read_misses) / (l2_cache.read_hits);
-      outputResult += String.format("""
-          g. number of L2 reads:        %s
-          h. number of L2 read misses:  %s
-          i. number of L2 writes:       %s
-          j. number of L2 write misses: %s
-          k. L2 miss rate:              %.6f
-          l. number of L2 writebacks:   %s
-          m. total memory traffic:      %s
-                     """, l2_cache.read_hits, l2_cache.read_misses, l2_cache.write_hits, l2_cache.write_misses,
-          l2_missrate, l2_cache.write_back, l2_cache.read_misses + l2_cache.write_misses + l2_cache.write_back
-              + l1_cache.mem_trafic + l2_cache.mem_trafic);
-    }
-    // Finally create output.
-    System.out.print(outputResult);
+  // Simulates accesses as the reader thread parses them. When Optimal looks
+  // ahead, accesses are held back by the lookahead so it knows what comes next.
+  static void simulateStream(Cache l1_cache, TraceStream stream, int lookahead)
+      throws IOException, InterruptedException {
+    simulateStream(l1_cache, stream, lookahead, REBASE_AT);
+  }
 
+  // Streams may be longer than an int counts, while caches take int trace
+  // indexes. Once the index given to the caches reaches rebase_at, every
+  // index goes back by a multiple of the window ring size, see
+  // WindowedOptimalLRU.rebase, so next uses keep their order.
+  static void simulateStream(Cache l1_cache, TraceStream stream, int lookahead, int rebase_at)
+      throws IOException, InterruptedException {
+    List<WindowedOptimalLRU> windows = new ArrayList<>();
+    for (Cache level = l1_cache; level != null; level = level.nextCache) {
+      if (level.lru_object instanceof WindowedOptimalLRU) {
+        windows.add((WindowedOptimalLRU) level.lru_object);
+      }
+    }
+    int delay = windows.isEmpty() ? 0 : lookahead;
+    // Held accesses grow like the window rings, see WindowedOptimalLRU.
+    byte[] held_op_codes = new byte[Math.min(Math.max(delay, 1), WindowedOptimalLRU.INITIAL_RING)];
+    long[] held_addresses = new long[held_op_codes.length];
+
+    // Indexes still in the window or held back stay positive.
+    int rebase_by = (rebase_at - delay - 1) / (delay + 1) * (delay + 1);
+
+    // Position counts the whole stream, index is what the caches get.
+    long position = 0;
+    int index = 0;
+    TraceList chunk;
+    while ((chunk = stream.next()) != null) {
+      for (int i = 0; i < chunk.length; i++) {
+        if (index >= rebase_at) {
+          index -= rebase_by;
+          for (WindowedOptimalLRU window : windows) {
+            window.rebase(rebase_by);
+          }
+        }
+        byte op_code = chunk.op_codes[i];
+        long address = chunk.addresses[i];
+        if (delay == 0) {
+          l1_cache.checkCache(index, op_code, address);
+        } else {
+          for (WindowedOptimalLRU window : windows) {
+            window.lookAhead(index, address);
+          }
+          int slot = (int) (position % delay);
+          if (position >= delay) {
+            l1_cache.checkCache(index - delay, held_op_codes[slot], held_addresses[slot]);
+          } else if (slot == held_addresses.length) {
+            held_op_codes = Arrays.copyOf(held_op_codes, (int) Math.min(delay, 2L * slot));
+            held_addresses = Arrays.copyOf(held_addresses, held_op_codes.length);
+          }
+          held_op_codes[slot] = op_code;
+          held_addresses[slot] = address;
+        }
+        position++;
+        index++;
+      }
+      stream.release(chunk);
+    }
+    // Accesses still held back see the end of the trace.
+    for (long held = Math.max(position - delay, 0); delay > 0 && held < position; held++) {
+      int slot = (int) (held % delay);
+      l1_cache.checkCache((int) (index - (position - held)), held_op_codes[slot], held_addresses[slot]);
+    }
   }
 
-  private TraceObject[] loadFile(String trace_file_name) {
-    // Loads file.
-    File trace_file = new File(System.getProperty("user.dir") + "\\" + trace_file_name);
-    // Did not mention if trace files would be on current directory or a traces subdirectory so lets check.
-    String file_path = trace_file_name;
-    if (trace_file.exists() != true) {
-      file_path = System.getProperty("user.dir") + "/" + trace_file_name;
-      trace_file = new File(file_path);
-     
+  // Same memory traffic as reported in the output: misses and writebacks of
+  // the last level plus invalidations at every level.
+  static long memoryTraffic(Cache l1_cache) {
+    long traffic = 0;
+    Cache last_cache = l1_cache;
+    for (Cache level = l1_cache; level != null; level = level.nextCache) {
+      traffic += level.mem_trafic;
+      last_cache = level;
     }
-    if (trace_file.exists() != true) {
-      file_path = System.getProperty("user.dir") + "\\traces\\" + trace_file_name;
-      trace_file = new File(file_path);
-      
+    return traffic + last_cache.read_misses + last_cache.write_misses + last_cache.write_back;
+  }
+
+  // Opens a text trace to be read as a stream, "-" is stdin.
+  static TraceStream openStream(String trace_file_name) throws IOException {
+    if (trace_file_name.equals("-")) {
+      return new TraceStream(Channels.newChannel(System.in));
     }
-    if (trace_file.exists() != true) {
-      file_path = System.getProperty("user.dir") + "/traces/" + trace_file_name;
-      trace_file = new File(file_path);
-     
+    Path path = Paths.get(findTraceFile(trace_file_name));
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+    if (BinaryTrace.isBinaryTrace(channel)) {
+      channel.close();
+      throw new IOException("Binary traces are read in place, run them without --stream");
     }
-    TraceObject trace_list[];
-    try {
-      // Reads number of lines in file.
-      this.trace_file_lines = (int) Files.lines(Paths.get(file_path)).count();
+    if (GzipTraceChannel.isGzip(channel)) {
+      channel.close();
+      return new TraceStream(new GzipTraceChannel(path));
+    }
+    return new TraceStream(channel);
+  }
 
-    } catch (Exception e) {
+  static TraceList loadFile(String trace_file_name) {
+    String file_path = findTraceFile(trace_file_name);
+    File trace_file = new File(file_path);
+    TraceList trace_list = null;
+    if (trace_file.exists() != true) {
       System.out.println("Unable to open file");
-      System.out.println("Error: " + e);
+      System.out.println("Error: " + new NoSuchFileException(file_path));
       System.exit(0);
     }
-    // Initializes array of objects to keep trace data.
-    trace_list = new TraceObject[this.trace_file_lines];
-    // Sets index to keep track of tracelist.
-    int trace_index = 0;
 
     try {
-      // Begin reading file.
-      Scanner trace_file_read = new Scanner(trace_file);
-
-      // Goes through each line of file, extracts opcode and address.
-      while (trace_file_read.hasNextLine()) {
-        String[] trace_file_line = trace_file_read.nextLine().split(" ");
-        if (trace_file_line.length > 1) {
-          String op_code = trace_file_line[0];
-          String hex_address = trace_file_line[1];
-          trace_list[trace_index] = new TraceObject(op_code, hexToBinary(hex_address));
-        }
-        trace_index++;
-      }
-      trace_file_read.close();
+      // Maps file and extracts opcode and address of each line in one pass.
+      trace_list = TraceLoader.load(Paths.get(file_path));
 
     } catch (Exception e) {
       System.out.println("Error reading file");
@@ -263,36 +576,13 @@ public class CacheSimulator {
     return trace_list;
   }
 
-  public String hexToBinary(String hex_address) {
-    // Converts hex to decimal, then converts decimal to a binary string.
-    long decimal_representation = (Long.parseLong(hex_address.toUpperCase(), 16));
-    String binary_string = Long.toBinaryString(decimal_representation);
-    // Adds leading zeroes because some input hex values omit them
-    while (binary_string.length() < 31) {
-      binary_string = "0" + binary_string;
-    }
-    return binary_string;
-  }
-
-  public String binaryToHex(String binary_address) {
-    // Regex to remove leading zeros from a string
-    String regex = "^0+(?!$)";
-
-    // Replaces the matched value with given string
-    binary_address = binary_address.replaceAll(regex, "");
-    int decimal_string = Integer.parseInt(binary_address, 2);
-    String hex_string = Integer.toString(decimal_string, 16);
-    return hex_string;
-  }
-}
-
-class TraceObject {
-  String op_code;
-  String binary_address;
-
-  TraceObject(String op_code, String binary_address) {
-    this.op_code = op_code;
-    this.binary_address = binary_address;
+  static String findTraceFile(String trace_file_name) {
+    // Looks for file as given, then in the traces subdirectory of the current
+    // directory. Paths use the platform separator so this works anywhere.
+    Path trace_file = Paths.get(System.getProperty("user.dir")).resolve(trace_file_name);
+    if (Files.exists(trace_file)) {
+      return trace_file.toString();
+    }
+    return Paths.get(System.getProperty("user.dir"), "traces", trace_file_name).toString();
   }
-
 }
@@ -0,0 +1,120 @@
+import java.io.IOException;
+import java.nio.file.Path;
+
+// Whole hierarchy state at a trace index, so runs sharing a warm up prefix
+// can start from it. Little endian binary file.
+//
+// Header (32 bytes): magic "CSCP", version, trace index the run goes on from,
+// trace length, number of levels, one unused int and a checksum of the
+// accesses before the trace index as a long, so the run can't go on from
+// another trace of the same length. Every level then keeps its
+// configuration as six ints, the policy being the hash of its name, the six
+// counters, its lines and its replacement policy state. Arrays are a length
+// int followed by the values, padded so long arrays start 8 byte aligned.
+class Checkpoint {
+  static final int MAGIC = 0x50435343; // "CSCP" read as little endian int
+  static final int VERSION = 3;
+
+  static void write(Cache l1_cache, TraceList trace_list, int trace_index, Path path) throws IOException {
+    try (CheckpointWriter out = new CheckpointWriter(path)) {
+      int levels = 0;
+      for (Cache level = l1_cache; level != null; level = level.nextCache) {
+        levels++;
+      }
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(trace_index);
+      out.writeInt(trace_list.length);
+      out.writeInt(levels);
+      out.writeInt(0);
+      out.writeLong(checksum(trace_list, trace_index));
+      for (Cache level = l1_cache; level != null; level = level.nextCache) {
+        for (int value : configuration(level)) {
+          out.writeInt(value);
+        }
+        out.writeLong(level.read_hits);
+        out.writeLong(level.read_misses);
+        out.writeLong(level.write_hits);
+        out.writeLong(level.write_misses);
+        out.writeLong(level.write_back);
+        out.writeLong(level.mem_trafic);
+        level.cache_memory.save(out);
+        level.lru_object.saveState(out);
+      }
+    }
+  }
+
+  // Puts a hierarchy built with the same configuration in the saved state and
+  // returns the trace index to go on from.
+  static int restore(Cache l1_cache, TraceList trace_list, Path path) throws IOException {
+    try (CheckpointReader in = new CheckpointReader(path)) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        throw new IOException("Not a checkpoint file: " + path);
+      }
+      int trace_index = in.readInt();
+      int saved_length = in.readInt();
+      int levels = in.readInt();
+      in.readInt();
+      long saved_checksum = in.readLong();
+      if (saved_length != trace_list.length) {
+        throw new IOException("Checkpoint was taken on a trace of " + saved_length + " accesses");
+      }
+      if (trace_index < 0 || trace_index > trace_list.length || saved_checksum != checksum(trace_list, trace_index)) {
+        throw new IOException("Checkpoint was taken on another trace");
+      }
+      for (Cache level = l1_cache; level != null; level = level.nextCache, levels--) {
+        if (levels == 0) {
+          throw new IOException("Checkpoint was taken with another configuration");
+        }
+        for (int value : configuration(level)) {
+          if (in.readInt() != value) {
+            throw new IOException("Checkpoint was taken with another configuration");
+          }
+        }
+        level.read_hits = in.readLong();
+        level.read_misses = in.readLong();
+        level.write_hits = in.readLong();
+        level.write_misses = in.readLong();
+        level.write_back = in.readLong();
+        level.mem_trafic = in.readLong();
+        level.cache_memory.restore(in);
+        level.lru_object.restoreState(in);
+        if (level.tag_index != null) {
+          rebuildTagIndex(level);
+        }
+      }
+      if (levels != 0) {
+        throw new IOException("Checkpoint was taken with another configuration");
+      }
+      return trace_index;
+    }
+  }
+
+  // Mixes every access before trace_index, op code included.
+  static long checksum(TraceList trace_list, int trace_index) {
+    long checksum = trace_index;
+    for (int i = 0; i < trace_index; i++) {
+      checksum = (checksum ^ trace_list.address(i)) * 0x9E3779B97F4A7C15L;
+      checksum = (checksum ^ (checksum >>> 29) ^ trace_list.opCode(i)) * 0xBF58476D1CE4E5B9L;
+    }
+    return checksum;
+  }
+
+  private static int[] configuration(Cache level) {
+    return new int[] { level.block_size, level.cache_size, level.cache_assoc,
+        level.replacement_policy.name().hashCode(), level.inclusion_property, level.tag_index != null ? 1 : 0 };
+  }
+
+  // Tag index only mirrors the lines, it isn't saved.
+  private static void rebuildTagIndex(Cache level) {
+    level.tag_index = level.newTagIndex();
+    for (int set = 0; set < level.sets; set++) {
+      for (int assoc_index = 0; assoc_index < level.cache_assoc; assoc_index++) {
+        long line = level.cache_memory.get(set * level.cache_assoc + assoc_index);
+        if ((line & Cache.LINE_VALID) != 0) {
+          level.tag_index.put(((line >>> Cache.LINE_TAG_SHIFT) << level.index_offset) | set, assoc_index);
+        }
+      }
+    }
+  }
+}
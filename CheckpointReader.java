@@ -0,0 +1,119 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Reads a checkpoint from the mapped file, arrays are copied out in bulk. The
+// file is mapped in windows so levels bigger than one mapping still load.
+public class CheckpointReader implements AutoCloseable {
+  private final FileChannel channel;
+  private final long size;
+  private MappedByteBuffer window = null;
+  // File offset of the window start.
+  private long window_start = 0;
+
+  CheckpointReader(Path path) throws IOException {
+    this.channel = FileChannel.open(path, StandardOpenOption.READ);
+    this.size = this.channel.size();
+    map(0);
+  }
+
+  public int readInt() throws IOException {
+    ensure(4);
+    return this.window.getInt();
+  }
+
+  public long readLong() throws IOException {
+    ensure(8);
+    return this.window.getLong();
+  }
+
+  public void readInts(int[] values) throws IOException {
+    checkLength(values.length);
+    for (int i = 0; i < values.length;) {
+      ensure(4);
+      int count = Math.min(values.length - i, this.window.remaining() / 4);
+      this.window.asIntBuffer().get(values, i, count);
+      this.window.position(this.window.position() + count * 4);
+      i += count;
+    }
+  }
+
+  public void readLongs(long[] values) throws IOException {
+    checkLength(values.length);
+    align();
+    for (int i = 0; i < values.length;) {
+      ensure(8);
+      int count = Math.min(values.length - i, this.window.remaining() / 8);
+      this.window.asLongBuffer().get(values, i, count);
+      this.window.position(this.window.position() + count * 8);
+      i += count;
+    }
+  }
+
+  void readInts(DirectArray values) throws IOException {
+    checkLength(values.length);
+    for (ByteBuffer chunk : values.chunks) {
+      ByteBuffer target = chunk.duplicate().clear();
+      while (target.hasRemaining()) {
+        ensure(4);
+        int count = Math.min(target.remaining(), this.window.remaining() & ~3);
+        target.put(this.window.slice(this.window.position(), count));
+        this.window.position(this.window.position() + count);
+      }
+    }
+  }
+
+  void readLongs(DirectArray values) throws IOException {
+    checkLength(values.length);
+    align();
+    for (ByteBuffer chunk : values.chunks) {
+      ByteBuffer target = chunk.duplicate().clear();
+      while (target.hasRemaining()) {
+        ensure(8);
+        int count = Math.min(target.remaining(), this.window.remaining() & ~7);
+        target.put(this.window.slice(this.window.position(), count));
+        this.window.position(this.window.position() + count);
+      }
+    }
+  }
+
+  private void align() throws IOException {
+    long padding = -(this.window_start + this.window.position()) & 7;
+    ensure((int) padding);
+    this.window.position(this.window.position() + (int) padding);
+  }
+
+  private void checkLength(int length) throws IOException {
+    if (readInt() != length) {
+      throw new IOException("Checkpoint was taken with another configuration");
+    }
+  }
+
+  // Moves the window forward when fewer bytes than needed are left in it.
+  private void ensure(int bytes) throws IOException {
+    if (this.window.remaining() >= bytes) {
+      return;
+    }
+    long position = this.window_start + this.window.position();
+    if (this.size - position < bytes) {
+      throw new IOException("Truncated checkpoint");
+    }
+    map(position);
+  }
+
+  private void map(long position) throws IOException {
+    long length = Math.min(TraceLoader.MAP_WINDOW, this.size - position);
+    this.window = this.channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+    this.window.order(ByteOrder.LITTLE_ENDIAN);
+    this.window_start = position;
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.channel.close();
+  }
+}
@@ -0,0 +1,107 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Buffered sequential writes of a checkpoint.
+public class CheckpointWriter implements AutoCloseable {
+  private final FileChannel channel;
+  private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+  private long written = 0;
+
+  CheckpointWriter(Path path) throws IOException {
+    this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING);
+  }
+
+  public void writeInt(int value) throws IOException {
+    ensure(4);
+    this.buffer.putInt(value);
+  }
+
+  public void writeLong(long value) throws IOException {
+    ensure(8);
+    this.buffer.putLong(value);
+  }
+
+  public void writeInts(int[] values) throws IOException {
+    writeInt(values.length);
+    for (int i = 0; i < values.length;) {
+      ensure(4);
+      int count = Math.min(values.length - i, this.buffer.remaining() / 4);
+      this.buffer.asIntBuffer().put(values, i, count);
+      this.buffer.position(this.buffer.position() + count * 4);
+      i += count;
+    }
+  }
+
+  public void writeLongs(long[] values) throws IOException {
+    writeInt(values.length);
+    align();
+    for (int i = 0; i < values.length;) {
+      ensure(8);
+      int count = Math.min(values.length - i, this.buffer.remaining() / 8);
+      this.buffer.asLongBuffer().put(values, i, count);
+      this.buffer.position(this.buffer.position() + count * 8);
+      i += count;
+    }
+  }
+
+  // Same layout as an int array.
+  void writeInts(DirectArray values) throws IOException {
+    writeInt(values.length);
+    for (ByteBuffer chunk : values.chunks) {
+      ByteBuffer source = chunk.duplicate().clear();
+      while (source.hasRemaining()) {
+        ensure(4);
+        int count = Math.min(source.remaining(), this.buffer.remaining() & ~3);
+        this.buffer.put(source.slice(source.position(), count));
+        source.position(source.position() + count);
+      }
+    }
+  }
+
+  // Same layout as a long array.
+  void writeLongs(DirectArray values) throws IOException {
+    writeInt(values.length);
+    align();
+    for (ByteBuffer chunk : values.chunks) {
+      ByteBuffer source = chunk.duplicate().clear();
+      while (source.hasRemaining()) {
+        ensure(8);
+        int count = Math.min(source.remaining(), this.buffer.remaining() & ~7);
+        this.buffer.put(source.slice(source.position(), count));
+        source.position(source.position() + count);
+      }
+    }
+  }
+
+  private void align() throws IOException {
+    ensure(8);
+    while (((this.written + this.buffer.position()) & 7) != 0) {
+      this.buffer.put((byte) 0);
+    }
+  }
+
+  private void ensure(int bytes) throws IOException {
+    if (this.buffer.remaining() < bytes) {
+      flush();
+    }
+  }
+
+  private void flush() throws IOException {
+    this.buffer.flip();
+    while (this.buffer.hasRemaining()) {
+      this.written += this.channel.write(this.buffer);
+    }
+    this.buffer.clear();
+  }
+
+  @Override
+  public void close() throws IOException {
+    flush();
+    this.channel.close();
+  }
+}
@@ -0,0 +1,56 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// Fixed length array of ints or longs outside the Java heap, so huge caches
+// don't weigh on the heap or the collector. Values live in little endian
+// direct buffers of up to 1 GiB each, an array may be bigger than one buffer
+// can address. Memory is given back once the array is collected.
+class DirectArray {
+  static final int CHUNK_SHIFT = 30;
+  static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+  final int length;
+  // 2 for ints, 3 for longs.
+  final int element_shift;
+  final ByteBuffer[] chunks;
+
+  DirectArray(int length, int element_shift) {
+    this.length = length;
+    this.element_shift = element_shift;
+    long bytes = (long) length << element_shift;
+    this.chunks = new ByteBuffer[(int) ((bytes + CHUNK_MASK) >>> CHUNK_SHIFT)];
+    for (int chunk = 0; chunk < this.chunks.length; chunk++) {
+      long chunk_bytes = Math.min(1L << CHUNK_SHIFT, bytes - ((long) chunk << CHUNK_SHIFT));
+      // Direct buffers start zeroed, like arrays.
+      this.chunks[chunk] = ByteBuffer.allocateDirect((int) chunk_bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+  }
+
+  static DirectArray ints(int length) {
+    return new DirectArray(length, 2);
+  }
+
+  static DirectArray longs(int length) {
+    return new DirectArray(length, 3);
+  }
+
+  int getInt(int index) {
+    long offset = (long) index << 2;
+    return this.chunks[(int) (offset >>> CHUNK_SHIFT)].getInt((int) (offset & CHUNK_MASK));
+  }
+
+  void setInt(int index, int value) {
+    long offset = (long) index << 2;
+    this.chunks[(int) (offset >>> CHUNK_SHIFT)].putInt((int) (offset & CHUNK_MASK), value);
+  }
+
+  long getLong(int index) {
+    long offset = (long) index << 3;
+    return this.chunks[(int) (offset >>> CHUNK_SHIFT)].getLong((int) (offset & CHUNK_MASK));
+  }
+
+  void setLong(int index, long value) {
+    long offset = (long) index << 3;
+    this.chunks[(int) (offset >>> CHUNK_SHIFT)].putLong((int) (offset & CHUNK_MASK), value);
+  }
+}
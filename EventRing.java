@@ -0,0 +1,89 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+// Bounded single producer single consumer queue of cache events between two
+// threads. Each side owns one counter and only publishes it, no locks. A side
+// that finds the ring full or empty spins, then yields if it keeps waiting,
+// until the ring is closed because a level failed.
+class EventRing {
+  // Events besides the cache op codes. Acks tell an inclusive upper level that
+  // an event it sent has been handled, end stops the consuming level.
+  static final byte OP_ACK = 'a';
+  static final byte OP_END = 'e';
+
+  static final int CAPACITY = 1 << 14;
+  static final int SPINS_BEFORE_YIELD = 1 << 10;
+
+  private final byte[] op_codes = new byte[CAPACITY];
+  private final long[] addresses = new long[CAPACITY];
+  private final int[] trace_indexes = new int[CAPACITY];
+  private final int mask = CAPACITY - 1;
+
+  // Next slot to write, owned by producer.
+  private final AtomicLong head = new AtomicLong();
+  // Next slot to read, owned by consumer.
+  private final AtomicLong tail = new AtomicLong();
+  // Last value seen of the other side's counter, saves reading it every time.
+  private long cached_tail = 0;
+  private long cached_head = 0;
+  // Why the ring was closed, null while it is open.
+  private volatile Throwable failure = null;
+
+  // Event taken last, only read by the consumer.
+  byte taken_op_code;
+  long taken_address;
+  int taken_trace_index;
+
+  void put(int trace_index, byte op_code, long address) {
+    long position = this.head.get();
+    if (position - this.cached_tail == CAPACITY) {
+      int spins = 0;
+      while (position - (this.cached_tail = this.tail.get()) == CAPACITY) {
+        spins = waitFor(spins);
+        checkOpen();
+      }
+    }
+    int slot = (int) position & this.mask;
+    this.op_codes[slot] = op_code;
+    this.addresses[slot] = address;
+    this.trace_indexes[slot] = trace_index;
+    // Ordered store publishes the slot before the new head.
+    this.head.lazySet(position + 1);
+  }
+
+  void take() {
+    long position = this.tail.get();
+    if (position == this.cached_head) {
+      int spins = 0;
+      while (position == (this.cached_head = this.head.get())) {
+        spins = waitFor(spins);
+        checkOpen();
+      }
+    }
+    int slot = (int) position & this.mask;
+    this.taken_op_code = this.op_codes[slot];
+    this.taken_address = this.addresses[slot];
+    this.taken_trace_index = this.trace_indexes[slot];
+    this.tail.lazySet(position + 1);
+  }
+
+  // Wakes up both sides, waiting on the ring then throws with cause.
+  void close(Throwable cause) {
+    this.failure = cause;
+  }
+
+  private void checkOpen() {
+    Throwable cause = this.failure;
+    if (cause != null) {
+      throw new IllegalStateException("Cache level failed", cause);
+    }
+  }
+
+  private static int waitFor(int spins) {
+    if (spins < SPINS_BEFORE_YIELD) {
+      Thread.onSpinWait();
+    } else {
+      Thread.yield();
+    }
+    return spins + 1;
+  }
+}
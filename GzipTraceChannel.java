@@ -0,0 +1,329 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+// Decompressed bytes of a gzip file, inflated ahead on background threads
+// into a few pooled direct buffers, so reading it costs about as much as
+// reading plain text and needs no space on disk.
+//
+// Files of several gzip members, as written by pigz or bgzip, are cut in
+// segments at what look like member headers, and each segment is inflated on
+// its own thread. A segment inflates whole members until it ends exactly where
+// a later segment starts, which proves that start is a real member. Starts
+// that turn out to be inside a member are skipped and the segment before
+// carries on through them, so single member files still read correctly, only
+// on one thread. Every member is checked against its CRC and size.
+class GzipTraceChannel implements ReadableByteChannel {
+  static final int BUFFER_BYTES = 1 << 20;
+  static final int BUFFERS_PER_SEGMENT = 4;
+  static final int INPUT_BYTES = 1 << 18;
+  // Segments smaller than this aren't worth a thread.
+  static final long MIN_SEGMENT_BYTES = 16L << 20;
+
+  private static final int FLAG_HEADER_CRC = 2;
+  private static final int FLAG_EXTRA = 4;
+  private static final int FLAG_NAME = 8;
+  private static final int FLAG_COMMENT = 16;
+
+  private final FileChannel channel;
+  private final long file_size;
+  private final long[] starts;
+  private final Segment[] segments;
+  private int current_segment = 0;
+  private ByteBuffer current = null;
+  private boolean open = true;
+
+  // Output of one segment, handed over in order.
+  private final class Segment implements Runnable {
+    final int number;
+    final BlockingQueue<ByteBuffer> full_buffers = new ArrayBlockingQueue<>(BUFFERS_PER_SEGMENT + 1);
+    final BlockingQueue<ByteBuffer> free_buffers = new ArrayBlockingQueue<>(BUFFERS_PER_SEGMENT);
+    final Thread thread;
+    // Segment the output goes on with, set before the end buffer is put.
+    volatile int next_segment;
+    volatile Exception error = null;
+
+    Segment(int number) {
+      this.number = number;
+      for (int i = 0; i < BUFFERS_PER_SEGMENT; i++) {
+        this.free_buffers.add(ByteBuffer.allocateDirect(BUFFER_BYTES));
+      }
+      this.thread = new Thread(this, "gzip-inflater");
+      this.thread.setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      Inflater inflater = new Inflater(true);
+      try {
+        GzipInput input = new GzipInput(GzipTraceChannel.this.channel, GzipTraceChannel.this.starts[this.number]);
+        int next = this.number + 1;
+        ByteBuffer output = this.free_buffers.take();
+        while (true) {
+          long position = input.position();
+          while (next < GzipTraceChannel.this.starts.length && GzipTraceChannel.this.starts[next] < position) {
+            next++;
+          }
+          if (position == GzipTraceChannel.this.file_size) {
+            next = GzipTraceChannel.this.starts.length;
+            break;
+          }
+          if (next < GzipTraceChannel.this.starts.length && GzipTraceChannel.this.starts[next] == position) {
+            break;
+          }
+          output = inflateMember(input, inflater, output);
+        }
+        if (output.position() > 0) {
+          this.full_buffers.put(output.flip());
+        }
+        this.next_segment = next;
+      } catch (InterruptedException e) {
+        return;
+      } catch (Exception e) {
+        this.error = e;
+      } finally {
+        inflater.end();
+      }
+      try {
+        this.full_buffers.put(END_OF_SEGMENT);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    // Inflates one member into output buffers, returns the one being filled.
+    private ByteBuffer inflateMember(GzipInput input, Inflater inflater, ByteBuffer output)
+        throws IOException, InterruptedException {
+      readHeader(input);
+      inflater.reset();
+      CRC32 crc = new CRC32();
+      long size = 0;
+      try {
+        while (!inflater.finished()) {
+          if (inflater.needsInput()) {
+            input.fill();
+            inflater.setInput(input.buffer);
+          }
+          int written_from = output.position();
+          int written = inflater.inflate(output);
+          if (written > 0) {
+            ByteBuffer written_bytes = output.duplicate();
+            written_bytes.position(written_from).limit(output.position());
+            crc.update(written_bytes);
+            size += written;
+          }
+          if (!output.hasRemaining()) {
+            this.full_buffers.put(output.flip());
+            output = this.free_buffers.take();
+          }
+          if (written == 0 && inflater.needsDictionary()) {
+            throw new ZipException("Gzip member needs a dictionary");
+          }
+        }
+      } catch (DataFormatException e) {
+        throw new ZipException("Corrupt gzip member: " + e.getMessage());
+      }
+      long expected_crc = input.getInt() & 0xffffffffL;
+      long expected_size = input.getInt() & 0xffffffffL;
+      if (crc.getValue() != expected_crc || (size & 0xffffffffL) != expected_size) {
+        throw new ZipException("Corrupt gzip member, CRC or size does not match");
+      }
+      return output;
+    }
+  }
+
+  // Marks the end of a segment's buffers.
+  private static final ByteBuffer END_OF_SEGMENT = ByteBuffer.allocate(0);
+
+  GzipTraceChannel(Path path) throws IOException {
+    this(path, (int) Math.min(Runtime.getRuntime().availableProcessors(),
+        Math.max(1, Files.size(path) / MIN_SEGMENT_BYTES)));
+  }
+
+  // Cuts the file in at most the given number of segments, whatever its size.
+  GzipTraceChannel(Path path, int segments) throws IOException {
+    this.channel = FileChannel.open(path, StandardOpenOption.READ);
+    this.file_size = this.channel.size();
+    this.starts = segmentStarts(this.channel, this.file_size, segments);
+    this.segments = new Segment[this.starts.length];
+    for (int i = 0; i < this.segments.length; i++) {
+      this.segments[i] = new Segment(i);
+      this.segments[i].thread.start();
+    }
+  }
+
+  static boolean isGzip(FileChannel channel) throws IOException {
+    if (channel.size() < 18) {
+      return false;
+    }
+    ByteBuffer magic = ByteBuffer.allocate(3);
+    channel.read(magic, 0);
+    return (magic.get(0) & 0xff) == 0x1f && (magic.get(1) & 0xff) == 0x8b && magic.get(2) == 8;
+  }
+
+  // First offset at or after each even split of the file that looks like a
+  // member header, the first segment always starts at 0.
+  private static long[] segmentStarts(FileChannel channel, long file_size, int segments) throws IOException {
+    long[] starts = new long[segments];
+    int found = 1;
+    ByteBuffer buffer = ByteBuffer.allocate(INPUT_BYTES);
+    for (int segment = 1; segment < segments; segment++) {
+      long offset = Math.max(file_size * segment / segments, starts[found - 1] + 1);
+      long start = -1;
+      while (start < 0 && offset < file_size - 18) {
+        buffer.clear();
+        channel.read(buffer, offset);
+        for (int i = 0; i + 4 <= buffer.position(); i++) {
+          if ((buffer.get(i) & 0xff) == 0x1f && (buffer.get(i + 1) & 0xff) == 0x8b && buffer.get(i + 2) == 8
+              && (buffer.get(i + 3) & 0xe0) == 0) {
+            start = offset + i;
+            break;
+          }
+        }
+        offset += Math.max(buffer.position() - 3, 1);
+      }
+      if (start < 0) {
+        break;
+      }
+      starts[found++] = start;
+    }
+    return Arrays.copyOf(starts, found);
+  }
+
+  private static void readHeader(GzipInput input) throws IOException {
+    if (input.get() != 0x1f || input.get() != 0x8b) {
+      throw new ZipException("Not in GZIP format");
+    }
+    if (input.get() != 8) {
+      throw new ZipException("Unsupported gzip compression method");
+    }
+    int flags = input.get();
+    // Modification time, extra flags and operating system.
+    input.skip(6);
+    if ((flags & FLAG_EXTRA) != 0) {
+      input.skip(input.get() | input.get() << 8);
+    }
+    if ((flags & FLAG_NAME) != 0) {
+      while (input.get() != 0) {
+      }
+    }
+    if ((flags & FLAG_COMMENT) != 0) {
+      while (input.get() != 0) {
+      }
+    }
+    if ((flags & FLAG_HEADER_CRC) != 0) {
+      input.skip(2);
+    }
+  }
+
+  @Override
+  public int read(ByteBuffer destination) throws IOException {
+    while (true) {
+      if (this.current_segment == this.segments.length) {
+        return -1;
+      }
+      Segment segment = this.segments[this.current_segment];
+      if (this.current == null) {
+        try {
+          this.current = segment.full_buffers.take();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException("Interrupted while inflating", e);
+        }
+      }
+      if (this.current == END_OF_SEGMENT) {
+        this.current = null;
+        if (segment.error != null) {
+          throw new IOException("Error inflating gzip trace", segment.error);
+        }
+        // Segments inflated through by this one started inside a member.
+        for (int skipped = this.current_segment + 1; skipped < segment.next_segment; skipped++) {
+          this.segments[skipped].thread.interrupt();
+        }
+        this.current_segment = segment.next_segment;
+        continue;
+      }
+      int count = Math.min(this.current.remaining(), destination.remaining());
+      destination.put(destination.position(), this.current, this.current.position(), count);
+      destination.position(destination.position() + count);
+      this.current.position(this.current.position() + count);
+      if (!this.current.hasRemaining()) {
+        segment.free_buffers.add(this.current.clear());
+        this.current = null;
+      }
+      return count;
+    }
+  }
+
+  @Override
+  public boolean isOpen() {
+    return this.open;
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.open = false;
+    for (Segment segment : this.segments) {
+      segment.thread.interrupt();
+    }
+    this.channel.close();
+  }
+
+  // Compressed bytes read from the file through a buffer, from a start offset.
+  private static final class GzipInput {
+    final FileChannel channel;
+    final ByteBuffer buffer = ByteBuffer.allocateDirect(INPUT_BYTES);
+    // File offset of buffer index 0.
+    long buffer_offset;
+
+    GzipInput(FileChannel channel, long start) {
+      this.channel = channel;
+      this.buffer_offset = start;
+      this.buffer.limit(0);
+    }
+
+    long position() {
+      return this.buffer_offset + this.buffer.position();
+    }
+
+    // Reads more of the file after the bytes still left in the buffer.
+    void fill() throws IOException {
+      this.buffer_offset += this.buffer.position();
+      this.buffer.compact();
+      int read = this.channel.read(this.buffer, this.buffer_offset + this.buffer.position());
+      this.buffer.flip();
+      if (read <= 0 && !this.buffer.hasRemaining()) {
+        throw new EOFException("Truncated gzip member");
+      }
+    }
+
+    int get() throws IOException {
+      if (!this.buffer.hasRemaining()) {
+        fill();
+      }
+      return this.buffer.get() & 0xff;
+    }
+
+    int getInt() throws IOException {
+      return get() | get() << 8 | get() << 16 | get() << 24;
+    }
+
+    void skip(int bytes) throws IOException {
+      for (int i = 0; i < bytes; i++) {
+        get();
+      }
+    }
+  }
+}
@@ -0,0 +1,28 @@
+import java.io.IOException;
+
+// Replacement state of one cache level, see ReplacementPolicyProvider.
+public interface LRUInterface {
+  public void resetTag(int assoc_index, int address_index_integer);
+
+  public void cacheAccess(int assoc_index, int address_index_integer, int traceIndex, long block_address);
+
+  public int getLRU(int address_index_integer);
+
+  // Block just brought in way after a miss, for most policies any access.
+  public default void fill(int assoc_index, int address_index_integer, int traceIndex, long block_address) {
+    cacheAccess(assoc_index, address_index_integer, traceIndex, block_address);
+  }
+
+  // Accesses in a row to the line touched last, see Cache.repeatHits, traceIndex
+  // being the last of them. Most policies end up as after a single one, which
+  // with the last index is also what Optimal needs for its next use.
+  public default void repeatAccess(int assoc_index, int address_index_integer, int traceIndex, long block_address,
+      int accesses) {
+    cacheAccess(assoc_index, address_index_integer, traceIndex, block_address);
+  }
+
+  // Everything the policy keeps, written and read back in the same order.
+  public void saveState(CheckpointWriter out) throws IOException;
+
+  public void restoreState(CheckpointReader in) throws IOException;
+}
@@ -0,0 +1,68 @@
+import java.io.IOException;
+
+// Lines of a cache, packed as in Cache, set by set: way of a set is at slot
+// set * cache_assoc + way. Kept in a long array, or off the heap for caches
+// too big for it.
+abstract class LineStore {
+  static LineStore create(int length, boolean off_heap) {
+    return off_heap ? new OffHeapLineStore(length) : new HeapLineStore(length);
+  }
+
+  abstract long get(int slot);
+
+  abstract void set(int slot, long line);
+
+  // Written as a long array whichever the storage, so checkpoints of either
+  // restore in the other.
+  abstract void save(CheckpointWriter out) throws IOException;
+
+  abstract void restore(CheckpointReader in) throws IOException;
+}
+
+class HeapLineStore extends LineStore {
+  final long[] lines;
+
+  HeapLineStore(int length) {
+    this.lines = new long[length];
+  }
+
+  long get(int slot) {
+    return this.lines[slot];
+  }
+
+  void set(int slot, long line) {
+    this.lines[slot] = line;
+  }
+
+  void save(CheckpointWriter out) throws IOException {
+    out.writeLongs(this.lines);
+  }
+
+  void restore(CheckpointReader in) throws IOException {
+    in.readLongs(this.lines);
+  }
+}
+
+class OffHeapLineStore extends LineStore {
+  final DirectArray lines;
+
+  OffHeapLineStore(int length) {
+    this.lines = DirectArray.longs(length);
+  }
+
+  long get(int slot) {
+    return this.lines.getLong(slot);
+  }
+
+  void set(int slot, long line) {
+    this.lines.setLong(slot, line);
+  }
+
+  void save(CheckpointWriter out) throws IOException {
+    out.writeLongs(this.lines);
+  }
+
+  void restore(CheckpointReader in) throws IOException {
+    in.readLongs(this.lines);
+  }
+}
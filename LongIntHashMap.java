@@ -0,0 +1,189 @@
+import java.util.Arrays;
+
+// Open addressing map from long keys to int values, linear probing. Values
+// must not be negative since NO_VALUE marks empty slots. Avoids boxing a
+// HashMap<Long, Integer> entry for every block of the trace.
+class LongIntHashMap {
+  static final int NO_VALUE = -1;
+
+  long[] keys;
+  int[] values;
+  int size = 0;
+  int mask;
+
+  LongIntHashMap(int expected_size) {
+    // Keeps load factor under one half.
+    int capacity = Integer.highestOneBit(Math.max(expected_size, 8) * 2 - 1) << 1;
+    this.keys = new long[capacity];
+    this.values = new int[capacity];
+    Arrays.fill(this.values, NO_VALUE);
+    this.mask = capacity - 1;
+  }
+
+  // For subclasses keeping their entries elsewhere.
+  LongIntHashMap() {
+  }
+
+  int slot(long key) {
+    // Fibonacci hashing spreads sequential block addresses.
+    long hash = key * 0x9E3779B97F4A7C15L;
+    return (int) (hash ^ (hash >>> 32)) & this.mask;
+  }
+
+  public int get(long key) {
+    int slot = slot(key);
+    while (this.values[slot] != NO_VALUE) {
+      if (this.keys[slot] == key) {
+        return this.values[slot];
+      }
+      slot = (slot + 1) & this.mask;
+    }
+    return NO_VALUE;
+  }
+
+  public void put(long key, int value) {
+    int slot = slot(key);
+    while (this.values[slot] != NO_VALUE) {
+      if (this.keys[slot] == key) {
+        this.values[slot] = value;
+        return;
+      }
+      slot = (slot + 1) & this.mask;
+    }
+    this.keys[slot] = key;
+    this.values[slot] = value;
+    this.size++;
+    if (this.size * 2 > this.keys.length) {
+      grow();
+    }
+  }
+
+  public void remove(long key) {
+    int slot = slot(key);
+    while (this.values[slot] != NO_VALUE) {
+      if (this.keys[slot] == key) {
+        // Moves back later entries of the probe run that could sit in the hole.
+        int hole = slot;
+        int next = (slot + 1) & this.mask;
+        while (this.values[next] != NO_VALUE) {
+          int home = slot(this.keys[next]);
+          if (((next - home) & this.mask) >= ((next - hole) & this.mask)) {
+            this.keys[hole] = this.keys[next];
+            this.values[hole] = this.values[next];
+            hole = next;
+          }
+          next = (next + 1) & this.mask;
+        }
+        this.values[hole] = NO_VALUE;
+        this.size--;
+        return;
+      }
+      slot = (slot + 1) & this.mask;
+    }
+  }
+
+  public int size() {
+    return this.size;
+  }
+
+  public void clear() {
+    Arrays.fill(this.values, NO_VALUE);
+    this.size = 0;
+  }
+
+  private void grow() {
+    long[] old_keys = this.keys;
+    int[] old_values = this.values;
+    this.keys = new long[old_keys.length * 2];
+    this.values = new int[old_values.length * 2];
+    Arrays.fill(this.values, NO_VALUE);
+    this.mask = this.keys.length - 1;
+    this.size = 0;
+    for (int i = 0; i < old_keys.length; i++) {
+      if (old_values[i] != NO_VALUE) {
+        put(old_keys[i], old_values[i]);
+      }
+    }
+  }
+}
+
+// LongIntHashMap with its entries off the heap, for tag indexes of huge caches.
+// Capacity is fixed for max_size entries, a tag index never holds more than
+// the cache has lines. Slots keep value + 1, so zeroed memory reads as empty.
+class OffHeapLongIntHashMap extends LongIntHashMap {
+  final DirectArray slot_keys;
+  final DirectArray slot_values;
+
+  OffHeapLongIntHashMap(int max_size) {
+    int capacity = Integer.highestOneBit(Math.max(max_size, 8) * 2 - 1) << 1;
+    this.slot_keys = DirectArray.longs(capacity);
+    this.slot_values = DirectArray.ints(capacity);
+    this.mask = capacity - 1;
+  }
+
+  @Override
+  public int get(long key) {
+    int slot = slot(key);
+    int stored;
+    while ((stored = this.slot_values.getInt(slot)) != 0) {
+      if (this.slot_keys.getLong(slot) == key) {
+        return stored - 1;
+      }
+      slot = (slot + 1) & this.mask;
+    }
+    return NO_VALUE;
+  }
+
+  @Override
+  public void put(long key, int value) {
+    int slot = slot(key);
+    while (this.slot_values.getInt(slot) != 0) {
+      if (this.slot_keys.getLong(slot) == key) {
+        this.slot_values.setInt(slot, value + 1);
+        return;
+      }
+      slot = (slot + 1) & this.mask;
+    }
+    if (this.size * 2 >= this.mask) {
+      throw new IllegalStateException("Off heap map is full");
+    }
+    this.slot_keys.setLong(slot, key);
+    this.slot_values.setInt(slot, value + 1);
+    this.size++;
+  }
+
+  @Override
+  public void remove(long key) {
+    int slot = slot(key);
+    while (this.slot_values.getInt(slot) != 0) {
+      if (this.slot_keys.getLong(slot) == key) {
+        // Same back shift as LongIntHashMap.remove.
+        int hole = slot;
+        int next = (slot + 1) & this.mask;
+        int stored;
+        while ((stored = this.slot_values.getInt(next)) != 0) {
+          long next_key = this.slot_keys.getLong(next);
+          int home = slot(next_key);
+          if (((next - home) & this.mask) >= ((next - hole) & this.mask)) {
+            this.slot_keys.setLong(hole, next_key);
+            this.slot_values.setInt(hole, stored);
+            hole = next;
+          }
+          next = (next + 1) & this.mask;
+        }
+        this.slot_values.setInt(hole, 0);
+        this.size--;
+        return;
+      }
+      slot = (slot + 1) & this.mask;
+    }
+  }
+
+  @Override
+  public void clear() {
+    for (int slot = 0; slot <= this.mask; slot++) {
+      this.slot_values.setInt(slot, 0);
+    }
+    this.size = 0;
+  }
+}
@@ -0,0 +1,226 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// Simulates one trace per core, each core with its own L1 and every core
+// sharing the levels from L2 down, the private L1s kept coherent with MSI or
+// MESI.
+//
+// Cores take turns of quantum accesses, round robin. A turn runs in two
+// phases. First every core runs its accesses on its L1 alone, on as many
+// threads as asked, and logs what it needs from the others: misses, victims
+// and writes to clean lines, see Cache.coherence_requests. Then this thread
+// goes through the logs core by core, in order, keeping a directory of which
+// cores hold each block, invalidating or downgrading the copies of other
+// cores and passing misses and writebacks to the shared levels. An access
+// thus sees what other cores did up to the end of the previous turn, a
+// quantum of 1 being closest to a strict interleaving, and one core with a
+// quantum of 1 ending as sim_cache would. Results don't depend on the number
+// of threads.
+//
+// Lines are Modified when dirty, Shared or, for MESI, Exclusive when clean.
+// Exclusive is not kept in the line but in the directory, set when a core
+// read a block no other core held, so a later write to it needs no upgrade.
+class MultiCoreSimulation {
+  static final int DEFAULT_QUANTUM = 10000;
+  // Sharers are the low bits of a directory entry, under the exclusive bit,
+  // and entries must stay positive.
+  static final int MAX_CORES = 30;
+  static final int EXCLUSIVE = 1 << MAX_CORES;
+  static final int SHARERS = EXCLUSIVE - 1;
+
+  final Cache[] l1_caches;
+  final Cache shared_cache;
+  final TraceList[] traces;
+  final boolean mesi;
+  final int quantum;
+  // Per core coherence counts. Upgrades are writes to clean lines that had to
+  // ask the other cores, invalidations are lines lost to writes of other
+  // cores and interventions dirty lines written back for other cores.
+  final long[] upgrades;
+  final long[] invalidations;
+  final long[] interventions;
+
+  private final LongIntHashMap directory;
+  private final int block_offset;
+  // Counts requests that reached the shared levels, their trace index.
+  private int shared_index = 0;
+
+  // Builds an L1 per trace from config and the levels below it once, shared.
+  MultiCoreSimulation(SimulationConfig config, TraceList[] traces, boolean mesi, int quantum) {
+    if (traces.length < 1 || traces.length > MAX_CORES) {
+      throw new IllegalArgumentException("Multi-core runs take 1 to " + MAX_CORES + " traces");
+    }
+    if (config.l2_size <= 0) {
+      throw new IllegalArgumentException("Multi-core runs need a shared L2");
+    }
+    if (ReplacementPolicies.find(config.replacement_policy).needsTrace()) {
+      throw new IllegalArgumentException("Optimal needs a single trace, it can't be used on several cores");
+    }
+    this.traces = traces;
+    this.mesi = mesi;
+    this.quantum = quantum;
+    int cores = traces.length;
+    this.upgrades = new long[cores];
+    this.invalidations = new long[cores];
+    this.interventions = new long[cores];
+
+    // First core gets the whole hierarchy, the others only an L1 configured
+    // the same.
+    SimulationConfig private_config = new SimulationConfig(config.block_size, config.l1_size, config.l1_assoc, 0, 0,
+        config.replacement_policy, config.inclusion_property);
+    private_config.high_assoc_threshold = config.high_assoc_threshold;
+    private_config.off_heap_levels = config.off_heap_levels & 1;
+    private_config.set_scan_min_ways = config.set_scan_min_ways;
+    this.l1_caches = new Cache[cores];
+    this.l1_caches[0] = config.buildHierarchy(null);
+    this.shared_cache = this.l1_caches[0].nextCache;
+    this.l1_caches[0].nextCache = null;
+    this.shared_cache.prevCache = null;
+    this.shared_cache.private_caches = this.l1_caches;
+    for (int core = 0; core < cores; core++) {
+      if (core > 0) {
+        this.l1_caches[core] = private_config.buildHierarchy(null);
+      }
+      this.l1_caches[core].coherence_requests = new TraceList(quantum);
+    }
+    this.block_offset = this.l1_caches[0].block_offset;
+    this.directory = new LongIntHashMap(cores * (config.l1_size / config.block_size));
+  }
+
+  // Runs every trace to its end, private caches of a turn on up to threads
+  // threads.
+  void simulate(int threads) throws InterruptedException, ExecutionException {
+    int longest = 0;
+    for (TraceList trace_list : this.traces) {
+      longest = Math.max(longest, trace_list.length);
+    }
+    ForkJoinPool pool = threads > 1 ? new ForkJoinPool(Math.min(threads, this.traces.length)) : null;
+    try {
+      List<Future<?>> tasks = new ArrayList<>();
+      for (long first = 0; first < longest; first += this.quantum) {
+        int turn_first = (int) first;
+        int turn_last = (int) Math.min(first + this.quantum, longest);
+        for (int core = 0; core < this.traces.length; core++) {
+          int current = core;
+          if (pool == null) {
+            runTurn(current, turn_first, turn_last);
+          } else {
+            tasks.add(pool.submit(() -> runTurn(current, turn_first, turn_last)));
+          }
+        }
+        for (Future<?> task : tasks) {
+          task.get();
+        }
+        tasks.clear();
+        for (int core = 0; core < this.traces.length; core++) {
+          applyRequests(core);
+        }
+      }
+    } finally {
+      if (pool != null) {
+        pool.shutdown();
+      }
+    }
+  }
+
+  // Accesses first up to last of a core on its L1, those past the end of its
+  // trace are skipped.
+  private void runTurn(int core, int first, int last) {
+    TraceList trace_list = this.traces[core];
+    if (first < trace_list.length) {
+      CacheSimulator.simulate(this.l1_caches[core], trace_list, first, Math.min(last, trace_list.length));
+    }
+  }
+
+  // Requests a core logged on its turn, in order.
+  private void applyRequests(int core) {
+    Cache l1_cache = this.l1_caches[core];
+    TraceList requests = l1_cache.coherence_requests;
+    int core_bit = 1 << core;
+    for (int i = 0; i < requests.length; i++) {
+      byte op_code = requests.op_codes[i];
+      long address = requests.addresses[i];
+      long block_address = address >>> this.block_offset;
+      int entry = this.directory.get(block_address);
+      if (entry == LongIntHashMap.NO_VALUE) {
+        entry = 0;
+      }
+      int others = entry & SHARERS & ~core_bit;
+      if (op_code == Cache.OP_READ) {
+        // Dirty copies are written back and kept shared, the block is
+        // exclusive when no other core holds it.
+        others = snoopOthers(others, address, false);
+        this.shared_cache.checkCache(this.shared_index++, Cache.OP_READ, address);
+        l1_cache.replacing = false;
+        this.directory.put(block_address, others | core_bit | (others == 0 && this.mesi ? EXCLUSIVE : 0));
+      } else if (op_code == Cache.OP_UPGRADE) {
+        // Modified from Exclusive needs no one else, a Shared line has the
+        // other copies invalidated.
+        if ((entry & EXCLUSIVE) == 0 || others != 0) {
+          this.upgrades[core]++;
+          snoopOthers(others, address, true);
+        }
+        this.directory.put(block_address, core_bit | EXCLUSIVE);
+      } else if (op_code == Cache.OP_WRITEBACK || op_code == Cache.OP_EVICT) {
+        // A victim is logged right before the miss that replaced it, which
+        // the L1 already filled. Back invalidations of the victim find it
+        // until the miss is read, see Cache.replacing.
+        l1_cache.replacing = true;
+        l1_cache.replaced_block = block_address;
+        l1_cache.replacing_address = requests.addresses[i + 1];
+        if (op_code == Cache.OP_WRITEBACK) {
+          this.shared_cache.checkCache(this.shared_index++, Cache.OP_WRITE, address);
+        }
+        if (others == 0) {
+          this.directory.remove(block_address);
+        } else {
+          this.directory.put(block_address, others | (entry & EXCLUSIVE));
+        }
+      } else {
+        // Write misses read the block for ownership, like the single core
+        // hierarchy reads it from L2.
+        snoopOthers(others, address, true);
+        this.shared_cache.checkCache(this.shared_index++, Cache.OP_READ, address);
+        l1_cache.replacing = false;
+        this.directory.put(block_address, core_bit | EXCLUSIVE);
+      }
+    }
+    requests.length = 0;
+  }
+
+  // Invalidates or downgrades the block in the L1 of every core in sharers,
+  // dirty copies going to the shared levels. Directory bits may be stale
+  // after back invalidations, so returns the cores that really held it.
+  private int snoopOthers(int sharers, long address, boolean invalidate) {
+    int holders = 0;
+    for (int rest = sharers; rest != 0; rest &= rest - 1) {
+      int core = Integer.numberOfTrailingZeros(rest);
+      long line = this.l1_caches[core].snoop(address, invalidate);
+      if ((line & Cache.LINE_VALID) == 0) {
+        continue;
+      }
+      holders |= 1 << core;
+      if (invalidate) {
+        this.invalidations[core]++;
+      }
+      if ((line & Cache.LINE_DIRTY) != 0) {
+        this.interventions[core]++;
+        this.shared_cache.checkCache(this.shared_index++, Cache.OP_WRITE, address);
+      }
+    }
+    return holders;
+  }
+
+  // Misses and writebacks of the last level plus invalidations at every
+  // level, private ones included.
+  long memoryTraffic() {
+    long traffic = CacheSimulator.memoryTraffic(this.shared_cache);
+    for (Cache l1_cache : this.l1_caches) {
+      traffic += l1_cache.mem_trafic;
+    }
+    return traffic;
+  }
+}
@@ -0,0 +1,92 @@
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+
+// Runs a multi-threaded workload given as one trace per core, see
+// MultiCoreSimulation. Parameters are those of sim_cache with the traces
+// separated by commas, L1 being the private cache of each core and L2 and
+// lower levels shared by all of them.
+public class MultiCoreSimulator {
+  static final String OPTIONS_USAGE = "Options: --protocol=msi|mesi --quantum=<accesses> --threads=<threads>"
+      + " --levels=<SIZE>:<ASSOC>,... --high-assoc=<ways> --off-heap[=<level>,...] --simd[=<ways>] --no-contents";
+
+  public MultiCoreSimulator(String[] args) {
+    if (args.length < 8) {
+      System.out.println("You must enter all input");
+      System.out.println("<BLOCKSIZE> <L1_SIZE> <L1_ASSOC> <L2_SIZE> <L2_ASSOC> <REPLACEMENT_POLICY>"
+          + " <INCLUSION_PROPERTY> <trace_file>,<trace_file>,...");
+      System.exit(0);
+    }
+    SimOptions options = null;
+    SimulationConfig config = null;
+    try {
+      options = new SimOptions(args, 8, "protocol", "quantum", "threads", "levels", "high-assoc", "off-heap", "simd",
+          "no-contents");
+      config = new SimulationConfig(Integer.parseInt(args[0]), Integer.parseInt(args[1]), Integer.parseInt(args[2]),
+          Integer.parseInt(args[3]), Integer.parseInt(args[4]), args[5], Integer.parseInt(args[6]));
+      config.high_assoc_threshold = options.getInt("high-assoc", SimulationConfig.DEFAULT_HIGH_ASSOC_THRESHOLD);
+      if (options.has("simd")) {
+        String ways = options.get("simd", "");
+        config.set_scan_min_ways = ways.isEmpty() ? SetScan.DEFAULT_MIN_WAYS : Integer.parseInt(ways);
+      }
+      if (options.has("levels")) {
+        CacheSimulator.parseLevels(config, options.get("levels", ""));
+      }
+      if (options.has("off-heap")) {
+        CacheSimulator.parseOffHeap(config, options.get("off-heap", ""));
+      }
+    } catch (IllegalArgumentException e) {
+      System.out.println(e.getMessage());
+      System.out.println(OPTIONS_USAGE);
+      System.exit(0);
+    }
+    String config_error = config.validate();
+    if (config_error != null) {
+      System.out.println(config_error);
+      System.exit(0);
+    }
+    String protocol = options.get("protocol", "mesi");
+    if (!protocol.equals("msi") && !protocol.equals("mesi")) {
+      System.out.println("Protocol must be msi or mesi");
+      System.exit(0);
+    }
+    int quantum = options.getInt("quantum", MultiCoreSimulation.DEFAULT_QUANTUM);
+    String threads_option = options.get("threads", "");
+    int threads = threads_option.isEmpty() ? Runtime.getRuntime().availableProcessors()
+        : Integer.parseInt(threads_option);
+    if (quantum < 1 || threads < 1) {
+      System.out.println("Quantum and threads must be at least 1");
+      System.exit(0);
+    }
+
+    String[] trace_file_names = args[7].split(",");
+    TraceList[] traces = new TraceList[trace_file_names.length];
+    for (int core = 0; core < traces.length; core++) {
+      traces[core] = CacheSimulator.loadFile(trace_file_names[core]);
+    }
+    MultiCoreSimulation simulation = null;
+    try {
+      simulation = new MultiCoreSimulation(config, traces, protocol.equals("mesi"), quantum);
+      simulation.simulate(threads);
+    } catch (IllegalArgumentException e) {
+      System.out.println(e.getMessage());
+      System.exit(0);
+    } catch (InterruptedException | ExecutionException e) {
+      System.out.println("Error: " + e);
+      System.exit(0);
+    }
+
+    String header = CacheSimulator.textHeader(config, args[7]) + String.format("""
+        COHERENCE PROTOCOL:    %s
+        CORES:                 %s
+        QUANTUM:               %s
+        """, protocol.toUpperCase(), traces.length, quantum);
+    ReportWriter report = new ReportWriter(System.out);
+    try {
+      report.writeMultiCoreText(header, simulation, !options.has("no-contents"));
+      report.flush();
+    } catch (IOException e) {
+      System.out.println("Error: " + e);
+      System.exit(0);
+    }
+  }
+}
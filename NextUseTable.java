@@ -0,0 +1,21 @@
+// Next occurrence of every trace position's block, built from the dense block
+// ids of a BlockDictionary walking the trace backwards once.
+class NextUseTable {
+  // Position of next access to the same block, 0 when it is never used again.
+  // Position 0 can never be a next use so it is safe as a marker.
+  final int[] next_use;
+  // First position of each block id.
+  final int[] first_use;
+
+  NextUseTable(BlockDictionary dictionary) {
+    int[] block_ids = dictionary.block_ids;
+    this.next_use = new int[block_ids.length];
+    // Holds latest position seen for each id, which is the first one when done.
+    this.first_use = new int[dictionary.count];
+    for (int i = block_ids.length - 1; i >= 0; i--) {
+      int block_id = block_ids[i];
+      this.next_use[i] = this.first_use[block_id];
+      this.first_use[block_id] = i;
+    }
+  }
+}
@@ -0,0 +1,92 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// Runs every level below L1 on its own thread. A level gets the misses and
+// writebacks of the level above through an EventRing, back invalidations go
+// up through a second ring. L1 runs on the thread driving the trace.
+//
+// Non inclusive levels never hear back from below, so they run freely ahead
+// of each other. On inclusive hierarchies a level that sent events down waits
+// for them to be acknowledged, applying invalidations that come up meanwhile,
+// before filling its line. That keeps results identical to the serial model,
+// at the cost of lock step on misses.
+//
+// A level that fails closes every ring, so threads waiting on one, the one
+// driving L1 included, throw instead of waiting forever.
+class PipelinedHierarchy {
+  private final List<Thread> threads = new ArrayList<>();
+  private final List<EventRing> rings = new ArrayList<>();
+  private final EventRing l2_events;
+  private volatile Throwable error = null;
+
+  private PipelinedHierarchy(Cache l1_cache) {
+    for (Cache level = l1_cache; level.nextCache != null; level = level.nextCache) {
+      Cache next_level = level.nextCache;
+      level.to_next = new EventRing();
+      level.from_next = new EventRing();
+      next_level.from_previous = level.to_next;
+      next_level.to_previous = level.from_next;
+      this.rings.add(level.to_next);
+      this.rings.add(level.from_next);
+      Thread thread = new Thread(() -> runLevel(next_level), "cache-level");
+      thread.setDaemon(true);
+      this.threads.add(thread);
+    }
+    this.l2_events = l1_cache.to_next;
+  }
+
+  // Links and starts the threads, L1 accesses then go through checkCache as
+  // usual on the calling thread.
+  static PipelinedHierarchy start(Cache l1_cache) {
+    PipelinedHierarchy pipeline = new PipelinedHierarchy(l1_cache);
+    for (Thread thread : pipeline.threads) {
+      thread.start();
+    }
+    return pipeline;
+  }
+
+  // Waits for every level to drain, counters can be read afterwards.
+  void finish() throws InterruptedException {
+    if (this.l2_events != null) {
+      this.l2_events.put(0, EventRing.OP_END, 0);
+    }
+    for (Thread thread : this.threads) {
+      thread.join();
+    }
+    if (this.error != null) {
+      throw new IllegalStateException("Cache level failed", this.error);
+    }
+  }
+
+  private void runLevel(Cache level) {
+    try {
+      EventRing events = level.from_previous;
+      boolean acknowledge = level.inclusion_property == 1;
+      while (true) {
+        events.take();
+        if (events.taken_op_code == EventRing.OP_END) {
+          if (level.to_next != null) {
+            level.to_next.put(0, EventRing.OP_END, 0);
+          }
+          return;
+        }
+        level.checkCache(events.taken_trace_index, events.taken_op_code, events.taken_address);
+        if (acknowledge) {
+          level.to_previous.put(events.taken_trace_index, EventRing.OP_ACK, 0);
+        }
+      }
+    } catch (Throwable e) {
+      fail(e);
+    }
+  }
+
+  // Keeps the first failure, later ones come from closed rings.
+  private synchronized void fail(Throwable e) {
+    if (this.error == null) {
+      this.error = e;
+      for (EventRing ring : this.rings) {
+        ring.close(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,284 @@
+import java.util.Arrays;
+
+// Hardware prefetcher of one level, see Cache.prefetcher. It sees the demand
+// accesses of its level, not prefetches, and fetches whole blocks ahead of
+// them. Next line and stride prefetchers fill the level itself, stream
+// buffers keep their blocks aside until a miss takes one. Blocks are read
+// from the level below as OP_PREFETCH, which fills it without counting as a
+// demand access there, or from memory as part of mem_trafic.
+//
+// A prefetch is useful when a demand access finds its block, and also late
+// when that happens within LATE_WINDOW demand accesses of the level after it
+// was issued, as the block would still be on its way. A prefetch is polluting
+// when a block it evicted is missed on later.
+abstract class Prefetcher {
+  static final String KINDS = "next, stride or stream";
+  static final int LATE_WINDOW = 16;
+
+  final Cache cache;
+  final int level_number;
+  final int degree;
+  long issued = 0;
+  long useful = 0;
+  long late = 0;
+  long polluting = 0;
+
+  Prefetcher(Cache cache, int level_number, int degree) {
+    this.cache = cache;
+    this.level_number = level_number;
+    this.degree = degree;
+  }
+
+  // Prefetcher of the given kind, null when there is no such kind. Degree is
+  // how many blocks it fetches ahead, 0 for its default.
+  static Prefetcher create(String kind, int degree, Cache cache, int level_number) {
+    switch (kind) {
+      case "next":
+        return new NextLinePrefetcher(cache, level_number, degree > 0 ? degree : 1);
+      case "stride":
+        return new StridePrefetcher(cache, level_number, degree > 0 ? degree : 2);
+      case "stream":
+        return new StreamBuffers(cache, level_number, degree > 0 ? degree : 4);
+      default:
+        return null;
+    }
+  }
+
+  abstract String kind();
+
+  // Demand access that found its block at slot.
+  void hit(int trace_index, int slot, long block_address) {
+  }
+
+  // Whether a demand miss on the block is served by the prefetcher, which
+  // then gives the block up. The miss counts as a hit and isn't asked of the
+  // level below, the line is filled all the same.
+  boolean take(long block_address) {
+    return false;
+  }
+
+  // Line at slot is about to hold a new block, victim being what it held,
+  // for a prefetch when prefetch is set.
+  void replace(int slot, long victim, int address_index, boolean prefetch) {
+  }
+
+  // Demand miss, once its line is filled.
+  void miss(int trace_index, long block_address) {
+  }
+
+  // Demand accesses of the level so far, the time prefetches are measured in.
+  final long clock() {
+    return this.cache.read_hits + this.cache.write_hits;
+  }
+}
+
+// Prefetches into the level itself. Unused prefetched lines carry the clock
+// they were issued at, blocks they evicted are remembered until a cache's
+// worth of them piled up.
+abstract class CachePrefetcher extends Prefetcher {
+  private final long[] prefetched_at;
+  private final LongIntHashMap evicted_blocks;
+  private final int remembered;
+
+  CachePrefetcher(Cache cache, int level_number, int degree) {
+    super(cache, level_number, degree);
+    this.remembered = cache.sets * cache.cache_assoc;
+    this.prefetched_at = new long[this.remembered];
+    this.evicted_blocks = new LongIntHashMap(this.remembered);
+  }
+
+  // Issues a prefetch of the block unless the level has it already.
+  final void prefetch(int trace_index, long block_address) {
+    long address = block_address << this.cache.block_offset;
+    if (block_address < 0 || this.cache.holds(address)) {
+      return;
+    }
+    this.issued++;
+    this.evicted_blocks.remove(block_address);
+    this.cache.checkCache(trace_index, Cache.OP_PREFETCH, address);
+  }
+
+  @Override
+  final void hit(int trace_index, int slot, long block_address) {
+    long issued_at = this.prefetched_at[slot];
+    if (issued_at != 0) {
+      this.prefetched_at[slot] = 0;
+      this.useful++;
+      if (clock() - issued_at < LATE_WINDOW) {
+        this.late++;
+      }
+    }
+    train(trace_index, block_address, false, issued_at != 0);
+  }
+
+  @Override
+  final void replace(int slot, long victim, int address_index, boolean prefetch) {
+    this.prefetched_at[slot] = prefetch ? clock() : 0;
+    if (prefetch && (victim & Cache.LINE_VALID) != 0) {
+      if (this.evicted_blocks.size() >= this.remembered) {
+        this.evicted_blocks.clear();
+      }
+      this.evicted_blocks.put(((victim >>> Cache.LINE_TAG_SHIFT) << this.cache.index_offset) | address_index, 0);
+    }
+  }
+
+  @Override
+  final void miss(int trace_index, long block_address) {
+    if (this.evicted_blocks.size() > 0 && this.evicted_blocks.get(block_address) != LongIntHashMap.NO_VALUE) {
+      this.polluting++;
+      this.evicted_blocks.remove(block_address);
+    }
+    train(trace_index, block_address, true, false);
+  }
+
+  // Demand access to the block, a miss or a hit on a line prefetched and
+  // not used until now.
+  abstract void train(int trace_index, long block_address, boolean miss, boolean prefetched);
+}
+
+// Tagged next line: a miss, or the first use of a prefetched line, fetches
+// the degree blocks that follow.
+class NextLinePrefetcher extends CachePrefetcher {
+  NextLinePrefetcher(Cache cache, int level_number, int degree) {
+    super(cache, level_number, degree);
+  }
+
+  String kind() {
+    return "next";
+  }
+
+  void train(int trace_index, long block_address, boolean miss, boolean prefetched) {
+    if (miss || prefetched) {
+      for (int ahead = 1; ahead <= this.degree; ahead++) {
+        prefetch(trace_index, block_address + ahead);
+      }
+    }
+  }
+}
+
+// Stride detection without program counters. Accesses are grouped by region
+// of 2^REGION_SHIFT blocks, each region in a small table keeps its last block
+// and the distance between its last accesses. Once the same distance came
+// back often enough, the degree blocks following it are fetched.
+class StridePrefetcher extends CachePrefetcher {
+  static final int TABLE_BITS = 6;
+  static final int REGION_SHIFT = 6;
+  static final int MAX_CONFIDENCE = 3;
+  static final int CONFIDENT = 2;
+
+  private final long[] regions = new long[1 << TABLE_BITS];
+  private final long[] last_blocks = new long[1 << TABLE_BITS];
+  private final long[] strides = new long[1 << TABLE_BITS];
+  private final int[] confidences = new int[1 << TABLE_BITS];
+
+  StridePrefetcher(Cache cache, int level_number, int degree) {
+    super(cache, level_number, degree);
+    Arrays.fill(this.regions, -1);
+  }
+
+  String kind() {
+    return "stride";
+  }
+
+  void train(int trace_index, long block_address, boolean miss, boolean prefetched) {
+    long region = block_address >>> REGION_SHIFT;
+    int entry = (int) ((region * 0x9E3779B97F4A7C15L) >>> (64 - TABLE_BITS));
+    if (this.regions[entry] != region) {
+      this.regions[entry] = region;
+      this.last_blocks[entry] = block_address;
+      this.strides[entry] = 0;
+      this.confidences[entry] = 0;
+      return;
+    }
+    long stride = block_address - this.last_blocks[entry];
+    if (stride == 0) {
+      return;
+    }
+    this.last_blocks[entry] = block_address;
+    // A different distance wears confidence down before replacing the one
+    // kept, so a single odd access doesn't lose the pattern.
+    if (stride == this.strides[entry]) {
+      this.confidences[entry] = Math.min(this.confidences[entry] + 1, MAX_CONFIDENCE);
+    } else if (this.confidences[entry] > 0) {
+      this.confidences[entry]--;
+    } else {
+      this.strides[entry] = stride;
+    }
+    if (this.confidences[entry] >= CONFIDENT) {
+      for (int ahead = 1; ahead <= this.degree; ahead++) {
+        prefetch(trace_index, block_address + ahead * stride);
+      }
+    }
+  }
+}
+
+// Stream buffers in front of the level. A miss no buffer can serve restarts
+// the least recently used one on the degree blocks after it. A miss on the
+// block at the head of a buffer takes it and the buffer fetches one more
+// after its tail. Buffers never pollute the level.
+class StreamBuffers extends Prefetcher {
+  static final int BUFFERS = 4;
+
+  // Next block each buffer hands out and how many follow it, in order.
+  private final long[] heads = new long[BUFFERS];
+  private final int[] counts = new int[BUFFERS];
+  private final long[] used_at = new long[BUFFERS];
+  // Issue clock of each block, at block % degree in its buffer.
+  private final long[][] issued_at;
+  // Buffer that served the current miss, -1 when none did.
+  private int taken_from = -1;
+
+  StreamBuffers(Cache cache, int level_number, int degree) {
+    super(cache, level_number, degree);
+    this.issued_at = new long[BUFFERS][degree];
+  }
+
+  String kind() {
+    return "stream";
+  }
+
+  @Override
+  boolean take(long block_address) {
+    for (int buffer = 0; buffer < BUFFERS; buffer++) {
+      if (this.counts[buffer] > 0 && this.heads[buffer] == block_address) {
+        this.useful++;
+        if (clock() - this.issued_at[buffer][(int) Long.remainderUnsigned(block_address, this.degree)]
+            < LATE_WINDOW) {
+          this.late++;
+        }
+        this.heads[buffer]++;
+        this.counts[buffer]--;
+        this.taken_from = buffer;
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  void miss(int trace_index, long block_address) {
+    int buffer = this.taken_from;
+    this.taken_from = -1;
+    if (buffer < 0) {
+      buffer = 0;
+      for (int other = 1; other < BUFFERS; other++) {
+        if (this.used_at[other] < this.used_at[buffer]) {
+          buffer = other;
+        }
+      }
+      this.heads[buffer] = block_address + 1;
+      this.counts[buffer] = 0;
+    }
+    this.used_at[buffer] = clock();
+    while (this.counts[buffer] < this.degree) {
+      fetch(trace_index, buffer, this.heads[buffer] + this.counts[buffer]);
+      this.counts[buffer]++;
+    }
+  }
+
+  private void fetch(int trace_index, int buffer, long block_address) {
+    this.issued++;
+    this.issued_at[buffer][(int) Long.remainderUnsigned(block_address, this.degree)] = clock();
+    this.cache.fetchBelow(trace_index, block_address << this.cache.block_offset);
+  }
+}
@@ -0,0 +1,102 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+// Replacement policies by name. Shipped ones come first, then those found by
+// ServiceLoader on the class path, a name already taken is ignored.
+class ReplacementPolicies {
+  // Policies the command line took as numbers before they had names.
+  private static final String[] NUMBERED = { "lru", "plru", "optimal" };
+
+  private static final Map<String, ReplacementPolicyProvider> POLICIES = load();
+
+  // Provider of a policy given by name or by its old number, null when there
+  // is none.
+  static ReplacementPolicyProvider find(String name) {
+    if (name.length() == 1 && name.charAt(0) >= '0' && name.charAt(0) < '0' + NUMBERED.length) {
+      name = NUMBERED[name.charAt(0) - '0'];
+    }
+    return POLICIES.get(name.toLowerCase());
+  }
+
+  static String names() {
+    return String.join(", ", POLICIES.keySet());
+  }
+
+  private static Map<String, ReplacementPolicyProvider> load() {
+    Map<String, ReplacementPolicyProvider> policies = new LinkedHashMap<>();
+    add(policies, new Shipped("lru", "LRU", true,
+        (cache_assoc, sets, block_offset, trace_list, lookahead) -> new BasicLRU(cache_assoc, sets)) {
+      @Override
+      public LRUInterface createOffHeap(int cache_assoc, int sets, int block_offset, TraceList trace_list,
+          int lookahead) {
+        return new OffHeapLRU(cache_assoc, sets);
+      }
+    });
+    add(policies, new Shipped("plru", "Pseudo-LRU", true,
+        (cache_assoc, sets, block_offset, trace_list, lookahead) -> new PseudoLRU(cache_assoc, sets)));
+    add(policies, new Shipped("optimal", "Optimal", false, (cache_assoc, sets, block_offset, trace_list,
+        lookahead) -> lookahead > 0 ? new WindowedOptimalLRU(cache_assoc, sets, block_offset, lookahead)
+            : new OptimalLRU(cache_assoc, sets, block_offset, trace_list)) {
+      @Override
+      public boolean needsTrace() {
+        return true;
+      }
+    });
+    add(policies, new Shipped("srrip", "SRRIP", true,
+        (cache_assoc, sets, block_offset, trace_list, lookahead) -> new RRIP(cache_assoc, sets, false)));
+    // Bimodal insertion throttle is shared by all sets.
+    add(policies, new Shipped("brrip", "BRRIP", false,
+        (cache_assoc, sets, block_offset, trace_list, lookahead) -> new RRIP(cache_assoc, sets, true)));
+    add(policies, new Shipped("clock", "CLOCK", true,
+        (cache_assoc, sets, block_offset, trace_list, lookahead) -> new Clock(cache_assoc, sets)));
+    add(policies, new Shipped("lfu", "LFU", true,
+        (cache_assoc, sets, block_offset, trace_list, lookahead) -> new AgingLFU(cache_assoc, sets)));
+    // One generator is drawn from by all sets.
+    add(policies, new Shipped("random", "Random", false,
+        (cache_assoc, sets, block_offset, trace_list, lookahead) -> new SeededRandom(cache_assoc, sets)));
+    for (ReplacementPolicyProvider provider : ServiceLoader.load(ReplacementPolicyProvider.class)) {
+      add(policies, provider);
+    }
+    return policies;
+  }
+
+  private static void add(Map<String, ReplacementPolicyProvider> policies, ReplacementPolicyProvider provider) {
+    policies.putIfAbsent(provider.name().toLowerCase(), provider);
+  }
+
+  private interface Factory {
+    LRUInterface create(int cache_assoc, int sets, int block_offset, TraceList trace_list, int lookahead);
+  }
+
+  private static class Shipped implements ReplacementPolicyProvider {
+    private final String name;
+    private final String display_name;
+    private final boolean independent_sets;
+    private final Factory factory;
+
+    Shipped(String name, String display_name, boolean independent_sets, Factory factory) {
+      this.name = name;
+      this.display_name = display_name;
+      this.independent_sets = independent_sets;
+      this.factory = factory;
+    }
+
+    public String name() {
+      return this.name;
+    }
+
+    public String displayName() {
+      return this.display_name;
+    }
+
+    public LRUInterface create(int cache_assoc, int sets, int block_offset, TraceList trace_list, int lookahead) {
+      return this.factory.create(cache_assoc, sets, block_offset, trace_list, lookahead);
+    }
+
+    @Override
+    public boolean independentSets() {
+      return this.independent_sets;
+    }
+  }
+}
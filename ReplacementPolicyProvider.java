@@ -0,0 +1,38 @@
+// Replacement policy that can be picked by name for every level of a
+// hierarchy. Policies shipped with the simulator are always known, more can be
+// added from the class path by listing their provider classes in
+// META-INF/services/ReplacementPolicyProvider, see ReplacementPolicies. The
+// simulator is in the unnamed package, so providers are too; what they get
+// and return, LRUInterface, TraceList and the checkpoint streams, is public.
+public interface ReplacementPolicyProvider {
+  // Name given on the command line, lower case.
+  String name();
+
+  // Name printed in the simulator configuration.
+  String displayName();
+
+  // Policy state for a cache of sets sets of cache_assoc ways. Only policies
+  // that look ahead use the trace, which may be null when streaming, or the
+  // lookahead, 0 unless streaming.
+  LRUInterface create(int cache_assoc, int sets, int block_offset, TraceList trace_list, int lookahead);
+
+  // Same as create with the state kept off the Java heap, for caches of many
+  // gigabytes. By default the state stays on the heap, as it does for every
+  // shipped policy but LRU: PLRU, RRIP, CLOCK, LFU and random keep 4 bits or
+  // less per way, Optimal an int per way besides its next use tables.
+  default LRUInterface createOffHeap(int cache_assoc, int sets, int block_offset, TraceList trace_list,
+      int lookahead) {
+    return create(cache_assoc, sets, block_offset, trace_list, lookahead);
+  }
+
+  // Whether the policy needs the whole trace, or a lookahead when streaming.
+  default boolean needsTrace() {
+    return false;
+  }
+
+  // Whether a set is replaced the same way whatever its index and the other
+  // sets, so sets may be split on threads, see ShardedSimulation.
+  default boolean independentSets() {
+    return true;
+  }
+}
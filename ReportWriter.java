@@ -0,0 +1,552 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+// Writes simulation results as they are formatted instead of building them in
+// memory. Text is the usual terminal report, JSON and CSV hold the statistics
+// with the sweep columns and, unless skipped, contents of every level. Levels
+// with metrics get them after the statistics. Numbers read the same whatever
+// the default locale.
+class ReportWriter {
+  static final String[] CSV_COLUMNS = { "block_size", "l1_size", "l1_assoc", "l2_size", "l2_assoc",
+      "replacement_policy", "inclusion_property", "l1_reads", "l1_read_misses", "l1_writes", "l1_write_misses",
+      "l1_miss_rate", "l1_writebacks", "l2_reads", "l2_read_misses", "l2_writes", "l2_write_misses", "l2_miss_rate",
+      "l2_writebacks", "memory_traffic" };
+  static final String CONTENTS_COLUMNS = "level,set,way,tag,dirty";
+  static final String MISS_CLASS_COLUMNS = "level,compulsory_misses,capacity_misses,conflict_misses";
+  static final String SET_COLUMNS = "level,set,hits,misses,evictions";
+  static final String WINDOW_COLUMNS = "level,window,accesses,misses,miss_rate";
+  static final String PREFETCH_COLUMNS = "level,prefetcher,degree,issued,useful,late,polluting";
+  static final String SAMPLED_COLUMNS = "level,windows,miss_rate,confidence,full_miss_rate";
+
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  private final Writer out;
+  // Scratch for hex tags and numbers, long as the widest of them.
+  private final char[] digits = new char[20];
+
+  ReportWriter(OutputStream stream) {
+    this.out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), 1 << 16);
+  }
+
+  void flush() throws IOException {
+    this.out.flush();
+  }
+
+  // Terminal report, header holds the configuration lines.
+  void writeText(String header, Cache l1_cache, boolean contents) throws IOException {
+    this.out.write(header);
+    if (contents) {
+      writeTextContents(l1_cache);
+    }
+    writeTextStatistics(l1_cache);
+    for (Cache level = l1_cache; level != null; level = level.nextCache) {
+      if (level.prefetcher != null) {
+        writeTextPrefetcher(level.prefetcher);
+      }
+    }
+    for (Cache level = l1_cache; level != null; level = level.nextCache) {
+      if (level.metrics != null) {
+        writeTextMetrics(level.metrics);
+      }
+    }
+  }
+
+  private void writeTextPrefetcher(Prefetcher prefetcher) throws IOException {
+    this.out.write(String.format(Locale.ROOT, """
+        ===== L%d prefetcher =====
+        kind:                         %s, degree %d
+        prefetches issued:            %s
+        useful prefetches:            %s
+        late prefetches:              %s
+        polluting prefetches:         %s
+        """, prefetcher.level_number, prefetcher.kind(), prefetcher.degree, prefetcher.issued, prefetcher.useful,
+        prefetcher.late, prefetcher.polluting));
+  }
+
+  private void writeTextContents(Cache l1_cache) throws IOException {
+    writeTextContents(l1_cache, 1);
+  }
+
+  // Contents of level and those below it, level being number level_number.
+  private void writeTextContents(Cache level, int level_number) throws IOException {
+    for (; level != null; level = level.nextCache, level_number++) {
+      this.out.write("===== L" + level_number + " contents =====\n");
+      writeTextSets(level);
+    }
+  }
+
+  private void writeTextSets(Cache level) throws IOException {
+    for (int set = 0; set < level.sets; set++) {
+      this.out.write("Set     ");
+      writeDecimal(set);
+      this.out.write(":\t");
+      int set_base = set * level.cache_assoc;
+      for (int assoc_index = 0; assoc_index < level.cache_assoc; assoc_index++) {
+        long line = level.cache_memory.get(set_base + assoc_index);
+        // Lines never filled or invalidated have no tag to show.
+        if ((line & Cache.LINE_VALID) != 0) {
+          writeHex(line >>> Cache.LINE_TAG_SHIFT);
+        } else {
+          this.out.write('-');
+        }
+        this.out.write((line & Cache.LINE_DIRTY) != 0 ? " D \t" : "  \t");
+      }
+      this.out.write('\n');
+    }
+  }
+
+  // Multi-core report, each core's L1 and coherence counts come first, then
+  // the shared levels from L2 down with the memory traffic of the whole.
+  void writeMultiCoreText(String header, MultiCoreSimulation simulation, boolean contents) throws IOException {
+    this.out.write(header);
+    if (contents) {
+      for (int core = 0; core < simulation.l1_caches.length; core++) {
+        this.out.write("===== Core " + core + " L1 contents =====\n");
+        writeTextSets(simulation.l1_caches[core]);
+      }
+      writeTextContents(simulation.shared_cache, 2);
+    }
+    for (int core = 0; core < simulation.l1_caches.length; core++) {
+      Cache l1_cache = simulation.l1_caches[core];
+      double l1_missrate = ((double) l1_cache.read_misses + l1_cache.write_misses)
+          / (l1_cache.read_hits + l1_cache.write_hits);
+      this.out.write(String.format(Locale.ROOT, """
+          ===== Core %d results (raw) =====
+          a. number of L1 reads:        %s
+          b. number of L1 read misses:  %s
+          c. number of L1 writes:       %s
+          d. number of L1 write misses: %s
+          e. L1 miss rate:              %.6f
+          f. number of L1 writebacks:   %s
+          g. number of upgrades:        %s
+          h. number of invalidations:   %s
+          i. number of interventions:   %s
+          """, core, l1_cache.read_hits, l1_cache.read_misses, l1_cache.write_hits, l1_cache.write_misses,
+          l1_missrate, l1_cache.write_back, simulation.upgrades[core], simulation.invalidations[core],
+          simulation.interventions[core]));
+    }
+    this.out.write("===== Shared results (raw) =====\n");
+    char letter = 'a';
+    int level_number = 2;
+    for (Cache level = simulation.shared_cache; level != null; level = level.nextCache, level_number++) {
+      double missrate = ((double) level.read_misses) / (level.read_hits);
+      this.out.write(String.format(Locale.ROOT, "%c. number of L%d reads:        %s\n", letter++, level_number,
+          level.read_hits));
+      this.out.write(String.format(Locale.ROOT, "%c. number of L%d read misses:  %s\n", letter++, level_number,
+          level.read_misses));
+      this.out.write(String.format(Locale.ROOT, "%c. number of L%d writes:       %s\n", letter++, level_number,
+          level.write_hits));
+      this.out.write(String.format(Locale.ROOT, "%c. number of L%d write misses: %s\n", letter++, level_number,
+          level.write_misses));
+      this.out.write(String.format(Locale.ROOT, "%c. L%d miss rate:              %.6f\n", letter++, level_number,
+          missrate));
+      this.out.write(String.format(Locale.ROOT, "%c. number of L%d writebacks:   %s\n", letter++, level_number,
+          level.write_back));
+    }
+    this.out.write(String.format(Locale.ROOT, "%c. total memory traffic:      %s\n", letter,
+        simulation.memoryTraffic()));
+  }
+
+  // Sampled runs replace the raw results, their counts only cover windows.
+  void writeSampledText(String header, Cache l1_cache, SampledSimulation sampling, boolean contents)
+      throws IOException {
+    this.out.write(header);
+    if (contents) {
+      writeTextContents(l1_cache);
+    }
+    this.out.write("===== Sampled results =====\n");
+    this.out.write(sampling.measured_accesses + " accesses measured in windows of " + sampling.window + " every "
+        + sampling.interval + (sampling.skip ? ", skipping all but " + sampling.warmup + " before each"
+            : ", functional warming") + "\n");
+    for (int level = 0; level < sampling.levels; level++) {
+      this.out.write(String.format(Locale.ROOT, "L%d miss rate:                 %.6f +- %.6f (95%%, %d windows)\n",
+          level + 1, sampling.missRate(level), sampling.confidence(level), sampling.window_counts[level]));
+    }
+    if (sampling.full_rates == null) {
+      return;
+    }
+    this.out.write("===== Full simulation =====\n");
+    for (int level = 0; level < sampling.levels; level++) {
+      double error = sampling.missRate(level) - sampling.full_rates[level];
+      this.out.write(String.format(Locale.ROOT, "L%d miss rate:                 %.6f error %+.6f %s\n", level + 1,
+          sampling.full_rates[level], error,
+          Math.abs(error) <= sampling.confidence(level) ? "inside interval" : "outside interval"));
+    }
+  }
+
+  // One row per level, full miss rate is empty unless validated.
+  void writeSampledCsv(SampledSimulation sampling) throws IOException {
+    this.out.write(SAMPLED_COLUMNS + "\n");
+    for (int level = 0; level < sampling.levels; level++) {
+      this.out.write(String.format(Locale.ROOT, "%d,%d,%.6f,%.6f,", level + 1, sampling.window_counts[level],
+          sampling.missRate(level), sampling.confidence(level)));
+      if (sampling.full_rates != null) {
+        this.out.write(String.format(Locale.ROOT, "%.6f", sampling.full_rates[level]));
+      }
+      this.out.write('\n');
+    }
+  }
+
+  void writeSampledJson(SimulationConfig config, String trace_file_name, SampledSimulation sampling)
+      throws IOException {
+    this.out.write("{\"config\":\"" + config + "\",\"trace_file\":\"");
+    writeJsonEscaped(trace_file_name);
+    this.out.write("\",\"interval\":" + sampling.interval + ",\"window\":" + sampling.window + ",\"warmup\":"
+        + sampling.warmup + ",\"skip\":" + sampling.skip + ",\"levels\":[");
+    for (int level = 0; level < sampling.levels; level++) {
+      this.out.write(level == 0 ? "\n{" : ",\n{");
+      this.out.write("\"level\":" + (level + 1) + ",\"windows\":" + sampling.window_counts[level]
+          + ",\"miss_rate\":" + jsonNumber(sampling.missRate(level)) + ",\"confidence\":"
+          + jsonNumber(sampling.confidence(level)));
+      if (sampling.full_rates != null) {
+        this.out.write(",\"full_miss_rate\":" + jsonNumber(sampling.full_rates[level]));
+      }
+      this.out.write('}');
+    }
+    this.out.write("]}\n");
+  }
+
+  private static String jsonNumber(double value) {
+    return Double.isNaN(value) ? "null" : String.format(Locale.ROOT, "%.6f", value);
+  }
+
+  private void writeTextMetrics(CacheMetrics metrics) throws IOException {
+    this.out.write("===== L" + metrics.level_number + " metrics =====\n");
+    this.out.write("compulsory misses:            " + metrics.compulsory_misses + "\n");
+    this.out.write("capacity misses:              " + metrics.capacity_misses + "\n");
+    this.out.write("conflict misses:              " + metrics.conflict_misses + "\n");
+    this.out.write("miss rate every " + metrics.window + " accesses:");
+    for (int window = 0; window < metrics.windows; window++) {
+      this.out.write(String.format(Locale.ROOT, " %.6f", (double) metrics.window_misses[window] / metrics.window));
+    }
+    this.out.write('\n');
+    for (int set = 0; set < metrics.set_hits.length; set++) {
+      this.out.write("Set     ");
+      writeDecimal(set);
+      this.out.write(":\thits " + metrics.set_hits[set] + "\tmisses " + metrics.set_misses[set] + "\tevictions "
+          + metrics.set_evictions[set] + "\n");
+    }
+  }
+
+  private void writeTextStatistics(Cache l1_cache) throws IOException {
+    Cache l2_cache = l1_cache.nextCache;
+    double l1_missrate = ((double) l1_cache.read_misses + l1_cache.write_misses)
+        / (l1_cache.read_hits + l1_cache.write_hits);
+    this.out.write(String.format(Locale.ROOT, """
+        ===== Simulation results (raw) =====
+        a. number of L1 reads:        %s
+        b. number of L1 read misses:  %s
+        c. number of L1 writes:       %s
+        d. number of L1 write misses: %s
+        e. L1 miss rate:              %.6f
+        f. number of L1 writebacks:   %s
+         """, l1_cache.read_hits, l1_cache.read_misses, l1_cache.write_hits, l1_cache.write_misses, l1_missrate,
+        l1_cache.write_back));
+
+    if (l2_cache == null) {
+      this.out.write(String.format(Locale.ROOT, """
+          g. number of L2 reads:        0
+          h. number of L2 read misses:  0
+          i. number of L2 writes:       0
+          j. number of L2 write misses: 0
+          k. L2 miss rate:              0
+          l. number of L2 writebacks:   0
+          m. total memory traffic:      %s
+                     """, CacheSimulator.memoryTraffic(l1_cache)));
+    } else if (l2_cache.nextCache == null) {
+      double l2_missrate = ((double) l2_cache.read_misses) / (l2_cache.read_hits);
+      this.out.write(String.format(Locale.ROOT, """
+          g. number of L2 reads:        %s
+          h. number of L2 read misses:  %s
+          i. number of L2 writes:       %s
+          j. number of L2 write misses: %s
+          k. L2 miss rate:              %.6f
+          l. number of L2 writebacks:   %s
+          m. total memory traffic:      %s
+                     """, l2_cache.read_hits, l2_cache.read_misses, l2_cache.write_hits, l2_cache.write_misses,
+          l2_missrate, l2_cache.write_back, CacheSimulator.memoryTraffic(l1_cache)));
+    } else {
+      // Deeper hierarchies go on with six lines per level, total comes last.
+      char letter = 'g';
+      int level_number = 2;
+      for (Cache level = l2_cache; level != null; level = level.nextCache, level_number++) {
+        double missrate = ((double) level.read_misses) / (level.read_hits);
+        this.out.write(String.format(Locale.ROOT, "%c. number of L%d reads:        %s\n", letter++, level_number,
+            level.read_hits));
+        this.out.write(String.format(Locale.ROOT, "%c. number of L%d read misses:  %s\n", letter++, level_number,
+            level.read_misses));
+        this.out.write(String.format(Locale.ROOT, "%c. number of L%d writes:       %s\n", letter++, level_number,
+            level.write_hits));
+        this.out.write(String.format(Locale.ROOT, "%c. number of L%d write misses: %s\n", letter++, level_number,
+            level.write_misses));
+        this.out.write(String.format(Locale.ROOT, "%c. L%d miss rate:              %.6f\n", letter++, level_number,
+            missrate));
+        this.out.write(String.format(Locale.ROOT, "%c. number of L%d writebacks:   %s\n", letter++, level_number,
+            level.write_back));
+      }
+      this.out.write(String.format(Locale.ROOT, "%c. total memory traffic:      %s\n", letter,
+          CacheSimulator.memoryTraffic(l1_cache)));
+    }
+  }
+
+  // Statistics row under the sweep columns, then when asked one row per line
+  // of every level under the contents columns, after an empty line.
+  void writeCsv(SimulationConfig config, Cache l1_cache, boolean contents) throws IOException {
+    this.out.write(String.join(",", CSV_COLUMNS));
+    this.out.write('\n');
+    this.out.write(csvRow(config, l1_cache));
+    this.out.write('\n');
+    if (contents) {
+      writeCsvContents(l1_cache);
+    }
+    writeCsvPrefetchers(l1_cache);
+    writeCsvMetrics(l1_cache);
+  }
+
+  // Prefetcher table after an empty line, when any level has one.
+  private void writeCsvPrefetchers(Cache l1_cache) throws IOException {
+    boolean header = false;
+    for (Cache level = l1_cache; level != null; level = level.nextCache) {
+      Prefetcher prefetcher = level.prefetcher;
+      if (prefetcher == null) {
+        continue;
+      }
+      if (!header) {
+        this.out.write('\n' + PREFETCH_COLUMNS + '\n');
+        header = true;
+      }
+      this.out.write(prefetcher.level_number + "," + prefetcher.kind() + "," + prefetcher.degree + ","
+          + prefetcher.issued + "," + prefetcher.useful + "," + prefetcher.late + "," + prefetcher.polluting + "\n");
+    }
+  }
+
+  private void writeCsvContents(Cache l1_cache) throws IOException {
+    this.out.write('\n');
+    this.out.write(CONTENTS_COLUMNS);
+    this.out.write('\n');
+    int level_number = 1;
+    for (Cache level = l1_cache; level != null; level = level.nextCache, level_number++) {
+      for (int set = 0; set < level.sets; set++) {
+        int set_base = set * level.cache_assoc;
+        for (int assoc_index = 0; assoc_index < level.cache_assoc; assoc_index++) {
+          long line = level.cache_memory.get(set_base + assoc_index);
+          writeDecimal(level_number);
+          this.out.write(',');
+          writeDecimal(set);
+          this.out.write(',');
+          writeDecimal(assoc_index);
+          this.out.write(',');
+          if ((line & Cache.LINE_VALID) != 0) {
+            writeHex(line >>> Cache.LINE_TAG_SHIFT);
+          }
+          this.out.write((line & Cache.LINE_DIRTY) != 0 ? ",1\n" : ",0\n");
+        }
+      }
+    }
+  }
+
+  // Metrics tables follow the others, each after an empty line.
+  private void writeCsvMetrics(Cache l1_cache) throws IOException {
+    if (l1_cache.metrics == null) {
+      return;
+    }
+    this.out.write('\n' + MISS_CLASS_COLUMNS + '\n');
+    for (Cache level = l1_cache; level != null; level = level.nextCache) {
+      CacheMetrics metrics = level.metrics;
+      this.out.write(metrics.level_number + "," + metrics.compulsory_misses + "," + metrics.capacity_misses + ","
+          + metrics.conflict_misses + "\n");
+    }
+    this.out.write('\n' + SET_COLUMNS + '\n');
+    for (Cache level = l1_cache; level != null; level = level.nextCache) {
+      CacheMetrics metrics = level.metrics;
+      for (int set = 0; set < metrics.set_hits.length; set++) {
+        this.out.write(metrics.level_number + "," + set + "," + metrics.set_hits[set] + "," + metrics.set_misses[set]
+            + "," + metrics.set_evictions[set] + "\n");
+      }
+    }
+    this.out.write('\n' + WINDOW_COLUMNS + '\n');
+    for (Cache level = l1_cache; level != null; level = level.nextCache) {
+      CacheMetrics metrics = level.metrics;
+      for (int window = 0; window < metrics.windows; window++) {
+        this.out.write(metrics.level_number + "," + window + "," + metrics.window + "," + metrics.window_misses[window]
+            + String.format(Locale.ROOT, ",%.6f\n", (double) metrics.window_misses[window] / metrics.window));
+      }
+    }
+  }
+
+  // One object with the sweep columns and trace file name, when asked with
+  // "contents" holding for each level an array of sets, each an array of
+  // lines. A line is null when invalid, else its hex tag and dirty bit. With
+  // metrics, "metrics" holds an object for each level.
+  void writeJson(SimulationConfig config, String trace_file_name, Cache l1_cache, boolean contents)
+      throws IOException {
+    String row = jsonRow(config, l1_cache);
+    this.out.write(row, 0, row.length() - 1);
+    this.out.write(",\"trace_file\":\"");
+    writeJsonEscaped(trace_file_name);
+    this.out.write('"');
+    if (contents) {
+      this.out.write(",\"contents\":[");
+      for (Cache level = l1_cache; level != null; level = level.nextCache) {
+        this.out.write(level == l1_cache ? "\n[" : ",\n[");
+        for (int set = 0; set < level.sets; set++) {
+          this.out.write(set == 0 ? "[" : ",\n[");
+          int set_base = set * level.cache_assoc;
+          for (int assoc_index = 0; assoc_index < level.cache_assoc; assoc_index++) {
+            long line = level.cache_memory.get(set_base + assoc_index);
+            if (assoc_index > 0) {
+              this.out.write(',');
+            }
+            if ((line & Cache.LINE_VALID) == 0) {
+              this.out.write("null");
+              continue;
+            }
+            this.out.write("{\"tag\":\"");
+            writeHex(line >>> Cache.LINE_TAG_SHIFT);
+            this.out.write((line & Cache.LINE_DIRTY) != 0 ? "\",\"dirty\":true}" : "\",\"dirty\":false}");
+          }
+          this.out.write(']');
+        }
+        this.out.write(']');
+      }
+      this.out.write(']');
+    }
+    boolean first_prefetcher = true;
+    for (Cache level = l1_cache; level != null; level = level.nextCache) {
+      Prefetcher prefetcher = level.prefetcher;
+      if (prefetcher == null) {
+        continue;
+      }
+      this.out.write(first_prefetcher ? ",\"prefetchers\":[\n{" : ",\n{");
+      this.out.write("\"level\":" + prefetcher.level_number + ",\"prefetcher\":\"" + prefetcher.kind()
+          + "\",\"degree\":" + prefetcher.degree + ",\"issued\":" + prefetcher.issued + ",\"useful\":"
+          + prefetcher.useful + ",\"late\":" + prefetcher.late + ",\"polluting\":" + prefetcher.polluting + "}");
+      first_prefetcher = false;
+    }
+    if (!first_prefetcher) {
+      this.out.write(']');
+    }
+    if (l1_cache.metrics != null) {
+      this.out.write(",\"metrics\":[");
+      for (Cache level = l1_cache; level != null; level = level.nextCache) {
+        if (level != l1_cache) {
+          this.out.write(',');
+        }
+        writeJsonMetrics(level.metrics);
+      }
+      this.out.write(']');
+    }
+    this.out.write("}\n");
+  }
+
+  private void writeJsonMetrics(CacheMetrics metrics) throws IOException {
+    this.out.write("\n{\"level\":" + metrics.level_number + ",\"compulsory_misses\":" + metrics.compulsory_misses
+        + ",\"capacity_misses\":" + metrics.capacity_misses + ",\"conflict_misses\":" + metrics.conflict_misses
+        + ",\"window\":" + metrics.window + ",\"window_miss_rates\":[");
+    for (int window = 0; window < metrics.windows; window++) {
+      if (window > 0) {
+        this.out.write(',');
+      }
+      this.out.write(String.format(Locale.ROOT, "%.6f", (double) metrics.window_misses[window] / metrics.window));
+    }
+    this.out.write("],\"set_hits\":");
+    writeJsonArray(metrics.set_hits);
+    this.out.write(",\"set_misses\":");
+    writeJsonArray(metrics.set_misses);
+    this.out.write(",\"set_evictions\":");
+    writeJsonArray(metrics.set_evictions);
+    this.out.write('}');
+  }
+
+  private void writeJsonArray(long[] values) throws IOException {
+    this.out.write('[');
+    for (int i = 0; i < values.length; i++) {
+      if (i > 0) {
+        this.out.write(',');
+      }
+      this.out.write(Long.toString(values[i]));
+    }
+    this.out.write(']');
+  }
+
+  private static Object[] rowValues(SimulationConfig config, Cache l1_cache) {
+    Cache l2_cache = l1_cache.nextCache;
+    double l1_missrate = ((double) l1_cache.read_misses + l1_cache.write_misses)
+        / (l1_cache.read_hits + l1_cache.write_hits);
+    double l2_missrate = l2_cache == null ? 0 : ((double) l2_cache.read_misses) / (l2_cache.read_hits);
+    return new Object[] { config.block_size, config.l1_size, config.l1_assoc, config.l2_size, config.l2_assoc,
+        config.replacement_policy, config.inclusion_property, l1_cache.read_hits, l1_cache.read_misses,
+        l1_cache.write_hits, l1_cache.write_misses, String.format(Locale.ROOT, "%.6f", l1_missrate),
+        l1_cache.write_back, l2_cache == null ? 0 : l2_cache.read_hits, l2_cache == null ? 0 : l2_cache.read_misses,
+        l2_cache == null ? 0 : l2_cache.write_hits, l2_cache == null ? 0 : l2_cache.write_misses,
+        String.format(Locale.ROOT, "%.6f", l2_missrate), l2_cache == null ? 0 : l2_cache.write_back,
+        CacheSimulator.memoryTraffic(l1_cache) };
+  }
+
+  static String csvRow(SimulationConfig config, Cache l1_cache) {
+    StringBuilder row = new StringBuilder();
+    for (Object value : rowValues(config, l1_cache)) {
+      if (row.length() > 0) {
+        row.append(',');
+      }
+      row.append(value);
+    }
+    return row.toString();
+  }
+
+  static String jsonRow(SimulationConfig config, Cache l1_cache) {
+    Object[] values = rowValues(config, l1_cache);
+    StringBuilder row = new StringBuilder("{");
+    for (int i = 0; i < values.length; i++) {
+      if (i > 0) {
+        row.append(',');
+      }
+      // Miss rate of a cache never read is not a JSON number, the policy is a
+      // string whether given by number or by name.
+      Object value = "NaN".equals(values[i]) ? null : values[i];
+      if (CSV_COLUMNS[i].equals("replacement_policy")) {
+        value = '"' + config.replacement_policy + '"';
+      }
+      row.append('"').append(CSV_COLUMNS[i]).append("\":").append(value);
+    }
+    return row.append('}').toString();
+  }
+
+  // Same digits as Long.toHexString, without making a string.
+  private void writeHex(long value) throws IOException {
+    int position = this.digits.length;
+    do {
+      this.digits[--position] = HEX_DIGITS[(int) value & 0xf];
+      value >>>= 4;
+    } while (value != 0);
+    this.out.write(this.digits, position, this.digits.length - position);
+  }
+
+  private void writeDecimal(int value) throws IOException {
+    int position = this.digits.length;
+    do {
+      this.digits[--position] = (char) ('0' + value % 10);
+      value /= 10;
+    } while (value != 0);
+    this.out.write(this.digits, position, this.digits.length - position);
+  }
+
+  private void writeJsonEscaped(String text) throws IOException {
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c == '"' || c == '\\') {
+        this.out.write('\\');
+        this.out.write(c);
+      } else if (c < 0x20) {
+        this.out.write(String.format(Locale.ROOT, "\\u%04x", (int) c));
+      } else {
+        this.out.write(c);
+      }
+    }
+  }
+}
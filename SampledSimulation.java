@@ -0,0 +1,242 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+// Estimates miss rates from measured windows of the trace instead of all of
+// it, in the style of SMARTS. The trace is cut in intervals, each holding one
+// measured window at a random offset so windows don't line up with loops of
+// the trace. Everything else goes through Cache.warm as functional warming,
+// which keeps tags and replacement state right for when a window starts
+// without counting anything. When skipping, only a warmup run before each
+// window is warmed and the rest is left out, much faster but windows start
+// from a partly stale state.
+//
+// Accesses come one at a time with long positions, so streamed traces of any
+// length can be sampled. Only Optimal reads the trace index caches get, and
+// it needs a loaded trace, so streamed positions past an int just wrap.
+//
+// Miss rate of every level is its misses over its accesses in all windows, a
+// ratio estimate, with a 95% confidence interval from the spread of windows.
+// A window only counts once its whole interval was seen.
+class SampledSimulation {
+  static final int DEFAULT_WINDOW = 1000;
+  static final int DEFAULT_WARMUP = 2000;
+  // Normal quantile for 95% confidence, windows are assumed many.
+  static final double CONFIDENCE_Z = 1.96;
+  // Window offsets are the same from run to run.
+  static final long SEED = 1;
+
+  final int interval;
+  final int window;
+  final int warmup;
+  final boolean skip;
+
+  // Accesses and misses of every level in every window it was accessed in.
+  int levels;
+  long[][] window_accesses;
+  long[][] window_misses;
+  int[] window_counts;
+  long measured_accesses = 0;
+  // Miss rates of a full simulation, when validated.
+  double[] full_rates = null;
+
+  private Cache l1_cache;
+  private SplittableRandom random;
+  // Accesses seen so far.
+  private long position;
+  // Current window: where warming starts, where measuring starts and ends,
+  // and where its interval ends.
+  private long warm_start;
+  private long measure_start;
+  private long measure_end;
+  private long interval_end;
+  // Counts when the window started, then what it measured until its interval
+  // is over.
+  private long[] start_accesses;
+  private long[] start_misses;
+  private long[] pending_accesses;
+  private long[] pending_misses;
+  private boolean pending = false;
+
+  SampledSimulation(int interval, int window, int warmup, boolean skip) {
+    this.interval = interval;
+    this.window = window;
+    this.warmup = warmup;
+    this.skip = skip;
+  }
+
+  void simulate(Cache l1_cache, TraceList trace_list) {
+    start(l1_cache);
+    for (int i = 0; i < trace_list.length; i++) {
+      access(trace_list.opCode(i), trace_list.address(i));
+    }
+    finish();
+  }
+
+  void simulate(Cache l1_cache, TraceStream stream) throws IOException, InterruptedException {
+    start(l1_cache);
+    TraceList chunk;
+    while ((chunk = stream.next()) != null) {
+      for (int i = 0; i < chunk.length; i++) {
+        access(chunk.op_codes[i], chunk.addresses[i]);
+      }
+      stream.release(chunk);
+    }
+    finish();
+  }
+
+  void start(Cache l1_cache) {
+    this.l1_cache = l1_cache;
+    this.levels = 0;
+    for (Cache level = l1_cache; level != null; level = level.nextCache) {
+      this.levels++;
+    }
+    this.window_accesses = new long[this.levels][16];
+    this.window_misses = new long[this.levels][16];
+    this.window_counts = new int[this.levels];
+    this.start_accesses = new long[this.levels];
+    this.start_misses = new long[this.levels];
+    this.pending_accesses = new long[this.levels];
+    this.pending_misses = new long[this.levels];
+    this.random = new SplittableRandom(SEED);
+    this.position = 0;
+    this.interval_end = 0;
+    planWindow();
+  }
+
+  // Next access of the trace.
+  void access(byte op_code, long address) {
+    long position = this.position;
+    if (position == this.measure_end) {
+      endWindow();
+    }
+    if (this.pending && position == this.interval_end - this.interval) {
+      commitWindow();
+    }
+    int trace_index = (int) position;
+    if (position >= this.measure_start && position < this.measure_end) {
+      if (position == this.measure_start) {
+        snapshot(this.l1_cache, this.start_accesses, this.start_misses);
+      }
+      this.l1_cache.checkCache(trace_index, op_code, address);
+    } else if (!this.skip || (position >= this.warm_start && position < this.measure_start)) {
+      this.l1_cache.warm(trace_index, op_code, address);
+    }
+    this.position = position + 1;
+  }
+
+  // Trace is over, a window only counts when its interval is complete.
+  void finish() {
+    if (this.position == this.measure_end) {
+      endWindow();
+    }
+    if (this.pending && this.position >= this.interval_end - this.interval) {
+      commitWindow();
+    }
+  }
+
+  // Window of the interval after the current one. Without skipping, warming
+  // goes on from the previous window.
+  private void planWindow() {
+    long start = this.interval_end;
+    this.interval_end = start + this.interval;
+    this.measure_start = start + this.random.nextInt(this.interval - this.window + 1);
+    this.measure_end = this.measure_start + this.window;
+    this.warm_start = this.skip ? Math.max(this.position, this.measure_start - this.warmup) : this.position;
+  }
+
+  private void endWindow() {
+    snapshot(this.l1_cache, this.pending_accesses, this.pending_misses);
+    for (int level = 0; level < this.levels; level++) {
+      this.pending_accesses[level] -= this.start_accesses[level];
+      this.pending_misses[level] -= this.start_misses[level];
+    }
+    this.pending = true;
+    planWindow();
+  }
+
+  private void commitWindow() {
+    this.pending = false;
+    this.measured_accesses += this.window;
+    for (int level = 0; level < this.levels; level++) {
+      if (this.pending_accesses[level] > 0) {
+        int count = this.window_counts[level]++;
+        if (count == this.window_accesses[level].length) {
+          this.window_accesses[level] = Arrays.copyOf(this.window_accesses[level], count * 2);
+          this.window_misses[level] = Arrays.copyOf(this.window_misses[level], count * 2);
+        }
+        this.window_accesses[level][count] = this.pending_accesses[level];
+        this.window_misses[level][count] = this.pending_misses[level];
+      }
+    }
+  }
+
+  // Runs the whole trace on a fresh hierarchy to compare against.
+  void validate(SimulationConfig config, TraceList trace_list) {
+    Cache l1_cache = config.buildHierarchy(trace_list);
+    CacheSimulator.simulate(l1_cache, trace_list);
+    fullRates(l1_cache);
+  }
+
+  // Same for a streamed trace, read again from the start.
+  void validate(SimulationConfig config, TraceStream stream) throws IOException, InterruptedException {
+    Cache l1_cache = config.buildHierarchy(null);
+    CacheSimulator.simulateStream(l1_cache, stream, 0);
+    fullRates(l1_cache);
+  }
+
+  private void fullRates(Cache l1_cache) {
+    this.full_rates = new double[this.levels];
+    int level_number = 0;
+    for (Cache level = l1_cache; level != null; level = level.nextCache, level_number++) {
+      this.full_rates[level_number] = (double) levelMisses(level) / levelAccesses(level);
+    }
+  }
+
+  double missRate(int level_number) {
+    long accesses = 0;
+    long misses = 0;
+    for (int i = 0; i < this.window_counts[level_number]; i++) {
+      accesses += this.window_accesses[level_number][i];
+      misses += this.window_misses[level_number][i];
+    }
+    return (double) misses / accesses;
+  }
+
+  // Half width of the 95% interval around missRate, NaN under two windows.
+  // Variance of a ratio estimate comes from the residuals of each window.
+  double confidence(int level_number) {
+    int count = this.window_counts[level_number];
+    if (count < 2) {
+      return Double.NaN;
+    }
+    double rate = missRate(level_number);
+    double squares = 0;
+    long accesses = 0;
+    for (int i = 0; i < count; i++) {
+      double residual = this.window_misses[level_number][i] - rate * this.window_accesses[level_number][i];
+      squares += residual * residual;
+      accesses += this.window_accesses[level_number][i];
+    }
+    double mean_accesses = (double) accesses / count;
+    return CONFIDENCE_Z * Math.sqrt(squares / (count - 1) / count) / mean_accesses;
+  }
+
+  // Same miss rates as the report, L1 counts write misses while lower levels
+  // only count read misses over reads.
+  private static long levelAccesses(Cache level) {
+    return level.prevCache == null ? level.read_hits + level.write_hits : level.read_hits;
+  }
+
+  private static long levelMisses(Cache level) {
+    return level.prevCache == null ? level.read_misses + level.write_misses : level.read_misses;
+  }
+
+  private static void snapshot(Cache l1_cache, long[] accesses, long[] misses) {
+    int level_number = 0;
+    for (Cache level = l1_cache; level != null; level = level.nextCache, level_number++) {
+      accesses[level_number] = levelAccesses(level);
+      misses[level_number] = levelMisses(level);
+    }
+  }
+}
@@ -0,0 +1,26 @@
+// Scans over every way of a set at once, the hit check of Cache and the
+// victim search of BasicLRU. The only one is VectorSetScan in simd/, on the
+// incubating Vector API, built apart with "make simd" or "mvn -Psimd" and
+// loaded when the JVM runs with --add-modules jdk.incubator.vector. VECTOR is
+// null otherwise and caches keep their scalar loops.
+interface SetScan {
+  SetScan VECTOR = loadVector();
+
+  // Below this many ways the scalar loops are as fast, see SetScanBenchmark.
+  int DEFAULT_MIN_WAYS = 16;
+
+  // Way of the first line from set_base equal to wanted once its dirty bit is
+  // dropped, -1 if none.
+  int findLine(long[] lines, int set_base, int ways, long wanted);
+
+  // Way of the first lowest value from set_base.
+  int findMin(int[] values, int set_base, int ways);
+
+  private static SetScan loadVector() {
+    try {
+      return (SetScan) Class.forName("VectorSetScan").getDeclaredConstructor().newInstance();
+    } catch (ReflectiveOperationException | LinkageError e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,176 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// Simulates one configuration on several threads by splitting it by set.
+//
+// A shard owns every set whose low index bits equal its number, at every
+// level. Misses, writebacks and back invalidations keep the set index of the
+// access that caused them, so they never leave the shard and each shard runs
+// as an independent, smaller hierarchy. Shard bits are limited to the index
+// bits of the level with fewest sets, which keeps inclusive hierarchies sound
+// too. Optimal needs the whole trace in order, so it isn't sharded.
+class ShardedSimulation {
+  // More shards than threads evens out sets that see more accesses.
+  static final int SHARDS_PER_THREAD = 4;
+
+  private final SimulationConfig config;
+  private final TraceList trace_list;
+  private final int shard_bits;
+  private final int threads;
+
+  private ShardedSimulation(SimulationConfig config, TraceList trace_list, int shard_bits, int threads) {
+    this.config = config;
+    this.trace_list = trace_list;
+    this.shard_bits = shard_bits;
+    this.threads = threads;
+  }
+
+  // Number of set index bits to shard on, 0 when the configuration must run
+  // serially.
+  static int shardBits(Cache l1_cache, int threads) {
+    if (threads < 2) {
+      return 0;
+    }
+    int index_bits = Integer.MAX_VALUE;
+    for (Cache level = l1_cache; level != null; level = level.nextCache) {
+      if (!level.replacement_policy.independentSets()) {
+        return 0;
+      }
+      index_bits = Math.min(index_bits, level.index_offset);
+    }
+    int wanted_bits = 32 - Integer.numberOfLeadingZeros(threads * SHARDS_PER_THREAD - 1);
+    return Math.min(index_bits, wanted_bits);
+  }
+
+  // Simulates trace on l1_cache and the levels below it, splitting it on
+  // threads when sound, else serially. Caches end with the same contents and
+  // counters either way, their replacement state is only kept when serial.
+  static void simulate(SimulationConfig config, Cache l1_cache, TraceList trace_list, int threads)
+      throws InterruptedException, ExecutionException {
+    int shard_bits = shardBits(l1_cache, threads);
+    if (shard_bits == 0) {
+      CacheSimulator.simulate(l1_cache, trace_list);
+      return;
+    }
+    new ShardedSimulation(config, trace_list, shard_bits, threads).run(l1_cache);
+  }
+
+  private void run(Cache l1_cache) throws InterruptedException, ExecutionException {
+    int shards = 1 << this.shard_bits;
+    int block_offset = l1_cache.block_offset;
+    int shard_mask = shards - 1;
+    ForkJoinPool pool = new ForkJoinPool(this.threads);
+    try {
+      // Counts accesses per shard on slices of the trace, then lists them
+      // grouped by shard, each group in trace order.
+      int slices = this.threads;
+      int[][] counts = new int[slices][shards];
+      List<Future<?>> tasks = new ArrayList<>();
+      for (int slice = 0; slice < slices; slice++) {
+        int first = sliceStart(slice, slices);
+        int last = sliceStart(slice + 1, slices);
+        int[] slice_counts = counts[slice];
+        tasks.add(pool.submit(() -> {
+          for (int i = first; i < last; i++) {
+            slice_counts[(int) (this.trace_list.address(i) >>> block_offset) & shard_mask]++;
+          }
+        }));
+      }
+      waitFor(tasks);
+
+      int[] shard_starts = new int[shards + 1];
+      int[][] slice_positions = new int[slices][shards];
+      int position = 0;
+      for (int shard = 0; shard < shards; shard++) {
+        shard_starts[shard] = position;
+        for (int slice = 0; slice < slices; slice++) {
+          slice_positions[slice][shard] = position;
+          position += counts[slice][shard];
+        }
+      }
+      shard_starts[shards] = position;
+
+      int[] order = new int[this.trace_list.length];
+      for (int slice = 0; slice < slices; slice++) {
+        int first = sliceStart(slice, slices);
+        int last = sliceStart(slice + 1, slices);
+        int[] next_positions = slice_positions[slice];
+        tasks.add(pool.submit(() -> {
+          for (int i = first; i < last; i++) {
+            order[next_positions[(int) (this.trace_list.address(i) >>> block_offset) & shard_mask]++] = i;
+          }
+        }));
+      }
+      waitFor(tasks);
+
+      SimulationConfig shard_config = this.config.shrink(this.shard_bits);
+      Cache[] shard_caches = new Cache[shards];
+      for (int shard = 0; shard < shards; shard++) {
+        int current = shard;
+        tasks.add(pool.submit(() -> {
+          shard_caches[current] = simulateShard(shard_config, order, shard_starts[current],
+              shard_starts[current + 1], block_offset);
+        }));
+      }
+      waitFor(tasks);
+
+      for (int shard = 0; shard < shards; shard++) {
+        merge(shard_caches[shard], l1_cache, shard);
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  private int sliceStart(int slice, int slices) {
+    return (int) ((long) this.trace_list.length * slice / slices);
+  }
+
+  // Runs accesses of one shard on its own hierarchy. Shard bits are taken out
+  // of the addresses, which leaves tags as they are and drops the shard number
+  // from the set index.
+  private Cache simulateShard(SimulationConfig shard_config, int[] order, int first, int last, int block_offset) {
+    Cache l1_cache = shard_config.buildHierarchy(null);
+    long offset_mask = (1L << block_offset) - 1;
+    for (int i = first; i < last; i++) {
+      int trace_index = order[i];
+      long address = this.trace_list.address(trace_index);
+      long shard_address = ((address >>> block_offset >>> this.shard_bits) << block_offset) | (address & offset_mask);
+      l1_cache.checkCache(trace_index, this.trace_list.opCode(trace_index), shard_address);
+    }
+    return l1_cache;
+  }
+
+  // Adds counters of a shard to the whole hierarchy and puts its lines back
+  // in the sets it owns.
+  private void merge(Cache shard_l1_cache, Cache l1_cache, int shard) {
+    Cache level = l1_cache;
+    for (Cache shard_level = shard_l1_cache; shard_level != null; shard_level = shard_level.nextCache) {
+      level.read_hits += shard_level.read_hits;
+      level.read_misses += shard_level.read_misses;
+      level.write_hits += shard_level.write_hits;
+      level.write_misses += shard_level.write_misses;
+      level.write_back += shard_level.write_back;
+      level.mem_trafic += shard_level.mem_trafic;
+      int assoc = level.cache_assoc;
+      for (int shard_set = 0; shard_set < shard_level.sets; shard_set++) {
+        int set_base = ((shard_set << this.shard_bits) | shard) * assoc;
+        int shard_set_base = shard_set * assoc;
+        for (int assoc_index = 0; assoc_index < assoc; assoc_index++) {
+          level.cache_memory.set(set_base + assoc_index, shard_level.cache_memory.get(shard_set_base + assoc_index));
+        }
+      }
+      level = level.nextCache;
+    }
+  }
+
+  private static void waitFor(List<Future<?>> tasks) throws InterruptedException, ExecutionException {
+    for (Future<?> task : tasks) {
+      task.get();
+    }
+    tasks.clear();
+  }
+}
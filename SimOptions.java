@@ -0,0 +1,47 @@
+import java.util.HashMap;
+import java.util.Map;
+
+// Options given after the positional parameters, as --name or --name=value.
+class SimOptions {
+  private final Map<String, String> values = new HashMap<>();
+
+  // Fails on anything not listed in known.
+  SimOptions(String[] args, int first, String... known) {
+    for (int i = first; i < args.length; i++) {
+      if (!args[i].startsWith("--")) {
+        throw new IllegalArgumentException("Unexpected parameter " + args[i]);
+      }
+      String option = args[i].substring(2);
+      String value = "";
+      int equals = option.indexOf('=');
+      if (equals >= 0) {
+        value = option.substring(equals + 1);
+        option = option.substring(0, equals);
+      }
+      boolean is_known = false;
+      for (String name : known) {
+        is_known |= name.equals(option);
+      }
+      if (!is_known) {
+        throw new IllegalArgumentException("Unknown option --" + option);
+      }
+      this.values.put(option, value);
+    }
+  }
+
+  boolean has(String name) {
+    return this.values.containsKey(name);
+  }
+
+  String get(String name, String default_value) {
+    return this.values.getOrDefault(name, default_value);
+  }
+
+  int getInt(String name, int default_value) {
+    return has(name) ? Integer.parseInt(this.values.get(name)) : default_value;
+  }
+
+  long getLong(String name, long default_value) {
+    return has(name) ? Long.parseLong(this.values.get(name)) : default_value;
+  }
+}
@@ -0,0 +1,129 @@
+// One cache hierarchy configuration, same parameters as the command line.
+class SimulationConfig {
+  final int block_size;
+  final int l1_size;
+  final int l1_assoc;
+  final int l2_size;
+  final int l2_assoc;
+  // Name or number, see ReplacementPolicies.
+  final String replacement_policy;
+  final int inclusion_property;
+  // Caches with more ways than this use the high associativity mode.
+  int high_assoc_threshold = DEFAULT_HIGH_ASSOC_THRESHOLD;
+  // Levels below L2, from L3 down, when the hierarchy is deeper than two.
+  int[] lower_sizes = new int[0];
+  int[] lower_assocs = new int[0];
+  // Bit n - 1 is set when level n keeps its state off the heap.
+  int off_heap_levels = 0;
+  // Levels with at least this many ways scan whole sets with SetScan.VECTOR
+  // when it is there, 0 for never.
+  int set_scan_min_ways = 0;
+  // Prefetcher kind and degree of level n at n - 1, null kind for none.
+  String[] prefetch_kinds = new String[0];
+  int[] prefetch_degrees = new int[0];
+
+  static final int DEFAULT_HIGH_ASSOC_THRESHOLD = 64;
+
+  SimulationConfig(int block_size, int l1_size, int l1_assoc, int l2_size, int l2_assoc, String replacement_policy,
+      int inclusion_property) {
+    this.block_size = block_size;
+    this.l1_size = l1_size;
+    this.l1_assoc = l1_assoc;
+    this.l2_size = l2_size;
+    this.l2_assoc = l2_assoc;
+    this.replacement_policy = replacement_policy;
+    this.inclusion_property = inclusion_property;
+  }
+
+  // Returns why the configuration can't be simulated, null when it can. Checks
+  // are the same the command line does before and after simulating.
+  String validate() {
+    if ((this.block_size & this.block_size - 1) != 0 || this.block_size < 1) {
+      return "Blocksize must be power of 2";
+    }
+    if (this.l1_assoc < 1 || (this.l2_size > 0 && this.l2_assoc < 1)) {
+      return "Associativity must be at least 1";
+    }
+    for (int level = 0; level < this.lower_sizes.length; level++) {
+      if (this.l2_size <= 0) {
+        return "Levels below L2 need an L2";
+      }
+      if (this.lower_assocs[level] < 1) {
+        return "Associativity must be at least 1";
+      }
+    }
+    if (ReplacementPolicies.find(this.replacement_policy) == null) {
+      return "Unsupported Replacement Policy, 0 for LRU, 1 for PLRU, 2 for Optimal, or one of "
+          + ReplacementPolicies.names() + ".";
+    }
+    if (this.inclusion_property != 0 && this.inclusion_property != 1) {
+      return "Unsupported inclusion property, 0 for non-inclusive, 1 for inclusive.";
+    }
+    return null;
+  }
+
+  // Creates L1 and, when L2 size is given, L2 and any lower levels linked
+  // below it. Returns L1.
+  Cache buildHierarchy(TraceList trace_list) {
+    return buildHierarchy(trace_list, 0);
+  }
+
+  // Same as above, Optimal only sees lookahead accesses ahead when not 0.
+  Cache buildHierarchy(TraceList trace_list, int lookahead) {
+    Cache l1_cache = new Cache(this.block_size, this.l1_size, this.l1_assoc, this.replacement_policy,
+        this.inclusion_property, trace_list, lookahead, (this.off_heap_levels & 1) != 0);
+    if (this.l2_size > 0) {
+      Cache l2_cache = new Cache(this.block_size, this.l2_size, this.l2_assoc, this.replacement_policy,
+          this.inclusion_property, trace_list, lookahead, (this.off_heap_levels & 2) != 0);
+      l2_cache.prevCache = l1_cache;
+      l1_cache.nextCache = l2_cache;
+      Cache upper_cache = l2_cache;
+      for (int level = 0; level < this.lower_sizes.length; level++) {
+        Cache lower_cache = new Cache(this.block_size, this.lower_sizes[level], this.lower_assocs[level],
+            this.replacement_policy, this.inclusion_property, trace_list, lookahead,
+            (this.off_heap_levels & (4 << level)) != 0);
+        lower_cache.prevCache = upper_cache;
+        upper_cache.nextCache = lower_cache;
+        upper_cache = lower_cache;
+      }
+    }
+    int level_number = 1;
+    for (Cache level = l1_cache; level != null; level = level.nextCache, level_number++) {
+      if (level_number <= this.prefetch_kinds.length && this.prefetch_kinds[level_number - 1] != null) {
+        level.prefetcher = Prefetcher.create(this.prefetch_kinds[level_number - 1],
+            this.prefetch_degrees[level_number - 1], level, level_number);
+      }
+      if (level.cache_assoc > this.high_assoc_threshold) {
+        level.useHighAssociativityMode();
+      }
+      if (this.set_scan_min_ways > 0 && level.cache_assoc >= this.set_scan_min_ways && SetScan.VECTOR != null) {
+        level.useSetScan(SetScan.VECTOR);
+      }
+    }
+    return l1_cache;
+  }
+
+  // Same hierarchy with every level 2^shard_bits times smaller, fewer sets
+  // and same associativity.
+  SimulationConfig shrink(int shard_bits) {
+    SimulationConfig shrunk = new SimulationConfig(this.block_size, this.l1_size >> shard_bits, this.l1_assoc,
+        this.l2_size >> shard_bits, this.l2_assoc, this.replacement_policy, this.inclusion_property);
+    shrunk.high_assoc_threshold = this.high_assoc_threshold;
+    shrunk.off_heap_levels = this.off_heap_levels;
+    shrunk.set_scan_min_ways = this.set_scan_min_ways;
+    shrunk.prefetch_kinds = this.prefetch_kinds;
+    shrunk.prefetch_degrees = this.prefetch_degrees;
+    shrunk.lower_sizes = new int[this.lower_sizes.length];
+    for (int level = 0; level < this.lower_sizes.length; level++) {
+      shrunk.lower_sizes[level] = this.lower_sizes[level] >> shard_bits;
+    }
+    shrunk.lower_assocs = this.lower_assocs.clone();
+    return shrunk;
+  }
+
+  @Override
+  public String toString() {
+    return this.block_size + " " + this.l1_size + " " + this.l1_assoc + " " + this.l2_size + " " + this.l2_assoc
+        + " " + this.replacement_policy + " " + this.inclusion_property;
+  }
+}
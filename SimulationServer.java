@@ -0,0 +1,160 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Keeps a JVM running simulations sent over a socket, so repeated runs skip
+// JVM start up, JIT warm up and parsing traces already seen, which stay in a
+// TraceCache.
+//
+// Listens on a Unix domain socket at the given path, or on the loopback
+// interface when given a port number. Each connection sends one job, a line
+// holding the same parameters as sim_cache, and gets back the report before
+// the connection is closed. Request lines are read on threads of their own,
+// only jobs run on a pool with a thread per processor, so clients that
+// connect and send nothing don't hold up the others.
+// Only options of a plain loaded run are taken: --format, --no-contents,
+// --levels, --high-assoc, --off-heap and --prefetch. A job that can't run gets a line
+// starting with "Error:".
+public class SimulationServer {
+  static final long DEFAULT_TRACE_CACHE_MB = 1024;
+
+  private final TraceCache trace_cache;
+  private final ExecutorService jobs = Executors
+      .newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+  private final ExecutorService readers = Executors.newCachedThreadPool();
+
+  public SimulationServer(String[] args) {
+    if (args.length < 1 || args.length > 2) {
+      System.out.println("You must enter all input");
+      System.out.println("<socket_path|port> [trace_cache_mb]");
+      System.exit(0);
+    }
+    long cache_mb = args.length == 2 ? Long.parseLong(args[1]) : DEFAULT_TRACE_CACHE_MB;
+    this.trace_cache = new TraceCache(cache_mb << 20);
+
+    try (ServerSocketChannel server = open(args[0])) {
+      System.out.println("Listening on " + server.getLocalAddress());
+      while (true) {
+        SocketChannel client = server.accept();
+        this.readers.submit(() -> readRequest(client));
+      }
+    } catch (IOException e) {
+      System.out.println("Error: " + e);
+      System.exit(0);
+    }
+  }
+
+  private static ServerSocketChannel open(String address) throws IOException {
+    if (address.chars().allMatch(Character::isDigit)) {
+      return ServerSocketChannel.open()
+          .bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(address)));
+    }
+    // A socket left by a server that didn't stop cleanly would fail the bind.
+    Path socket_path = Paths.get(address);
+    Files.deleteIfExists(socket_path);
+    socket_path.toFile().deleteOnExit();
+    return ServerSocketChannel.open(StandardProtocolFamily.UNIX).bind(UnixDomainSocketAddress.of(socket_path));
+  }
+
+  // Waits for the job line, however long the client takes, then queues the
+  // job.
+  private void readRequest(SocketChannel client) {
+    String line;
+    try {
+      BufferedReader in = new BufferedReader(
+          new InputStreamReader(Channels.newInputStream(client), StandardCharsets.UTF_8));
+      line = in.readLine();
+    } catch (IOException e) {
+      line = null;
+    }
+    if (line == null) {
+      close(client);
+      return;
+    }
+    String request = line;
+    this.jobs.submit(() -> serve(client, request));
+  }
+
+  private void serve(SocketChannel client, String line) {
+    try (client) {
+      OutputStream out = Channels.newOutputStream(client);
+      try {
+        runJob(line.trim().split("\\s+"), out);
+      } catch (IllegalArgumentException e) {
+        new PrintStream(out, true, StandardCharsets.UTF_8).println("Error: " + e.getMessage());
+      } catch (IOException | RuntimeException | OutOfMemoryError e) {
+        // A trace too big for the heap fails its job, the server goes on.
+        new PrintStream(out, true, StandardCharsets.UTF_8).println("Error: " + e);
+      }
+    } catch (IOException e) {
+      // Client went away, nothing to answer.
+    }
+  }
+
+  private static void close(SocketChannel client) {
+    try {
+      client.close();
+    } catch (IOException e) {
+      // Client went away, nothing to answer.
+    }
+  }
+
+  // Same checks and report as sim_cache, failing with an exception instead of
+  // exiting.
+  private void runJob(String[] args, OutputStream out) throws IOException {
+    if (args.length < 8) {
+      throw new IllegalArgumentException(
+          "<BLOCKSIZE> <L1_SIZE> <L1_ASSOC> <L2_SIZE> <L2_ASSOC> <REPLACEMENT_POLICY> <INCLUSION_PROPERTY> <trace_file>");
+    }
+    SimOptions options = new SimOptions(args, 8, "format", "no-contents", "levels", "high-assoc", "off-heap",
+        "prefetch");
+    SimulationConfig config = new SimulationConfig(Integer.parseInt(args[0]), Integer.parseInt(args[1]),
+        Integer.parseInt(args[2]), Integer.parseInt(args[3]), Integer.parseInt(args[4]), args[5],
+        Integer.parseInt(args[6]));
+    config.high_assoc_threshold = options.getInt("high-assoc", SimulationConfig.DEFAULT_HIGH_ASSOC_THRESHOLD);
+    if (options.has("levels")) {
+      CacheSimulator.parseLevels(config, options.get("levels", ""));
+    }
+    if (options.has("off-heap")) {
+      CacheSimulator.parseOffHeap(config, options.get("off-heap", ""));
+    }
+    if (options.has("prefetch")) {
+      ReplacementPolicyProvider policy = ReplacementPolicies.find(args[5]);
+      if (policy != null && policy.needsTrace()) {
+        throw new IllegalArgumentException("Prefetchers can't be used with " + policy.displayName());
+      }
+      CacheSimulator.parsePrefetch(config, options.get("prefetch", ""));
+    }
+    String error = config.validate();
+    if (error != null) {
+      throw new IllegalArgumentException(error);
+    }
+    String format = options.get("format", "text");
+    if (!format.equals("text") && !format.equals("json") && !format.equals("csv")) {
+      throw new IllegalArgumentException("Format must be text, json or csv");
+    }
+
+    String trace_file_name = args[7];
+    TraceList trace_list = this.trace_cache.get(Paths.get(CacheSimulator.findTraceFile(trace_file_name)));
+    Cache l1_cache = config.buildHierarchy(trace_list);
+    CacheSimulator.simulate(l1_cache, trace_list);
+    ReportWriter report = new ReportWriter(out);
+    CacheSimulator.writeReport(report, format, config, trace_file_name, l1_cache, !options.has("no-contents"));
+    report.flush();
+  }
+}
@@ -0,0 +1,182 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// Computes LRU hits and misses of an L1 for many sizes and associativities
+// from one traversal of the trace (Mattson stack distances). Sizes sharing a
+// number of sets share one analysis, an access hits in an A way cache when
+// fewer than A distinct blocks of its set were used since its last use.
+//
+// Results match a Cache run with LRU replacement and no L2, except for
+// writebacks which depend on dirty bits and are not reported.
+public class StackDistanceAnalyzer {
+  public StackDistanceAnalyzer(String[] args) {
+    if (args.length != 4) {
+      System.out.println("You must enter all input");
+      System.out.println("<BLOCKSIZE> <L1_SIZES> <L1_ASSOCS> <trace_file>");
+      System.out.println("Sizes and associativities are comma separated lists.");
+      System.exit(0);
+    }
+    int block_size = Integer.parseInt(args[0]);
+    if ((block_size & block_size - 1) != 0 || block_size < 1) {
+      System.out.println("Blocksize must be power of 2");
+      System.exit(0);
+    }
+    int[] sizes = parseList(args[1]);
+    int[] assocs = parseList(args[2]);
+
+    // Groups configurations by number of sets, skipping those that don't fit.
+    List<SetDistances> analyses = new ArrayList<>();
+    for (int size : sizes) {
+      for (int assoc : assocs) {
+        int sets = assoc < 1 ? 0 : size / (block_size * assoc);
+        if ((sets & sets - 1) != 0 || sets < 1) {
+          System.err.println("Skipping " + size + " " + assoc + ": Number of sets must be power of 2 and at least 1");
+          continue;
+        }
+        SetDistances analysis = null;
+        for (SetDistances existing : analyses) {
+          if (existing.sets == sets) {
+            analysis = existing;
+          }
+        }
+        if (analysis == null) {
+          analysis = new SetDistances(sets);
+          analyses.add(analysis);
+        }
+        analysis.max_assoc = Math.max(analysis.max_assoc, assoc);
+      }
+    }
+
+    TraceList trace_list = CacheSimulator.loadFile(args[3]);
+    BlockDictionary dictionary = trace_list.blockDictionary(Integer.numberOfTrailingZeros(block_size));
+    for (SetDistances analysis : analyses) {
+      analysis.prepare(dictionary);
+    }
+    // The single traversal, every analysis sees each access once.
+    for (int i = 0; i < trace_list.length; i++) {
+      int block_id = dictionary.block_ids[i];
+      long block_address = dictionary.blocks[block_id];
+      byte op_code = trace_list.opCode(i);
+      for (SetDistances analysis : analyses) {
+        analysis.access(block_id, block_address, op_code);
+      }
+    }
+
+    System.out.println(
+        "block_size,l1_size,l1_assoc,sets,l1_reads,l1_read_misses,l1_writes,l1_write_misses,l1_miss_rate");
+    for (int size : sizes) {
+      for (int assoc : assocs) {
+        int sets = assoc < 1 ? 0 : size / (block_size * assoc);
+        for (SetDistances analysis : analyses) {
+          if (analysis.sets == sets) {
+            System.out.println(analysis.row(block_size, size, assoc));
+          }
+        }
+      }
+    }
+  }
+
+  private static int[] parseList(String list) {
+    String[] items = list.split(",");
+    int[] values = new int[items.length];
+    for (int i = 0; i < items.length; i++) {
+      values[i] = Integer.parseInt(items[i]);
+    }
+    return values;
+  }
+}
+
+// Stack distance histogram for one number of sets. Accesses of each set get
+// consecutive positions in a Fenwick tree marking the latest access of every
+// block, the distance is the number of marks between two accesses of a block.
+class SetDistances {
+  // Histogram rows, OP_OTHER counts as a write miss but not as a write.
+  static final int READS = 0;
+  static final int WRITES = 1;
+  static final int OTHERS = 2;
+
+  final int sets;
+  int max_assoc = 0;
+
+  int[] fenwick;
+  // Next position to give to an access of each set.
+  int[] set_position;
+  // Latest position of each block id, 0 before its first access.
+  int[] last_position;
+  // Distances from max_assoc on, and first accesses, all fall in the last bucket.
+  long[][] histogram;
+
+  SetDistances(int sets) {
+    this.sets = sets;
+  }
+
+  // Counts accesses per set so each set gets its own range of positions.
+  void prepare(BlockDictionary dictionary) {
+    this.set_position = new int[this.sets];
+    for (int block_id : dictionary.block_ids) {
+      this.set_position[(int) (dictionary.blocks[block_id] & (this.sets - 1))]++;
+    }
+    int start = 1;
+    for (int set = 0; set < this.sets; set++) {
+      int count = this.set_position[set];
+      this.set_position[set] = start;
+      start += count;
+    }
+    this.fenwick = new int[start];
+    this.last_position = new int[dictionary.count];
+    this.histogram = new long[3][this.max_assoc + 1];
+  }
+
+  void access(int block_id, long block_address, byte op_code) {
+    int position = this.set_position[(int) (block_address & (this.sets - 1))]++;
+    int distance = this.max_assoc;
+    int previous = this.last_position[block_id];
+    if (previous != 0) {
+      distance = (int) Math.min(sum(position - 1) - sum(previous), this.max_assoc);
+      add(previous, -1);
+    }
+    add(position, 1);
+    this.last_position[block_id] = position;
+
+    int row = op_code == Cache.OP_READ ? READS : op_code == Cache.OP_WRITE ? WRITES : OTHERS;
+    this.histogram[row][distance]++;
+  }
+
+  // Misses of an assoc way cache for one histogram row.
+  long misses(int row, int assoc) {
+    long misses = 0;
+    for (int distance = assoc; distance <= this.max_assoc; distance++) {
+      misses += this.histogram[row][distance];
+    }
+    return misses;
+  }
+
+  long accesses(int row) {
+    return misses(row, 0);
+  }
+
+  String row(int block_size, int size, int assoc) {
+    long reads = accesses(READS);
+    long writes = accesses(WRITES);
+    long read_misses = misses(READS, assoc);
+    long write_misses = misses(WRITES, assoc) + misses(OTHERS, assoc);
+    double missrate = ((double) read_misses + write_misses) / (reads + writes);
+    return block_size + "," + size + "," + assoc + "," + this.sets + "," + reads + "," + read_misses + "," + writes
+        + "," + write_misses + "," + String.format(Locale.ROOT, "%.6f", missrate);
+  }
+
+  private long sum(int position) {
+    long total = 0;
+    for (; position > 0; position -= position & -position) {
+      total += this.fenwick[position];
+    }
+    return total;
+  }
+
+  private void add(int position, int value) {
+    for (; position < this.fenwick.length; position += position & -position) {
+      this.fenwick[position] += value;
+    }
+  }
+}
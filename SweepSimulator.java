@@ -0,0 +1,115 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// Runs every configuration of a sweep file against one trace loaded once.
+// Each configuration gets its own caches and runs as a task on a work
+// stealing pool, rows are printed as soon as a configuration finishes.
+//
+// Sweep file has one line per configuration with the first seven command
+// line parameters. Each parameter may be a comma separated list, a line then
+// stands for every combination of its values. Lines starting with # are
+// comments.
+public class SweepSimulator {
+  private final PrintStream out = System.out;
+  private final boolean json;
+
+  public SweepSimulator(String[] args) {
+    if (args.length < 2 || args.length > 3 || (args.length == 3 && !args[2].equals("csv") && !args[2].equals("json"))) {
+      System.out.println("You must enter all input");
+      System.out.println("<sweep_file> <trace_file> [csv|json]");
+      System.exit(0);
+    }
+    this.json = args.length == 3 && args[2].equals("json");
+
+    List<SimulationConfig> configs = null;
+    try {
+      configs = parseSweep(Files.readAllLines(Paths.get(args[0])));
+    } catch (IOException | NumberFormatException e) {
+      System.out.println("Error reading sweep file");
+      System.out.println("Error: " + e);
+      System.exit(0);
+    }
+    TraceList trace_list = CacheSimulator.loadFile(args[1]);
+
+    if (!this.json) {
+      this.out.println(String.join(",", ReportWriter.CSV_COLUMNS));
+    }
+    ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    List<Future<?>> tasks = new ArrayList<>();
+    for (SimulationConfig config : configs) {
+      tasks.add(pool.submit(() -> runConfig(config, trace_list)));
+    }
+    for (Future<?> task : tasks) {
+      try {
+        task.get();
+      } catch (Exception e) {
+        System.err.println("Error: " + e);
+      }
+    }
+    pool.shutdown();
+  }
+
+  // Expands every line of the sweep file to its configurations.
+  static List<SimulationConfig> parseSweep(List<String> lines) {
+    List<SimulationConfig> configs = new ArrayList<>();
+    for (String line : lines) {
+      line = line.trim();
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      String[] fields = line.split("\\s+");
+      if (fields.length != 7) {
+        throw new NumberFormatException("Expected 7 parameters: " + line);
+      }
+      // Replacement policy may be a name, everything else is a number.
+      String[][] values = new String[7][];
+      for (int i = 0; i < 7; i++) {
+        values[i] = fields[i].split(",");
+      }
+      // Counts through every combination like an odometer.
+      int[] position = new int[7];
+      while (true) {
+        configs.add(new SimulationConfig(Integer.parseInt(values[0][position[0]]),
+            Integer.parseInt(values[1][position[1]]), Integer.parseInt(values[2][position[2]]),
+            Integer.parseInt(values[3][position[3]]), Integer.parseInt(values[4][position[4]]), values[5][position[5]],
+            Integer.parseInt(values[6][position[6]])));
+        int digit = 6;
+        while (digit >= 0 && ++position[digit] == values[digit].length) {
+          position[digit] = 0;
+          digit--;
+        }
+        if (digit < 0) {
+          break;
+        }
+      }
+    }
+    return configs;
+  }
+
+  private void runConfig(SimulationConfig config, TraceList trace_list) {
+    String error = config.validate();
+    Cache l1_cache = null;
+    if (error == null) {
+      try {
+        l1_cache = config.buildHierarchy(trace_list);
+      } catch (IllegalArgumentException | ArithmeticException e) {
+        error = e.getMessage();
+      }
+    }
+    if (error != null) {
+      System.err.println("Skipping " + config + ": " + error);
+      return;
+    }
+    CacheSimulator.simulate(l1_cache, trace_list);
+    String row = this.json ? ReportWriter.jsonRow(config, l1_cache) : ReportWriter.csvRow(config, l1_cache);
+    synchronized (this.out) {
+      this.out.println(row);
+    }
+  }
+}
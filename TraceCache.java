@@ -0,0 +1,78 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+// Parsed traces kept between jobs of the server, by path and modification
+// time so a rewritten file is read again. Least recently used traces are
+// dropped once they take more than max_bytes, the one just loaded always
+// stays. Jobs asking for a trace being loaded wait for that load.
+class TraceCache {
+  // Heap taken by an access, its op code and address.
+  static final int ACCESS_BYTES = 9;
+
+  private final long max_bytes;
+  private final LinkedHashMap<Key, CompletableFuture<TraceList>> traces = new LinkedHashMap<>(16, 0.75f, true);
+  private long cached_bytes = 0;
+
+  TraceCache(long max_bytes) {
+    this.max_bytes = max_bytes;
+  }
+
+  TraceList get(Path path) throws IOException {
+    Key key = new Key(path.toRealPath(), Files.getLastModifiedTime(path).toMillis(), Files.size(path));
+    CompletableFuture<TraceList> trace;
+    boolean load = false;
+    synchronized (this) {
+      trace = this.traces.get(key);
+      if (trace == null) {
+        trace = new CompletableFuture<>();
+        this.traces.put(key, trace);
+        load = true;
+      }
+    }
+    if (load) {
+      try {
+        TraceList trace_list = TraceLoader.load(path);
+        synchronized (this) {
+          this.cached_bytes += (long) trace_list.length * ACCESS_BYTES;
+          trace.complete(trace_list);
+          evict(key);
+        }
+      } catch (Throwable e) {
+        // Errors too, out of memory being likely on big traces, so jobs
+        // waiting for the load fail and a later job loads it again.
+        synchronized (this) {
+          this.traces.remove(key);
+        }
+        trace.completeExceptionally(e);
+        throw e;
+      }
+    }
+    try {
+      return trace.join();
+    } catch (CompletionException e) {
+      throw new IOException(e.getCause());
+    }
+  }
+
+  // Drops loaded traces from the least recently used until under the limit.
+  private void evict(Key kept) {
+    Iterator<Map.Entry<Key, CompletableFuture<TraceList>>> entries = this.traces.entrySet().iterator();
+    while (this.cached_bytes > this.max_bytes && entries.hasNext()) {
+      Map.Entry<Key, CompletableFuture<TraceList>> entry = entries.next();
+      if (entry.getKey().equals(kept) || !entry.getValue().isDone()) {
+        continue;
+      }
+      this.cached_bytes -= (long) entry.getValue().join().length * ACCESS_BYTES;
+      entries.remove();
+    }
+  }
+
+  private record Key(Path path, long modified, long size) {
+  }
+}
@@ -0,0 +1,65 @@
+import java.util.Arrays;
+
+// Trace kept as parallel primitive arrays, access i is op_codes[i] on
+// addresses[i]. Arrays grow while loading and are trimmed at the end. Traces
+// read from other storage override opCode and address.
+public class TraceList {
+  byte[] op_codes;
+  long[] addresses;
+  public int length = 0;
+  // Dictionaries built so far, by block offset.
+  private BlockDictionary[] block_dictionaries;
+
+  TraceList(int expected_length) {
+    int capacity = Math.max(expected_length, 16);
+    this.op_codes = new byte[capacity];
+    this.addresses = new long[capacity];
+  }
+
+  // Subclasses don't allocate the arrays.
+  TraceList() {
+  }
+
+  public byte opCode(int trace_index) {
+    return this.op_codes[trace_index];
+  }
+
+  public long address(int trace_index) {
+    return this.addresses[trace_index];
+  }
+
+  public void add(byte op_code, long address) {
+    if (this.length == this.addresses.length) {
+      // Grows by half, capped at the largest array size.
+      int capacity = (int) Math.min((long) this.length + (this.length >> 1) + 1, Integer.MAX_VALUE - 8);
+      if (capacity <= this.length) {
+        throw new IllegalStateException("Trace has too many lines");
+      }
+      this.op_codes = Arrays.copyOf(this.op_codes, capacity);
+      this.addresses = Arrays.copyOf(this.addresses, capacity);
+    }
+    this.op_codes[this.length] = op_code;
+    this.addresses[this.length] = address;
+    this.length++;
+  }
+
+  // Dense ids of the blocks of the trace for a block size, built on first
+  // call and kept. Only for traces that are done loading.
+  public synchronized BlockDictionary blockDictionary(int block_offset) {
+    if (this.block_dictionaries == null) {
+      this.block_dictionaries = new BlockDictionary[Long.SIZE];
+    }
+    if (this.block_dictionaries[block_offset] == null) {
+      this.block_dictionaries[block_offset] = new BlockDictionary(this, block_offset);
+    }
+    return this.block_dictionaries[block_offset];
+  }
+
+  // Releases unused capacity once loading is done.
+  public void trim() {
+    if (this.length != this.addresses.length) {
+      this.op_codes = Arrays.copyOf(this.op_codes, this.length);
+      this.addresses = Arrays.copyOf(this.addresses, this.length);
+    }
+  }
+}
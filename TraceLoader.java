@@ -0,0 +1,166 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Reads text traces ("<op> <hex address>" per line) straight from a memory
+// mapped file in a single pass, no String is created per line. Binary traces
+// written by trace_convert are detected and handed to BinaryTrace, gzip
+// compressed text is inflated and parsed on background threads.
+class TraceLoader {
+  // Largest window mapped at once, a line crossing the end of a window is
+  // parsed again from the start of the next one.
+  static final long MAP_WINDOW = 1L << 30;
+  // Roughly the size of a line, used to guess how many accesses a file has.
+  static final int EXPECTED_LINE_BYTES = 11;
+
+  // Value of each hex digit, -1 for everything else.
+  private static final byte[] HEX_VALUES = new byte[256];
+  static {
+    for (int i = 0; i < 256; i++) {
+      HEX_VALUES[i] = (byte) Character.digit((char) i, 16);
+    }
+  }
+
+  static TraceList load(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      if (BinaryTrace.isBinaryTrace(channel)) {
+        return BinaryTrace.load(channel);
+      }
+      if (GzipTraceChannel.isGzip(channel)) {
+        return loadGzip(path, channel.size());
+      }
+      long file_size = channel.size();
+      TraceList trace_list = new TraceList((int) Math.min(file_size / EXPECTED_LINE_BYTES, Integer.MAX_VALUE - 8));
+      long window_start = 0;
+      while (window_start < file_size) {
+        int window_size = (int) Math.min(MAP_WINDOW, file_size - window_start);
+        boolean last_window = window_start + window_size == file_size;
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, window_start, window_size);
+        int parsed = parseLines(buffer, 0, window_size, last_window, trace_list);
+        if (parsed == 0) {
+          throw new IOException("Trace line longer than " + MAP_WINDOW + " bytes");
+        }
+        window_start += parsed;
+      }
+      trace_list.trim();
+      return trace_list;
+    }
+  }
+
+  // One thread inflates, the stream's reader parses, this one only copies the
+  // parsed chunks into the trace.
+  private static TraceList loadGzip(Path path, long compressed_size) throws IOException {
+    TraceList trace_list = new TraceList((int) Math.min(compressed_size / 2, Integer.MAX_VALUE - 8));
+    try (GzipTraceChannel channel = new GzipTraceChannel(path)) {
+      TraceStream stream = new TraceStream(channel);
+      TraceList chunk;
+      while ((chunk = stream.next()) != null) {
+        for (int i = 0; i < chunk.length; i++) {
+          trace_list.add(chunk.op_codes[i], chunk.addresses[i]);
+        }
+        stream.release(chunk);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while loading", e);
+    }
+    trace_list.trim();
+    return trace_list;
+  }
+
+  // Parses every complete line between start and end, returns where the first
+  // unparsed line begins. When this is the final chunk the last line does not
+  // need a line break.
+  static int parseLines(ByteBuffer buffer, int start, int end, boolean final_chunk, TraceList trace_list) {
+    int line_start = start;
+    while (line_start < end) {
+      int line_end = line_start;
+      while (line_end < end) {
+        byte c = buffer.get(line_end);
+        if (c == '\n' || c == '\r') {
+          break;
+        }
+        line_end++;
+      }
+      if (line_end == end && !final_chunk) {
+        break;
+      }
+      parseLine(buffer, line_start, line_end, trace_list);
+      // Accepts "\n", "\r\n" and lone "\r" as line breaks.
+      line_start = line_end;
+      if (line_start < end) {
+        if (buffer.get(line_start) == '\r' && line_start + 1 < end && buffer.get(line_start + 1) == '\n') {
+          line_start += 2;
+        } else {
+          line_start++;
+        }
+      }
+    }
+    return line_start;
+  }
+
+  // Fields are split on single spaces, lines without an address are skipped.
+  private static void parseLine(ByteBuffer buffer, int line_start, int line_end, TraceList trace_list) {
+    int op_end = line_start;
+    while (op_end < line_end && buffer.get(op_end) != ' ') {
+      op_end++;
+    }
+    if (op_end == line_end) {
+      return;
+    }
+
+    byte op_code = Cache.OP_OTHER;
+    if (op_end - line_start == 1) {
+      byte op = buffer.get(line_start);
+      if (op == 'r') {
+        op_code = Cache.OP_READ;
+      } else if (op == 'w') {
+        op_code = Cache.OP_WRITE;
+      }
+    }
+
+    int address_start = op_end + 1;
+    int address_end = address_start;
+    while (address_end < line_end && buffer.get(address_end) != ' ') {
+      address_end++;
+    }
+    if (address_start == address_end) {
+      // Trailing spaces alone do not make an address field.
+      int rest = address_end;
+      while (rest < line_end && buffer.get(rest) == ' ') {
+        rest++;
+      }
+      if (rest == line_end) {
+        return;
+      }
+    }
+    trace_list.add(op_code, parseHex(buffer, address_start, address_end));
+  }
+
+  static long parseHex(ByteBuffer buffer, int start, int end) {
+    // Up to 16 digits fit in 64 bits, read as unsigned. Anything unusual goes
+    // through the parse methods of Long so errors and signs are handled as before.
+    if (end > start && end - start <= 16) {
+      long address = 0;
+      int i = start;
+      for (; i < end; i++) {
+        int digit = HEX_VALUES[buffer.get(i) & 0xff];
+        if (digit < 0) {
+          break;
+        }
+        address = (address << 4) | digit;
+      }
+      if (i == end) {
+        return address;
+      }
+    }
+    byte[] token = new byte[end - start];
+    buffer.get(start, token);
+    String text = new String(token, StandardCharsets.US_ASCII);
+    return text.startsWith("-") ? Long.parseLong(text, 16) : Long.parseUnsignedLong(text, 16);
+  }
+}
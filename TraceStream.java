@@ -0,0 +1,79 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// Reads a text trace from a channel on its own thread, parsing each read into
+// one of a few reusable chunks handed to the simulating thread, so memory
+// stays the same however long the trace is.
+class TraceStream {
+  static final int READ_BYTES = 1 << 20;
+  static final int CHUNKS = 4;
+
+  private final ReadableByteChannel channel;
+  private final BlockingQueue<TraceList> full_chunks = new ArrayBlockingQueue<>(CHUNKS + 1);
+  private final BlockingQueue<TraceList> free_chunks = new ArrayBlockingQueue<>(CHUNKS);
+  // Put after the last chunk, even when reading fails.
+  private final TraceList end_of_trace = new TraceList(0);
+  private volatile Exception error = null;
+
+  TraceStream(ReadableByteChannel channel) {
+    this.channel = channel;
+    for (int i = 0; i < CHUNKS; i++) {
+      this.free_chunks.add(new TraceList(READ_BYTES / TraceLoader.EXPECTED_LINE_BYTES));
+    }
+    Thread reader = new Thread(this::read, "trace-reader");
+    reader.setDaemon(true);
+    reader.start();
+  }
+
+  // Next chunk of accesses, null once the trace is over. Chunks must be given
+  // back with release once simulated.
+  TraceList next() throws IOException, InterruptedException {
+    TraceList chunk = this.full_chunks.take();
+    if (chunk == this.end_of_trace) {
+      if (this.error != null) {
+        throw new IOException(this.error);
+      }
+      return null;
+    }
+    return chunk;
+  }
+
+  void release(TraceList chunk) {
+    chunk.length = 0;
+    this.free_chunks.add(chunk);
+  }
+
+  private void read() {
+    try {
+      ByteBuffer buffer = ByteBuffer.allocate(READ_BYTES);
+      boolean end_of_input = false;
+      while (!end_of_input) {
+        end_of_input = this.channel.read(buffer) < 0;
+        // Keeps reading until buffer is full so chunks are not tiny on pipes.
+        if (!end_of_input && buffer.hasRemaining()) {
+          continue;
+        }
+        TraceList chunk = this.free_chunks.take();
+        int parsed = TraceLoader.parseLines(buffer, 0, buffer.position(), end_of_input, chunk);
+        if (parsed == 0 && !end_of_input && !buffer.hasRemaining()) {
+          throw new IOException("Trace line longer than " + READ_BYTES + " bytes");
+        }
+        this.full_chunks.put(chunk);
+        // Unparsed end of a line goes to the start of the buffer.
+        buffer.limit(buffer.position()).position(parsed);
+        buffer.compact();
+      }
+    } catch (Exception e) {
+      this.error = e;
+    } finally {
+      try {
+        this.full_chunks.put(this.end_of_trace);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
@@ -0,0 +1,53 @@
+import cachesim.bench.SimulatorHooks;
+import java.io.IOException;
+import java.nio.file.Path;
+
+// Bridges benchmarks to the simulator classes of the unnamed package.
+public class BenchHooks implements SimulatorHooks {
+  public Object trace(byte[] op_codes, long[] addresses) {
+    TraceList trace_list = new TraceList(addresses.length);
+    for (int i = 0; i < addresses.length; i++) {
+      trace_list.add(op_codes[i], addresses[i]);
+    }
+    return trace_list;
+  }
+
+  public Object loadTrace(Path path) throws IOException {
+    return TraceLoader.load(path);
+  }
+
+  public void writeBinaryTrace(Object trace, Path path, boolean delta) throws IOException {
+    BinaryTrace.write((TraceList) trace, path, delta);
+  }
+
+  public int length(Object trace) {
+    return ((TraceList) trace).length;
+  }
+
+  public Object hierarchy(Object trace, int block_size, int l1_size, int l1_assoc, int l2_size, int l2_assoc,
+      int replacement_policy, int inclusion_property) {
+    return hierarchy(trace, block_size, l1_size, l1_assoc, l2_size, l2_assoc, replacement_policy, inclusion_property,
+        0);
+  }
+
+  public Object hierarchy(Object trace, int block_size, int l1_size, int l1_assoc, int l2_size, int l2_assoc,
+      int replacement_policy, int inclusion_property, int set_scan_min_ways) {
+    SimulationConfig config = new SimulationConfig(block_size, l1_size, l1_assoc, l2_size, l2_assoc,
+        Integer.toString(replacement_policy), inclusion_property);
+    config.set_scan_min_ways = set_scan_min_ways;
+    return config.buildHierarchy((TraceList) trace);
+  }
+
+  public boolean hasVectorSetScan() {
+    return SetScan.VECTOR != null;
+  }
+
+  public void access(Object l1_cache, Object trace, int trace_index) {
+    TraceList trace_list = (TraceList) trace;
+    ((Cache) l1_cache).checkCache(trace_index, trace_list.opCode(trace_index), trace_list.address(trace_index));
+  }
+
+  public long memoryTraffic(Object l1_cache) {
+    return CacheSimulator.memoryTraffic((Cache) l1_cache);
+  }
+}
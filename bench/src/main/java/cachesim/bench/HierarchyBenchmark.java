@@ -0,0 +1,73 @@
+package cachesim.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End to end L1 plus L2 simulation, per access of the trace, for each
+ * pattern, policy and inclusion property.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HierarchyBenchmark {
+  static final int ACCESSES = 1 << 20;
+
+  @Param({ "sequential", "strided", "random", "zipfian" })
+  public String pattern;
+
+  @Param({ "0", "1", "2" })
+  public int replacement_policy;
+
+  @Param({ "0", "1" })
+  public int inclusion_property;
+
+  @Param({ "64" })
+  public int block_size;
+
+  @Param({ "32768" })
+  public int l1_size;
+
+  @Param({ "8" })
+  public int l1_assoc;
+
+  @Param({ "1048576" })
+  public int l2_size;
+
+  @Param({ "16" })
+  public int l2_assoc;
+
+  private Object trace;
+
+  @Setup
+  public void setup() {
+    SyntheticTrace synthetic = SyntheticTrace.generate(this.pattern, ACCESSES, 42);
+    this.trace = SimulatorHooks.INSTANCE.trace(synthetic.op_codes, synthetic.addresses);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ACCESSES)
+  public long hierarchy() {
+    SimulatorHooks hooks = SimulatorHooks.INSTANCE;
+    Object l1_cache = hooks.hierarchy(this.trace, this.block_size, this.l1_size, this.l1_assoc, this.l2_size,
+        this.l2_assoc, this.replacement_policy, this.inclusion_property);
+    for (int i = 0; i < ACCESSES; i++) {
+      hooks.access(l1_cache, this.trace, i);
+    }
+    return hooks.memoryTraffic(l1_cache);
+  }
+}
@@ -0,0 +1,61 @@
+package cachesim.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per access throughput of an L1 alone for each replacement policy, which
+ * covers Cache.checkCache and the policy's getLRU and cacheAccess. Every
+ * invocation simulates the whole trace on a fresh cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PolicyBenchmark {
+  static final int ACCESSES = 1 << 20;
+  static final int BLOCK_SIZE = 64;
+  static final int L1_SIZE = 64 << 10;
+
+  /** 0 for LRU, 1 for PLRU, 2 for Optimal. */
+  @Param({ "0", "1", "2" })
+  public int replacement_policy;
+
+  @Param({ "1", "2", "4", "8", "16", "32", "64" })
+  public int assoc;
+
+  @Param({ "zipfian" })
+  public String pattern;
+
+  private Object trace;
+
+  @Setup
+  public void setup() {
+    SyntheticTrace synthetic = SyntheticTrace.generate(this.pattern, ACCESSES, 42);
+    this.trace = SimulatorHooks.INSTANCE.trace(synthetic.op_codes, synthetic.addresses);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ACCESSES)
+  public long accesses() {
+    SimulatorHooks hooks = SimulatorHooks.INSTANCE;
+    Object l1_cache = hooks.hierarchy(this.trace, BLOCK_SIZE, L1_SIZE, this.assoc, 0, 0, this.replacement_policy, 0);
+    for (int i = 0; i < ACCESSES; i++) {
+      hooks.access(l1_cache, this.trace, i);
+    }
+    return hooks.memoryTraffic(l1_cache);
+  }
+}
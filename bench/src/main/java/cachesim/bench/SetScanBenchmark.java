@@ -0,0 +1,66 @@
+package cachesim.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per access throughput of an LRU L1 scanning its sets with the scalar loops
+ * or the Vector API kernel, to find the associativity from which the kernel
+ * pays off, SetScan.DEFAULT_MIN_WAYS. Sets stay as many whatever the
+ * associativity, so only the scan gets wider. The vector runs need the
+ * simulator built with "mvn -Psimd install".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class SetScanBenchmark {
+  static final int ACCESSES = 1 << 20;
+  static final int BLOCK_SIZE = 64;
+  static final int SETS = 256;
+
+  @Param({ "4", "8", "16", "32", "64" })
+  public int assoc;
+
+  @Param({ "scalar", "vector" })
+  public String kernel;
+
+  @Param({ "zipfian", "random" })
+  public String pattern;
+
+  private Object trace;
+
+  @Setup
+  public void setup() {
+    if (this.kernel.equals("vector") && !SimulatorHooks.INSTANCE.hasVectorSetScan()) {
+      throw new IllegalStateException("Vector set scan not built, run mvn -Psimd install for the simulator");
+    }
+    SyntheticTrace synthetic = SyntheticTrace.generate(this.pattern, ACCESSES, 42);
+    this.trace = SimulatorHooks.INSTANCE.trace(synthetic.op_codes, synthetic.addresses);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ACCESSES)
+  public long accesses() {
+    SimulatorHooks hooks = SimulatorHooks.INSTANCE;
+    Object l1_cache = hooks.hierarchy(this.trace, BLOCK_SIZE, this.assoc * BLOCK_SIZE * SETS, this.assoc, 0, 0, 0, 0,
+        this.kernel.equals("vector") ? 1 : 0);
+    for (int i = 0; i < ACCESSES; i++) {
+      hooks.access(l1_cache, this.trace, i);
+    }
+    return hooks.memoryTraffic(l1_cache);
+  }
+}
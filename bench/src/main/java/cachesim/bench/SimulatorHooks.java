@@ -0,0 +1,49 @@
+package cachesim.bench;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Access to the simulator classes, which live in the unnamed package and so
+ * can't be imported by benchmarks. The implementation is BenchHooks, also in
+ * the unnamed package, loaded once by name. Handles are passed around as
+ * Object so only this interface is visible to the benchmarks.
+ */
+public interface SimulatorHooks {
+  SimulatorHooks INSTANCE = load();
+
+  /** Wraps generated accesses into a trace. */
+  Object trace(byte[] op_codes, long[] addresses);
+
+  Object loadTrace(Path path) throws IOException;
+
+  void writeBinaryTrace(Object trace, Path path, boolean delta) throws IOException;
+
+  int length(Object trace);
+
+  /** Builds L1 and, when l2_size is not 0, L2. Returns L1. */
+  Object hierarchy(Object trace, int block_size, int l1_size, int l1_assoc, int l2_size, int l2_assoc,
+      int replacement_policy, int inclusion_property);
+
+  /**
+   * Same, levels of at least set_scan_min_ways ways scan whole sets with the
+   * Vector API kernel when it is there. 0 keeps the scalar loops.
+   */
+  Object hierarchy(Object trace, int block_size, int l1_size, int l1_assoc, int l2_size, int l2_assoc,
+      int replacement_policy, int inclusion_property, int set_scan_min_ways);
+
+  /** Whether the Vector API set scan was built and its module is loaded. */
+  boolean hasVectorSetScan();
+
+  void access(Object l1_cache, Object trace, int trace_index);
+
+  long memoryTraffic(Object l1_cache);
+
+  private static SimulatorHooks load() {
+    try {
+      return (SimulatorHooks) Class.forName("BenchHooks").getDeclaredConstructor().newInstance();
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("Simulator classes not found", e);
+    }
+  }
+}
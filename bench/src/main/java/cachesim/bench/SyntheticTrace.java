@@ -0,0 +1,111 @@
+package cachesim.bench;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic synthetic traces so benchmarks don't depend on trace files.
+ * The same pattern, length and seed always give the same accesses.
+ */
+public final class SyntheticTrace {
+  /** Start of generated addresses, all of them stay below 2^31. */
+  static final long BASE_ADDRESS = 0x10000000L;
+  /** Range addresses are spread over. */
+  static final long FOOTPRINT = 64L << 20;
+  static final int WORD = 4;
+  static final int STRIDE = 256;
+  static final double WRITE_RATIO = 0.3;
+  static final double ZIPF_EXPONENT = 1.0;
+  static final int ZIPF_BLOCKS = 1 << 16;
+  static final int ZIPF_BLOCK_BYTES = 64;
+
+  public final byte[] op_codes;
+  public final long[] addresses;
+
+  private SyntheticTrace(int length) {
+    this.op_codes = new byte[length];
+    this.addresses = new long[length];
+  }
+
+  /** Pattern is one of sequential, strided, random or zipfian. */
+  public static SyntheticTrace generate(String pattern, int length, long seed) {
+    SyntheticTrace trace = new SyntheticTrace(length);
+    SplittableRandom random = new SplittableRandom(seed);
+    double[] zipf_cdf = pattern.equals("zipfian") ? zipfCdf() : null;
+    for (int i = 0; i < length; i++) {
+      long offset;
+      switch (pattern) {
+      case "sequential":
+        offset = (long) i * WORD % FOOTPRINT;
+        break;
+      case "strided":
+        offset = (long) i * STRIDE % FOOTPRINT;
+        break;
+      case "random":
+        offset = random.nextLong(FOOTPRINT / WORD) * WORD;
+        break;
+      case "zipfian":
+        // Ranks are scattered over the footprint so hot blocks don't share sets.
+        long rank = zipfRank(zipf_cdf, random.nextDouble());
+        long block = (rank * 0x9E3779B1L) % (FOOTPRINT / ZIPF_BLOCK_BYTES);
+        offset = block * ZIPF_BLOCK_BYTES + random.nextInt(ZIPF_BLOCK_BYTES / WORD) * WORD;
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown trace pattern " + pattern);
+      }
+      trace.addresses[i] = BASE_ADDRESS + offset;
+      trace.op_codes[i] = (byte) (random.nextDouble() < WRITE_RATIO ? 'w' : 'r');
+    }
+    return trace;
+  }
+
+  /** Writes the trace in the text format read by sim_cache. */
+  public void writeText(Path path) throws IOException {
+    try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(path), 1 << 20)) {
+      byte[] line = new byte[20];
+      for (int i = 0; i < this.addresses.length; i++) {
+        int end = line.length;
+        line[--end] = '\n';
+        long address = this.addresses[i];
+        do {
+          line[--end] = (byte) Character.forDigit((int) (address & 0xf), 16);
+          address >>>= 4;
+        } while (address != 0);
+        line[--end] = ' ';
+        line[--end] = this.op_codes[i];
+        out.write(line, end, line.length - end);
+      }
+    }
+  }
+
+  private static double[] zipfCdf() {
+    double[] cdf = new double[ZIPF_BLOCKS];
+    double total = 0;
+    for (int i = 0; i < ZIPF_BLOCKS; i++) {
+      total += 1.0 / Math.pow(i + 1, ZIPF_EXPONENT);
+      cdf[i] = total;
+    }
+    for (int i = 0; i < ZIPF_BLOCKS; i++) {
+      cdf[i] /= total;
+    }
+    return cdf;
+  }
+
+  private static int zipfRank(double[] cdf, double value) {
+    int low = 0;
+    int high = cdf.length - 1;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (cdf[mid] < value) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+}
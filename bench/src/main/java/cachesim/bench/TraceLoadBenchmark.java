@@ -0,0 +1,64 @@
+package cachesim.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Trace loading time for synthetic traces written once per trial, in the
+ * text format and both binary flavours. Divide lines by the score for
+ * throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class TraceLoadBenchmark {
+  @Param({ "1000000", "10000000", "100000000" })
+  public int lines;
+
+  @Param({ "text", "binary", "delta" })
+  public String format;
+
+  @Param({ "random" })
+  public String pattern;
+
+  private Path file;
+
+  @Setup
+  public void setup() throws IOException {
+    SyntheticTrace synthetic = SyntheticTrace.generate(this.pattern, this.lines, 42);
+    this.file = Files.createTempFile("trace", "." + this.format);
+    if (this.format.equals("text")) {
+      synthetic.writeText(this.file);
+    } else {
+      Object trace = SimulatorHooks.INSTANCE.trace(synthetic.op_codes, synthetic.addresses);
+      SimulatorHooks.INSTANCE.writeBinaryTrace(trace, this.file, this.format.equals("delta"));
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(this.file);
+  }
+
+  @Benchmark
+  public int load() throws IOException {
+    return SimulatorHooks.INSTANCE.length(SimulatorHooks.INSTANCE.loadTrace(this.file));
+  }
+}
@@ -0,0 +1,6 @@
+class sim_multicore {
+	public static void main(String[] args) {
+		// Launches a simulation of one trace per core sharing L2 and below.
+		new MultiCoreSimulator(args);
+	}
+}
\ No newline at end of file
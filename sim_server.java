@@ -0,0 +1,6 @@
+class sim_server {
+	public static void main(String[] args) {
+		// Launches a server running simulations sent over a socket.
+		new SimulationServer(args);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,6 @@
+class sim_stack {
+	public static void main(String[] args) {
+		// Launches the single pass LRU analysis over many cache sizes.
+		new StackDistanceAnalyzer(args);
+	}
+}
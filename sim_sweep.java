@@ -0,0 +1,6 @@
+class sim_sweep {
+	public static void main(String[] args) {
+		// Launches a sweep over many configurations of one trace.
+		new SweepSimulator(args);
+	}
+}
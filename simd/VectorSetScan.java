@@ -0,0 +1,57 @@
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// SetScan comparing a group of ways per vector, as wide as the machine allows.
+// Ways left after the last whole group go through the scalar loop, sets of
+// caches worth scanning this way fill whole groups anyway.
+public class VectorSetScan implements SetScan {
+  private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+  private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+
+  public int findLine(long[] lines, int set_base, int ways, long wanted) {
+    int way = 0;
+    for (; way <= ways - LONGS.length(); way += LONGS.length()) {
+      VectorMask<Long> found = LongVector.fromArray(LONGS, lines, set_base + way).and(~Cache.LINE_DIRTY).eq(wanted);
+      if (found.anyTrue()) {
+        return way + found.firstTrue();
+      }
+    }
+    for (; way < ways; way++) {
+      if ((lines[set_base + way] & ~Cache.LINE_DIRTY) == wanted) {
+        return way;
+      }
+    }
+    return -1;
+  }
+
+  // Lowest value first, then where it is.
+  public int findMin(int[] values, int set_base, int ways) {
+    int groups_end = ways - ways % INTS.length();
+    int min = Integer.MAX_VALUE;
+    if (groups_end > 0) {
+      IntVector lowest = IntVector.fromArray(INTS, values, set_base);
+      for (int way = INTS.length(); way < groups_end; way += INTS.length()) {
+        lowest = lowest.min(IntVector.fromArray(INTS, values, set_base + way));
+      }
+      min = lowest.reduceLanes(VectorOperators.MIN);
+    }
+    for (int way = groups_end; way < ways; way++) {
+      min = Math.min(min, values[set_base + way]);
+    }
+    for (int way = 0; way < groups_end; way += INTS.length()) {
+      VectorMask<Integer> found = IntVector.fromArray(INTS, values, set_base + way).eq(min);
+      if (found.anyTrue()) {
+        return way + found.firstTrue();
+      }
+    }
+    for (int way = groups_end; way < ways; way++) {
+      if (values[set_base + way] == min) {
+        return way;
+      }
+    }
+    return 0;
+  }
+}
@@ -0,0 +1,61 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Binary traces read back exactly what was written, whatever the addresses.
+class BinaryTraceTest {
+  @TempDir
+  Path directory;
+
+  @Test
+  void jumpsOfAnySizeRoundTrip() throws Exception {
+    long[] addresses = {0x10, 0x4000000000000010L, 0x10, 0xffffffffffffff00L, 0x7000000000000000L, 0,
+        Long.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE, 0x3fffffffffffffffL, -0x4000000000000000L, 0x20};
+    byte[] op_codes = new byte[addresses.length];
+    for (int i = 0; i < addresses.length; i++) {
+      op_codes[i] = i % 3 == 0 ? Cache.OP_READ : i % 3 == 1 ? Cache.OP_WRITE : Cache.OP_OTHER;
+    }
+    assertRoundTrip(op_codes, addresses);
+  }
+
+  @Test
+  void randomAddressesRoundTrip() throws Exception {
+    Random random = new Random(1);
+    int accesses = 100000;
+    long[] addresses = new long[accesses];
+    byte[] op_codes = new byte[accesses];
+    for (int i = 0; i < accesses; i++) {
+      // Mostly small steps, now and then a jump anywhere in 64 bits.
+      addresses[i] = i > 0 && random.nextInt(8) != 0 ? addresses[i - 1] + random.nextInt(4096) - 2048
+          : random.nextLong();
+      op_codes[i] = random.nextBoolean() ? Cache.OP_READ : Cache.OP_WRITE;
+    }
+    assertRoundTrip(op_codes, addresses);
+  }
+
+  private void assertRoundTrip(byte[] op_codes, long[] addresses) throws Exception {
+    TraceList trace_list = new TraceList(addresses.length);
+    for (int i = 0; i < addresses.length; i++) {
+      trace_list.add(op_codes[i], addresses[i]);
+    }
+    for (boolean delta : new boolean[] {false, true}) {
+      Path path = this.directory.resolve(delta ? "trace.dbin" : "trace.bin");
+      BinaryTrace.write(trace_list, path, delta);
+      try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+        TraceList loaded = BinaryTrace.load(channel);
+        assertEquals(trace_list.length, loaded.length);
+        for (int i = 0; i < trace_list.length; i++) {
+          assertEquals(trace_list.opCode(i), loaded.opCode(i), "op code " + i + (delta ? " delta" : ""));
+          assertEquals(trace_list.address(i), loaded.address(i), "address " + i + (delta ? " delta" : ""));
+        }
+      }
+      Files.delete(path);
+    }
+  }
+}
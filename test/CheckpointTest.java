@@ -0,0 +1,89 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// A run checkpointed part way and restored into a new hierarchy must end as
+// the run that never stopped.
+class CheckpointTest {
+  static final int ACCESSES = 40000;
+  static final int[] CHECKPOINTS = {0, 1, 12345, ACCESSES};
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void lruRoundTrip() throws Exception {
+    assertRoundTrips(config("0", 1));
+  }
+
+  @Test
+  void pseudoLruRoundTrip() throws Exception {
+    assertRoundTrips(config("1", 0));
+  }
+
+  @Test
+  void optimalRoundTrip() throws Exception {
+    assertRoundTrips(config("2", 1));
+  }
+
+  @Test
+  void offHeapRoundTrip() throws Exception {
+    SimulationConfig config = config("0", 1);
+    config.off_heap_levels = 3;
+    assertRoundTrips(config);
+  }
+
+  @Test
+  void highAssociativityRoundTrip() throws Exception {
+    for (String policy : new String[] {"0", "srrip"}) {
+      SimulationConfig config = config(policy, 1);
+      config.high_assoc_threshold = 2;
+      assertRoundTrips(config);
+    }
+  }
+
+  @Test
+  void otherTraceOfSameLengthIsRefused() throws Exception {
+    TraceList trace_list = Hierarchies.load(Hierarchies.randomTrace(ACCESSES, 20));
+    TraceList other = Hierarchies.load(Hierarchies.randomTrace(ACCESSES, 21));
+    SimulationConfig config = config("0", 0);
+    Cache l1_cache = config.buildHierarchy(trace_list);
+    CacheSimulator.simulate(l1_cache, trace_list, 0, ACCESSES / 2);
+    Path path = this.directory.resolve("checkpoint");
+    Checkpoint.write(l1_cache, trace_list, ACCESSES / 2, path);
+    IOException error = assertThrows(IOException.class,
+        () -> Checkpoint.restore(config.buildHierarchy(other), other, path));
+    assertTrue(error.getMessage().contains("another trace"), error.getMessage());
+    assertEquals(ACCESSES / 2, Checkpoint.restore(config.buildHierarchy(trace_list), trace_list, path));
+  }
+
+  private void assertRoundTrips(SimulationConfig config) throws Exception {
+    TraceList trace_list = Hierarchies.load(Hierarchies.randomTrace(ACCESSES, 22));
+    Cache whole = config.buildHierarchy(trace_list);
+    CacheSimulator.simulate(whole, trace_list);
+    String expected = Hierarchies.state(whole);
+    for (int checkpoint_at : CHECKPOINTS) {
+      Cache first = config.buildHierarchy(trace_list);
+      CacheSimulator.simulate(first, trace_list, 0, checkpoint_at);
+      Path path = this.directory.resolve("checkpoint" + checkpoint_at);
+      Checkpoint.write(first, trace_list, checkpoint_at, path);
+      Cache second = config.buildHierarchy(trace_list);
+      int next = Checkpoint.restore(second, trace_list, path);
+      assertEquals(checkpoint_at, next);
+      CacheSimulator.simulate(second, trace_list, next, trace_list.length);
+      assertEquals(expected, Hierarchies.state(second), config + " at " + checkpoint_at);
+    }
+  }
+
+  private static SimulationConfig config(String policy, int inclusion) {
+    SimulationConfig config = new SimulationConfig(32, 1024, 4, 8192, 8, policy, inclusion);
+    config.lower_sizes = new int[] {32768};
+    config.lower_assocs = new int[] {16};
+    return config;
+  }
+}
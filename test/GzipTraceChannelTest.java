@@ -0,0 +1,155 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Gzip files read through the channel cut in many segments, which small files
+// never are on their own.
+class GzipTraceChannelTest {
+  static final int[] SEGMENTS = {1, 2, 3, 8, 64};
+  // A member header as the segment search sees it.
+  static final byte[] FAKE_HEADER = {0x1f, (byte) 0x8b, 8, 0};
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void singleMember() throws Exception {
+    byte[] data = text(3 << 20, 1);
+    assertReads(data, gzip(data, Deflater.DEFAULT_COMPRESSION));
+  }
+
+  @Test
+  void manyMembers() throws Exception {
+    Random random = new Random(2);
+    ByteArrayOutputStream data = new ByteArrayOutputStream();
+    ByteArrayOutputStream file = new ByteArrayOutputStream();
+    for (int i = 0; i < 40; i++) {
+      byte[] member = text(random.nextInt(200000), i);
+      data.write(member);
+      file.write(gzip(member, Deflater.BEST_SPEED));
+    }
+    assertReads(data.toByteArray(), file.toByteArray());
+  }
+
+  @Test
+  void storedBlocksWithFakeHeaders() throws Exception {
+    byte[] data = withFakeHeaders(2 << 20, 3);
+    assertReads(data, gzip(data, Deflater.NO_COMPRESSION));
+
+    ByteArrayOutputStream file = new ByteArrayOutputStream();
+    for (int i = 0; i < 4; i++) {
+      file.write(gzip(Arrays.copyOfRange(data, i * data.length / 4, (i + 1) * data.length / 4),
+          Deflater.NO_COMPRESSION));
+    }
+    assertReads(data, file.toByteArray());
+  }
+
+  @Test
+  void truncatedFileFails() throws Exception {
+    byte[] single = gzip(text(1 << 20, 4), Deflater.DEFAULT_COMPRESSION);
+    byte[] stored = gzip(withFakeHeaders(1 << 20, 5), Deflater.NO_COMPRESSION);
+    byte[] members = concat(single, stored, single);
+    for (byte[] file : new byte[][] {single, stored, members}) {
+      assertFails(Arrays.copyOf(file, file.length - 3));
+      assertFails(Arrays.copyOf(file, file.length / 2));
+    }
+  }
+
+  @Test
+  void corruptCrcFails() throws Exception {
+    byte[] single = gzip(text(1 << 20, 6), Deflater.DEFAULT_COMPRESSION);
+    byte[] stored = gzip(withFakeHeaders(1 << 20, 7), Deflater.NO_COMPRESSION);
+    for (byte[][] members : new byte[][][] {{single}, {stored}, {single, stored}, {stored, single}}) {
+      byte[] file = concat(members);
+      // CRC of the first member, then a byte in the middle of the last.
+      byte[] corrupt = file.clone();
+      corrupt[members[0].length - 8] ^= 1;
+      assertFails(corrupt);
+      corrupt = file.clone();
+      corrupt[file.length - members[members.length - 1].length / 2] ^= 1;
+      assertFails(corrupt);
+    }
+  }
+
+  private void assertReads(byte[] data, byte[] file) throws Exception {
+    Path path = write(file);
+    for (int segments : SEGMENTS) {
+      assertArrayEquals(data, read(path, segments), segments + " segments");
+    }
+  }
+
+  private void assertFails(byte[] file) throws Exception {
+    Path path = write(file);
+    for (int segments : SEGMENTS) {
+      assertThrows(IOException.class, () -> read(path, segments), segments + " segments");
+    }
+  }
+
+  private Path write(byte[] file) throws IOException {
+    Path path = Files.createTempFile(this.directory, "trace", ".gz");
+    Files.write(path, file);
+    return path;
+  }
+
+  private static byte[] read(Path path, int segments) {
+    return assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+      ByteArrayOutputStream data = new ByteArrayOutputStream();
+      try (GzipTraceChannel channel = new GzipTraceChannel(path, segments)) {
+        ByteBuffer buffer = ByteBuffer.allocate(65536);
+        while (channel.read(buffer.clear()) >= 0) {
+          data.write(buffer.array(), 0, buffer.position());
+        }
+      }
+      return data.toByteArray();
+    });
+  }
+
+  private static byte[] gzip(byte[] data, int level) throws IOException {
+    ByteArrayOutputStream file = new ByteArrayOutputStream();
+    try (GZIPOutputStream out = new GZIPOutputStream(file) {
+      {
+        this.def.setLevel(level);
+      }
+    }) {
+      out.write(data);
+    }
+    return file.toByteArray();
+  }
+
+  private static byte[] text(int bytes, long seed) {
+    byte[] text = Hierarchies.randomTrace(bytes / 10 + 1, seed).getBytes();
+    return Arrays.copyOf(text, Math.min(bytes, text.length));
+  }
+
+  // Random bytes with a member header every few hundred bytes.
+  private static byte[] withFakeHeaders(int bytes, long seed) {
+    Random random = new Random(seed);
+    byte[] data = new byte[bytes];
+    random.nextBytes(data);
+    for (int i = random.nextInt(300); i + FAKE_HEADER.length <= bytes; i += 1 + random.nextInt(300)) {
+      System.arraycopy(FAKE_HEADER, 0, data, i, FAKE_HEADER.length);
+    }
+    return data;
+  }
+
+  private static byte[] concat(byte[]... files) {
+    ByteArrayOutputStream file = new ByteArrayOutputStream();
+    for (byte[] part : files) {
+      file.writeBytes(part);
+    }
+    return file.toByteArray();
+  }
+}
@@ -0,0 +1,85 @@
+import java.io.ByteArrayInputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+// Helpers shared by tests running whole hierarchies.
+class Hierarchies {
+  // Counters and lines of every level, equal when two runs ended the same.
+  static String state(Cache l1_cache) {
+    return state(l1_cache, true);
+  }
+
+  // Lines of every level, and counters when asked.
+  static String state(Cache l1_cache, boolean counters) {
+    StringBuilder state = new StringBuilder();
+    int level_number = 1;
+    for (Cache level = l1_cache; level != null; level = level.nextCache, level_number++) {
+      state.append("L").append(level_number).append(":");
+      if (counters) {
+        state.append(' ').append(level.read_hits).append(' ').append(level.read_misses).append(' ')
+            .append(level.write_hits).append(' ').append(level.write_misses).append(' ').append(level.write_back)
+            .append(' ').append(level.mem_trafic);
+      }
+      state.append('\n');
+      for (int slot = 0; slot < level.sets * level.cache_assoc; slot++) {
+        state.append(Long.toHexString(level.cache_memory.get(slot))).append(' ');
+      }
+      state.append('\n');
+    }
+    return state.toString();
+  }
+
+  // Text trace of the accesses, one line each.
+  static String text(byte[] op_codes, long[] addresses) {
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < addresses.length; i++) {
+      text.append((char) op_codes[i]).append(' ').append(Long.toHexString(addresses[i])).append('\n');
+    }
+    return text.toString();
+  }
+
+  static TraceList load(String text) {
+    TraceStream stream = stream(text);
+    TraceList trace_list = new TraceList(16);
+    try {
+      TraceList chunk;
+      while ((chunk = stream.next()) != null) {
+        for (int i = 0; i < chunk.length; i++) {
+          trace_list.add(chunk.op_codes[i], chunk.addresses[i]);
+        }
+        stream.release(chunk);
+      }
+    } catch (Exception e) {
+      throw new AssertionError(e);
+    }
+    return trace_list;
+  }
+
+  static TraceStream stream(String text) {
+    return new TraceStream(
+        Channels.newChannel(new ByteArrayInputStream(text.getBytes(StandardCharsets.US_ASCII))));
+  }
+
+  // Loops over small and large working sets with some random accesses, so
+  // blocks come back at short and long distances.
+  static String randomTrace(int accesses, long seed) {
+    Random random = new Random(seed);
+    byte[] op_codes = new byte[accesses];
+    long[] addresses = new long[accesses];
+    for (int i = 0; i < accesses; i++) {
+      int pattern = random.nextInt(3);
+      long address;
+      if (pattern == 0) {
+        address = (i % 256) * 16L;
+      } else if (pattern == 1) {
+        address = 0x100000 + (i % 4096) * 32L;
+      } else {
+        address = 0x400000 + random.nextInt(1 << 16) * 8L;
+      }
+      op_codes[i] = random.nextInt(4) == 0 ? Cache.OP_WRITE : Cache.OP_READ;
+      addresses[i] = address;
+    }
+    return text(op_codes, addresses);
+  }
+}
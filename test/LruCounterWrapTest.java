@@ -0,0 +1,49 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+// LRU counters are shared by every set of a level and go up on each access,
+// so streams of 2^31 accesses or more renumber them before they wrap. Runs
+// whose counters start just below the limit must end as runs from 0.
+class LruCounterWrapTest {
+  static final int ACCESSES = 60000;
+  static final int START = Integer.MAX_VALUE - ACCESSES / 3;
+
+  @Test
+  void onHeapCountersRenumber() throws Exception {
+    String text = Hierarchies.randomTrace(ACCESSES, 9);
+    for (int inclusion = 0; inclusion <= 1; inclusion++) {
+      SimulationConfig config = new SimulationConfig(32, 1024, 4, 8192, 8, "0", inclusion);
+      assertEquals(run(config, text, 0), run(config, text, START), "inclusion " + inclusion);
+    }
+  }
+
+  @Test
+  void offHeapCountersRenumber() throws Exception {
+    String text = Hierarchies.randomTrace(ACCESSES, 10);
+    SimulationConfig config = new SimulationConfig(32, 1024, 4, 8192, 8, "0", 1);
+    config.off_heap_levels = 3;
+    assertEquals(run(config, text, 0), run(config, text, START));
+  }
+
+  @Test
+  void setScanCountersRenumber() throws Exception {
+    String text = Hierarchies.randomTrace(ACCESSES, 11);
+    SimulationConfig config = new SimulationConfig(32, 4096, 16, 0, 0, "0", 0);
+    config.set_scan_min_ways = 16;
+    assertEquals(run(config, text, 0), run(config, text, START));
+  }
+
+  private static String run(SimulationConfig config, String text, int start) throws Exception {
+    Cache l1_cache = config.buildHierarchy(null);
+    for (Cache level = l1_cache; level != null; level = level.nextCache) {
+      if (level.lru_object instanceof BasicLRU) {
+        ((BasicLRU) level.lru_object).counters = start;
+      } else {
+        ((OffHeapLRU) level.lru_object).counters = start;
+      }
+    }
+    CacheSimulator.simulateStream(l1_cache, Hierarchies.stream(text), 0);
+    return Hierarchies.state(l1_cache);
+  }
+}
@@ -0,0 +1,95 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+// Multi-core runs against the single hierarchy they reduce to, and coherence
+// counts on traces small enough to work out by hand.
+class MultiCoreSimulationTest {
+  static final String[] POLICIES = {"lru", "plru", "srrip", "brrip", "clock", "lfu", "random"};
+
+  @Test
+  void oneCoreMatchesSingleHierarchy() throws Exception {
+    String text = Hierarchies.randomTrace(20000, 15);
+    TraceList trace_list = Hierarchies.load(text);
+    for (String policy : POLICIES) {
+      for (int inclusion = 0; inclusion <= 1; inclusion++) {
+        for (boolean mesi : new boolean[] {false, true}) {
+          SimulationConfig config = new SimulationConfig(32, 1024, 2, 8192, 4, policy, inclusion);
+          Cache l1_cache = config.buildHierarchy(trace_list);
+          CacheSimulator.simulate(l1_cache, trace_list);
+          MultiCoreSimulation simulation = new MultiCoreSimulation(config, new TraceList[] {trace_list}, mesi, 1);
+          simulation.simulate(1);
+          String description = policy + " " + inclusion + (mesi ? " mesi" : " msi");
+          assertEquals(CacheSimulator.memoryTraffic(l1_cache), simulation.memoryTraffic(), description);
+          simulation.l1_caches[0].nextCache = simulation.shared_cache;
+          assertEquals(Hierarchies.state(l1_cache), Hierarchies.state(simulation.l1_caches[0]), description);
+          assertEquals(0, simulation.invalidations[0] + simulation.interventions[0], description);
+          if (mesi) {
+            assertEquals(0, simulation.upgrades[0], description);
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  void mesiWritesExclusiveBlocksWithoutUpgrade() throws Exception {
+    // Core 0 reads then writes a block no other core has, core 1 stays away.
+    TraceList[] traces = {Hierarchies.load("r 100\nw 100\n"), Hierarchies.load("r 2000\nr 2000\n")};
+    assertEquals(1, run(traces, false).upgrades[0]);
+    assertEquals(0, run(traces, true).upgrades[0]);
+  }
+
+  @Test
+  void sharedBlocksNeedUpgradesEitherWay() throws Exception {
+    // Both cores read the block, core 0 writes it, then core 1 reads it back.
+    TraceList[] traces = {Hierarchies.load("r 100\nr 100\nw 100\nr 2000\n"),
+        Hierarchies.load("r 100\nr 100\nr 2000\nr 100\n")};
+    for (boolean mesi : new boolean[] {false, true}) {
+      MultiCoreSimulation simulation = run(traces, mesi);
+      assertEquals(1, simulation.upgrades[0]);
+      assertEquals(0, simulation.upgrades[1]);
+      assertEquals(1, simulation.invalidations[1]);
+      assertEquals(1, simulation.interventions[0]);
+      assertEquals(3, simulation.l1_caches[1].read_misses);
+    }
+  }
+
+  @Test
+  void threadsDontChangeResults() throws Exception {
+    TraceList[] traces = new TraceList[4];
+    for (int core = 0; core < traces.length; core++) {
+      traces[core] = Hierarchies.load(Hierarchies.randomTrace(20000 + core * 1000, 16 + core));
+    }
+    for (int inclusion = 0; inclusion <= 1; inclusion++) {
+      for (int quantum : new int[] {1, 100}) {
+        String expected = summary(run(traces, true, inclusion, quantum, 1));
+        for (int threads : new int[] {2, 4}) {
+          assertEquals(expected, summary(run(traces, true, inclusion, quantum, threads)),
+              inclusion + " " + quantum + " " + threads);
+        }
+      }
+    }
+  }
+
+  private static MultiCoreSimulation run(TraceList[] traces, boolean mesi) throws Exception {
+    return run(traces, mesi, 0, 1, 1);
+  }
+
+  private static MultiCoreSimulation run(TraceList[] traces, boolean mesi, int inclusion, int quantum, int threads)
+      throws Exception {
+    SimulationConfig config = new SimulationConfig(32, 1024, 2, 8192, 4, "lru", inclusion);
+    MultiCoreSimulation simulation = new MultiCoreSimulation(config, traces, mesi, quantum);
+    simulation.simulate(threads);
+    return simulation;
+  }
+
+  private static String summary(MultiCoreSimulation simulation) {
+    StringBuilder summary = new StringBuilder();
+    for (int core = 0; core < simulation.l1_caches.length; core++) {
+      summary.append(simulation.upgrades[core]).append(' ').append(simulation.invalidations[core]).append(' ')
+          .append(simulation.interventions[core]).append('\n').append(Hierarchies.state(simulation.l1_caches[core]));
+    }
+    return summary.append(Hierarchies.state(simulation.shared_cache)).append(simulation.memoryTraffic()).toString();
+  }
+}
@@ -0,0 +1,86 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// High associativity levels kept off the heap put their tag index and LRU
+// links off the heap too, and must end as the same levels on the heap.
+class OffHeapHighAssocTest {
+  static final int ACCESSES = 60000;
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void offHeapMapMatchesHeapMap() {
+    Random random = new Random(12);
+    LongIntHashMap heap = new LongIntHashMap(4096);
+    LongIntHashMap off_heap = new OffHeapLongIntHashMap(4096);
+    for (int step = 0; step < 200000; step++) {
+      long key = random.nextInt(8192) * 0x9E3779B9L;
+      if (random.nextBoolean() && heap.size() < 4096) {
+        int value = random.nextInt(1 << 20);
+        heap.put(key, value);
+        off_heap.put(key, value);
+      } else {
+        heap.remove(key);
+        off_heap.remove(key);
+      }
+      assertEquals(heap.get(key), off_heap.get(key));
+      assertEquals(heap.size(), off_heap.size());
+    }
+    for (long key = 0; key < 8192; key++) {
+      assertEquals(heap.get(key * 0x9E3779B9L), off_heap.get(key * 0x9E3779B9L));
+    }
+  }
+
+  @Test
+  void offHeapLevelsEndAsHeapLevels() throws Exception {
+    String text = Hierarchies.randomTrace(ACCESSES, 13);
+    TraceList trace_list = Hierarchies.load(text);
+    for (String policy : new String[] {"0", "1", "srrip"}) {
+      for (int inclusion = 0; inclusion <= 1; inclusion++) {
+        SimulationConfig heap = config(policy, inclusion, 0);
+        SimulationConfig off_heap = config(policy, inclusion, 3);
+        Cache heap_l1 = heap.buildHierarchy(trace_list);
+        Cache off_heap_l1 = off_heap.buildHierarchy(trace_list);
+        assertTrue(off_heap_l1.nextCache.tag_index instanceof OffHeapLongIntHashMap);
+        if (policy.equals("0")) {
+          assertTrue(off_heap_l1.nextCache.lru_object instanceof OffHeapLinkedLRU);
+        }
+        CacheSimulator.simulate(heap_l1, trace_list);
+        CacheSimulator.simulate(off_heap_l1, trace_list);
+        assertEquals(Hierarchies.state(heap_l1), Hierarchies.state(off_heap_l1), policy + " " + inclusion);
+      }
+    }
+  }
+
+  @Test
+  void checkpointsMoveBetweenHeapAndOffHeap() throws Exception {
+    String text = Hierarchies.randomTrace(ACCESSES, 14);
+    TraceList trace_list = Hierarchies.load(text);
+    Cache whole = config("0", 1, 0).buildHierarchy(trace_list);
+    CacheSimulator.simulate(whole, trace_list);
+    for (int from = 0; from <= 3; from += 3) {
+      Cache first = config("0", 1, from).buildHierarchy(trace_list);
+      CacheSimulator.simulate(first, trace_list, 0, ACCESSES / 2);
+      Path path = this.directory.resolve("checkpoint" + from);
+      Checkpoint.write(first, trace_list, ACCESSES / 2, path);
+      Cache second = config("0", 1, 3 - from).buildHierarchy(trace_list);
+      int next = Checkpoint.restore(second, trace_list, path);
+      CacheSimulator.simulate(second, trace_list, next, trace_list.length);
+      assertEquals(Hierarchies.state(whole), Hierarchies.state(second), "from " + from);
+    }
+  }
+
+  // L2 goes over the high associativity threshold.
+  private static SimulationConfig config(String policy, int inclusion, int off_heap_levels) {
+    SimulationConfig config = new SimulationConfig(32, 1024, 4, 16384, 128, policy, inclusion);
+    config.high_assoc_threshold = 64;
+    config.off_heap_levels = off_heap_levels;
+    return config;
+  }
+}
@@ -0,0 +1,74 @@
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+// A pipelined level that throws must fail the run, not leave the levels
+// above it waiting on a full or empty ring.
+class PipelineFailureTest {
+  // Every access misses everywhere, enough to fill the rings many times.
+  static final int ACCESSES = 10 * EventRing.CAPACITY;
+
+  @Test
+  void failingL2StopsNonInclusiveRun() {
+    assertFails(0, 1);
+  }
+
+  @Test
+  void failingL2StopsInclusiveRun() {
+    assertFails(1, 1);
+  }
+
+  @Test
+  void failingL3StopsLevelsAbove() {
+    assertFails(0, 2);
+  }
+
+  private static void assertFails(int inclusion, int failing_level) {
+    SimulationConfig config = new SimulationConfig(64, 1024, 2, 8192, 4, "0", inclusion);
+    CacheSimulator.parseLevels(config, "65536:8");
+    TraceList trace_list = new TraceList(ACCESSES);
+    for (int i = 0; i < ACCESSES; i++) {
+      trace_list.add(Cache.OP_READ, i * 64L);
+    }
+    Cache l1_cache = config.buildHierarchy(trace_list);
+    Cache level = l1_cache;
+    for (int i = 0; i < failing_level; i++) {
+      level = level.nextCache;
+    }
+    FailingPolicy policy = new FailingPolicy();
+    level.lru_object = policy;
+
+    PipelinedHierarchy pipeline = PipelinedHierarchy.start(l1_cache);
+    IllegalStateException e = assertTimeoutPreemptively(Duration.ofSeconds(60),
+        () -> assertThrows(IllegalStateException.class, () -> {
+          CacheSimulator.simulate(l1_cache, trace_list);
+          pipeline.finish();
+        }));
+    assertSame(policy.failure, e.getCause());
+  }
+
+  // Throws on the first line it is told about.
+  static class FailingPolicy implements LRUInterface {
+    final RuntimeException failure = new RuntimeException("injected");
+
+    public void resetTag(int assoc_index, int address_index_integer) {
+    }
+
+    public void cacheAccess(int assoc_index, int address_index_integer, int traceIndex, long block_address) {
+      throw this.failure;
+    }
+
+    public int getLRU(int address_index_integer) {
+      throw this.failure;
+    }
+
+    public void saveState(CheckpointWriter out) {
+    }
+
+    public void restoreState(CheckpointReader in) {
+    }
+  }
+}
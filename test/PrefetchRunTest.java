@@ -0,0 +1,61 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+// Loaded traces batch runs of accesses to one block, see CacheSimulator.simulate.
+// A prefetch issued on the first access of a run can evict the block, so with
+// prefetchers loaded and streamed runs must still end alike.
+class PrefetchRunTest {
+  static final String[] KINDS = {"next", "stride", "stream"};
+  static final String[] POLICIES = {"0", "lfu", "srrip", "random"};
+
+  @Test
+  void singleLineCacheWithNextLine() throws Exception {
+    String text = "r 0\nr 4\nr 8\nw c\nr 10\nr 14\nr 0\nr 4\n";
+    SimulationConfig config = new SimulationConfig(16, 16, 1, 0, 0, "0", 0);
+    prefetch(config, "next");
+    assertSameRuns(config, text);
+  }
+
+  @Test
+  void stridedRunsWithEveryKindAndPolicy() throws Exception {
+    String text = stridedTrace(20000);
+    for (String kind : KINDS) {
+      for (String policy : POLICIES) {
+        SimulationConfig config = new SimulationConfig(16, 512, 4, 4096, 8, policy, 0);
+        prefetch(config, kind);
+        assertSameRuns(config, text);
+      }
+    }
+  }
+
+  private static void prefetch(SimulationConfig config, String kind) {
+    config.prefetch_kinds = new String[] {kind};
+    config.prefetch_degrees = new int[] {0};
+  }
+
+  private static void assertSameRuns(SimulationConfig config, String text) throws Exception {
+    TraceList trace_list = Hierarchies.load(text);
+    Cache loaded = config.buildHierarchy(trace_list);
+    CacheSimulator.simulate(loaded, trace_list);
+    Cache streamed = config.buildHierarchy(null);
+    CacheSimulator.simulateStream(streamed, Hierarchies.stream(text), 0);
+    String description = config.replacement_policy + " " + config.prefetch_kinds[0];
+    assertEquals(Hierarchies.state(streamed), Hierarchies.state(loaded), description);
+    assertEquals(streamed.prefetcher.issued, loaded.prefetcher.issued, description);
+    assertEquals(streamed.prefetcher.useful, loaded.prefetcher.useful, description);
+  }
+
+  // A few strided streams, every block accessed two or three times in a row.
+  private static String stridedTrace(int blocks) {
+    StringBuilder text = new StringBuilder();
+    long[] strides = {16, 48, 256};
+    for (int i = 0; i < blocks; i++) {
+      long address = 0x10000L * (i % 3) + strides[i % 3] * (i / 3);
+      for (int repeat = 0; repeat < 2 + i % 2; repeat++) {
+        text.append(repeat == 1 ? 'w' : 'r').append(' ').append(Long.toHexString(address + repeat * 4)).append('\n');
+      }
+    }
+    return text.toString();
+  }
+}
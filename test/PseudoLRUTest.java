@@ -0,0 +1,91 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+// PseudoLRU keeps its tree as packed bits with precomputed access masks.
+// Checks its victims against the tree it replaced, one int per node walked
+// recursively, on random accesses, victim searches and invalidations.
+class PseudoLRUTest {
+  static final int[] ASSOCS = {1, 2, 3, 4, 5, 7, 8, 12, 16, 31, 63, 64, 65, 100, 128, 200};
+  static final int SETS = 4;
+  static final int STEPS = 20000;
+
+  @Test
+  void victimsMatchReferenceTree() {
+    for (int cache_assoc : ASSOCS) {
+      PseudoLRU packed = new PseudoLRU(cache_assoc, SETS);
+      ReferenceTree reference = new ReferenceTree(cache_assoc, SETS);
+      Random random = new Random(cache_assoc);
+      for (int step = 0; step < STEPS; step++) {
+        int set = random.nextInt(SETS);
+        int way = random.nextInt(cache_assoc);
+        int action = random.nextInt(10);
+        if (action < 6) {
+          packed.cacheAccess(way, set, step, 0);
+          reference.access(way, set);
+        } else if (action < 9) {
+          assertEquals(reference.victim(set), packed.getLRU(set),
+              "victim of set " + set + " at step " + step + " with " + cache_assoc + " ways");
+        } else {
+          packed.resetTag(way, set);
+          reference.reset(way, set);
+        }
+      }
+    }
+  }
+
+  // Node mid of the binary search over ways, as PseudoLRU used to keep it.
+  static class ReferenceTree {
+    final int cache_assoc;
+    final int[][] nodes;
+
+    ReferenceTree(int cache_assoc, int sets) {
+      this.cache_assoc = cache_assoc;
+      this.nodes = new int[sets][cache_assoc];
+      for (int[] set_nodes : this.nodes) {
+        Arrays.fill(set_nodes, 1);
+      }
+    }
+
+    void access(int way, int set) {
+      access(this.nodes[set], 0, this.cache_assoc - 1, way);
+    }
+
+    private void access(int[] set_nodes, int left_index, int right_index, int way) {
+      if (right_index >= left_index) {
+        int mid = left_index + (right_index - left_index) / 2;
+        if (way <= mid) {
+          set_nodes[mid] = 0;
+          access(set_nodes, left_index, mid - 1, way);
+        } else {
+          set_nodes[mid] = 1;
+          access(set_nodes, mid + 1, right_index, way);
+        }
+      }
+    }
+
+    int victim(int set) {
+      int[] set_nodes = this.nodes[set];
+      int left_index = 0;
+      int right_index = this.cache_assoc - 1;
+      int mid = 0;
+      while (right_index >= left_index) {
+        mid = left_index + (right_index - left_index) / 2;
+        if (set_nodes[mid] == 1) {
+          set_nodes[mid] = 0;
+          right_index = mid - 1;
+        } else {
+          set_nodes[mid] = 1;
+          left_index = mid + 1;
+        }
+      }
+      return Math.min(mid + set_nodes[mid], this.cache_assoc - 1);
+    }
+
+    void reset(int way, int set) {
+      this.nodes[set][way] = 0;
+    }
+  }
+}
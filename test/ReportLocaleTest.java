@@ -0,0 +1,79 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+// Reports are read by scripts, so numbers must not follow a default locale
+// with a decimal comma.
+class ReportLocaleTest {
+  private Locale saved;
+
+  @BeforeEach
+  void useGermanLocale() {
+    this.saved = Locale.getDefault();
+    Locale.setDefault(Locale.GERMANY);
+  }
+
+  @AfterEach
+  void restoreLocale() {
+    Locale.setDefault(this.saved);
+  }
+
+  @Test
+  void csvRowsKeepTheirColumns() throws Exception {
+    String row = ReportWriter.csvRow(config("0"), simulated(config("0")));
+    assertEquals(ReportWriter.CSV_COLUMNS.length, row.split(",").length, row);
+    assertTrue(row.matches(".*,0\\.[0-9]{6},.*"), row);
+  }
+
+  @Test
+  void jsonRowsStayValid() throws Exception {
+    for (String policy : new String[] {"0", "lru"}) {
+      String row = ReportWriter.jsonRow(config(policy), simulated(config(policy)));
+      assertTrue(row.contains("\"l1_miss_rate\":0."), row);
+      assertTrue(row.contains("\"replacement_policy\":\"" + policy + "\","), row);
+    }
+  }
+
+  @Test
+  void textAndMetricsUseDecimalPoints() throws Exception {
+    SimulationConfig config = config("0");
+    Cache l1_cache = config.buildHierarchy(null);
+    CacheMetrics.enable(l1_cache, 1000);
+    TraceList trace_list = Hierarchies.load(Hierarchies.randomTrace(5000, 17));
+    CacheSimulator.simulate(l1_cache, trace_list);
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    ReportWriter report = new ReportWriter(stream);
+    report.writeText("", l1_cache, false);
+    report.writeJson(config, "trace", l1_cache, false);
+    report.writeCsv(config, l1_cache, false);
+    report.flush();
+    String output = stream.toString(StandardCharsets.UTF_8);
+    assertTrue(output.contains("L1 miss rate:              0."), output);
+    assertTrue(!output.matches("(?s).*[0-9],[0-9]{6}[^0-9].*"), output);
+  }
+
+  @Test
+  void stackDistanceRowsKeepTheirColumns() {
+    SetDistances distances = new SetDistances(1);
+    distances.max_assoc = 2;
+    distances.histogram = new long[][] {{1, 1, 1}, {0, 1, 2}, {0, 0, 0}};
+    assertEquals("16,32,2,1,3,1,3,2,0.500000", distances.row(16, 32, 2));
+  }
+
+  private static SimulationConfig config(String policy) {
+    return new SimulationConfig(32, 1024, 2, 8192, 4, policy, 0);
+  }
+
+  private static Cache simulated(SimulationConfig config) {
+    TraceList trace_list = Hierarchies.load(Hierarchies.randomTrace(5000, 18));
+    Cache l1_cache = config.buildHierarchy(trace_list);
+    CacheSimulator.simulate(l1_cache, trace_list);
+    return l1_cache;
+  }
+}
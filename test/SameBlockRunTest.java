@@ -0,0 +1,31 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+// Loaded traces count runs of same-block accesses at once, see
+// CacheSimulator.simulate, and must end like streamed traces, which don't.
+class SameBlockRunTest {
+  @Test
+  void firstAccessToLastBlockStartsNoRun() throws Exception {
+    assertSameRuns(new SimulationConfig(1, 16, 1, 0, 0, "0", 0), "r ffffffffffffffff\nr 0\n");
+    assertSameRuns(new SimulationConfig(1, 16, 1, 0, 0, "0", 0), "w ffffffffffffffff\nr ffffffffffffffff\nr 0\n");
+    assertSameRuns(new SimulationConfig(16, 64, 2, 256, 4, "0", 0),
+        "r fffffffffffffff0\nw ffffffffffffffff\nr 0\nr fffffffffffffff8\n");
+  }
+
+  @Test
+  void randomRuns() throws Exception {
+    for (String policy : new String[] {"0", "1", "2", "lfu"}) {
+      assertSameRuns(new SimulationConfig(16, 512, 4, 4096, 8, policy, 0), Hierarchies.randomTrace(20000, 5));
+    }
+  }
+
+  private static void assertSameRuns(SimulationConfig config, String text) throws Exception {
+    TraceList trace_list = Hierarchies.load(text);
+    Cache loaded = config.buildHierarchy(trace_list);
+    CacheSimulator.simulate(loaded, trace_list);
+    Cache streamed = config.buildHierarchy(trace_list);
+    CacheSimulator.simulateStream(streamed, Hierarchies.stream(text), 0);
+    assertEquals(Hierarchies.state(streamed), Hierarchies.state(loaded), config.toString());
+  }
+}
@@ -0,0 +1,77 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+// Sampled runs: functional warming must leave the state a full simulation
+// would, streamed and loaded traces must sample the same windows, and the
+// estimates must hold against a full simulation. The last check is the
+// validation of --sample-validate on a synthetic trace.
+class SampledSimulationTest {
+  static final String[] POLICIES = {"0", "1", "lfu", "srrip", "random"};
+
+  @Test
+  void warmingLeavesSameState() {
+    TraceList trace_list = Hierarchies.load(Hierarchies.randomTrace(40000, 3));
+    for (String policy : POLICIES) {
+      for (int inclusion = 0; inclusion <= 1; inclusion++) {
+        SimulationConfig config = new SimulationConfig(32, 1024, 2, 8192, 4, policy, inclusion);
+        CacheSimulator.parseLevels(config, "32768:8");
+        Cache checked = config.buildHierarchy(trace_list);
+        Cache warmed = config.buildHierarchy(trace_list);
+        int half = trace_list.length / 2;
+        for (int i = 0; i < half; i++) {
+          checked.checkCache(i, trace_list.opCode(i), trace_list.address(i));
+          warmed.warm(i, trace_list.opCode(i), trace_list.address(i));
+        }
+        String description = "policy " + policy + " inclusion " + inclusion;
+        assertEquals(Hierarchies.state(checked, false), Hierarchies.state(warmed, false), description);
+        for (Cache level = warmed; level != null; level = level.nextCache) {
+          assertEquals(0, level.read_hits + level.read_misses + level.write_hits + level.write_misses
+              + level.write_back + level.mem_trafic, description);
+        }
+        // Replacement state shows in which lines go next.
+        for (int i = half; i < trace_list.length; i++) {
+          checked.checkCache(i, trace_list.opCode(i), trace_list.address(i));
+          warmed.checkCache(i, trace_list.opCode(i), trace_list.address(i));
+        }
+        assertEquals(Hierarchies.state(checked, false), Hierarchies.state(warmed, false), description);
+      }
+    }
+  }
+
+  @Test
+  void streamedAndLoadedTracesSampleAlike() throws Exception {
+    String text = Hierarchies.randomTrace(250000, 4);
+    SimulationConfig config = new SimulationConfig(32, 1024, 2, 8192, 4, "0", 1);
+    for (boolean skip : new boolean[] {false, true}) {
+      SampledSimulation loaded = new SampledSimulation(20000, 2000, 4000, skip);
+      loaded.simulate(config.buildHierarchy(null), Hierarchies.load(text));
+      SampledSimulation streamed = new SampledSimulation(20000, 2000, 4000, skip);
+      streamed.simulate(config.buildHierarchy(null), Hierarchies.stream(text));
+      // The last 10000 accesses don't make a whole interval.
+      assertEquals(12 * 2000, loaded.measured_accesses);
+      assertEquals(loaded.measured_accesses, streamed.measured_accesses);
+      for (int level = 0; level < loaded.levels; level++) {
+        assertEquals(12, loaded.window_counts[level]);
+        assertEquals(loaded.window_counts[level], streamed.window_counts[level]);
+        assertEquals(loaded.missRate(level), streamed.missRate(level));
+        assertEquals(loaded.confidence(level), streamed.confidence(level));
+      }
+    }
+  }
+
+  @Test
+  void estimatesHoldAgainstFullSimulation() {
+    TraceList trace_list = Hierarchies.load(Hierarchies.randomTrace(1000000, 5));
+    SimulationConfig config = new SimulationConfig(32, 8192, 4, 65536, 8, "0", 1);
+    SampledSimulation sampling = new SampledSimulation(20000, 2000, 4000, false);
+    sampling.simulate(config.buildHierarchy(trace_list), trace_list);
+    sampling.validate(config, trace_list);
+    for (int level = 0; level < sampling.levels; level++) {
+      double error = Math.abs(sampling.missRate(level) - sampling.full_rates[level]);
+      assertTrue(error <= sampling.confidence(level), "L" + (level + 1) + " error " + error + " over interval "
+          + sampling.confidence(level));
+    }
+  }
+}
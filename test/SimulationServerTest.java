@@ -0,0 +1,67 @@
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Clients that connect and never send their job must not keep the jobs of
+// others from running.
+class SimulationServerTest {
+  @TempDir
+  Path directory;
+
+  @Test
+  void idleClientsDontBlockJobs() throws Exception {
+    Path trace = this.directory.resolve("trace.txt");
+    Files.writeString(trace, Hierarchies.randomTrace(2000, 19));
+    Path socket = this.directory.resolve("server.sock");
+    Thread server = new Thread(() -> new SimulationServer(new String[] {socket.toString()}));
+    server.setDaemon(true);
+    server.start();
+
+    assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+      List<SocketChannel> idle = new ArrayList<>();
+      idle.add(connect(socket));
+      for (int i = 0; i < Runtime.getRuntime().availableProcessors(); i++) {
+        idle.add(SocketChannel.open(UnixDomainSocketAddress.of(socket)));
+      }
+      try (SocketChannel client = SocketChannel.open(UnixDomainSocketAddress.of(socket))) {
+        client.write(ByteBuffer.wrap(("32 1024 2 8192 4 0 0 " + trace + " --no-contents\n")
+            .getBytes(StandardCharsets.UTF_8)));
+        ByteArrayOutputStream reply = new ByteArrayOutputStream();
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        while (client.read(buffer.clear()) > 0) {
+          reply.write(buffer.array(), 0, buffer.position());
+        }
+        String report = reply.toString(StandardCharsets.UTF_8);
+        assertTrue(report.contains("total memory traffic"), report);
+      } finally {
+        for (SocketChannel channel : idle) {
+          channel.close();
+        }
+      }
+    });
+  }
+
+  // The socket file shows up on bind, slightly before the server listens.
+  private static SocketChannel connect(Path socket) throws Exception {
+    while (true) {
+      try {
+        return SocketChannel.open(UnixDomainSocketAddress.of(socket));
+      } catch (IOException e) {
+        Thread.sleep(10);
+      }
+    }
+  }
+}
@@ -0,0 +1,50 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+// Streams longer than an int counts rebase the trace indexes caches and
+// windowed Optimal get. Rebasing early and often must end as a run that
+// never rebases.
+class StreamRebaseTest {
+  static final int ACCESSES = 60000;
+  static final int LOOKAHEAD = 300;
+  static final int REBASE_AT = 2000;
+
+  @Test
+  void optimalWithLookaheadIgnoresRebasing() throws Exception {
+    String text = Hierarchies.randomTrace(ACCESSES, 7);
+    for (int inclusion = 0; inclusion <= 1; inclusion++) {
+      SimulationConfig config = new SimulationConfig(32, 1024, 2, 8192, 4, "2", inclusion);
+      assertEquals(run(config, text, LOOKAHEAD, CacheSimulator.REBASE_AT), run(config, text, LOOKAHEAD, REBASE_AT),
+          "inclusion " + inclusion);
+    }
+  }
+
+  @Test
+  void lruIgnoresRebasing() throws Exception {
+    String text = Hierarchies.randomTrace(ACCESSES, 8);
+    SimulationConfig config = new SimulationConfig(32, 1024, 2, 8192, 4, "0", 1);
+    assertEquals(run(config, text, 0, CacheSimulator.REBASE_AT), run(config, text, 0, REBASE_AT));
+  }
+
+  // A lookahead far past the end of the trace sees the whole trace, and its
+  // buffers only grow as long as the trace.
+  @Test
+  void longestLookaheadOnShortTrace() throws Exception {
+    String text = Hierarchies.randomTrace(ACCESSES, 9);
+    SimulationConfig config = new SimulationConfig(32, 1024, 2, 8192, 4, "2", 1);
+    Cache l1_cache = config.buildHierarchy(null, CacheSimulator.MAX_LOOKAHEAD);
+    CacheSimulator.simulateStream(l1_cache, Hierarchies.stream(text), CacheSimulator.MAX_LOOKAHEAD);
+    assertEquals(run(config, text, ACCESSES, CacheSimulator.REBASE_AT), Hierarchies.state(l1_cache));
+    for (Cache level = l1_cache; level != null; level = level.nextCache) {
+      assertTrue(((WindowedOptimalLRU) level.lru_object).ring_block.length <= 2 * ACCESSES);
+    }
+  }
+
+  private static String run(SimulationConfig config, String text, int lookahead, int rebase_at) throws Exception {
+    Cache l1_cache = config.buildHierarchy(null, lookahead);
+    CacheSimulator.simulateStream(l1_cache, Hierarchies.stream(text), lookahead, rebase_at);
+    return Hierarchies.state(l1_cache);
+  }
+}
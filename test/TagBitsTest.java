@@ -0,0 +1,101 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+// Lines keep the tag above two state bits. Levels with fewer block offset and
+// set index bits than that still run, and refuse only addresses whose top bits
+// the tag would lose.
+class TagBitsTest {
+  @Test
+  void smallGeometriesMatchScaledOnes() {
+    // Addresses and blocks 4 times larger map to the same sets and tags.
+    Random random = new Random(4);
+    StringBuilder text = new StringBuilder();
+    StringBuilder scaled_text = new StringBuilder();
+    for (int i = 0; i < 20000; i++) {
+      String op = random.nextBoolean() ? "r " : "w ";
+      long address = random.nextInt(1 << 20) & ~0x3c | random.nextInt(64);
+      text.append(op).append(Long.toHexString(address)).append('\n');
+      scaled_text.append(op).append(Long.toHexString(address << 2)).append('\n');
+    }
+    TraceList trace_list = Hierarchies.load(text.toString());
+    TraceList scaled_list = Hierarchies.load(scaled_text.toString());
+    int[][] geometries = {{1, 8, 8, 0, 0}, {1, 2, 1, 8, 2}, {2, 2, 1, 0, 0}, {2, 8, 4, 32, 4}, {1, 64, 2, 4, 4}};
+    for (int[] geometry : geometries) {
+      for (int inclusion = 0; inclusion <= 1; inclusion++) {
+        SimulationConfig config = new SimulationConfig(geometry[0], geometry[1], geometry[2], geometry[3],
+            geometry[4], "0", inclusion);
+        SimulationConfig scaled = new SimulationConfig(geometry[0] * 4, geometry[1] * 4, geometry[2],
+            geometry[3] * 4, geometry[4], "0", inclusion);
+        assertNull(config.validate());
+        Cache l1_cache = config.buildHierarchy(trace_list);
+        CacheSimulator.simulate(l1_cache, trace_list);
+        Cache scaled_l1_cache = scaled.buildHierarchy(scaled_list);
+        CacheSimulator.simulate(scaled_l1_cache, scaled_list);
+        for (Cache level = l1_cache, scaled_level = scaled_l1_cache; level != null; level = level.nextCache,
+            scaled_level = scaled_level.nextCache) {
+          assertEquals(counters(scaled_level), counters(level), config.toString());
+        }
+      }
+    }
+  }
+
+  @Test
+  void addressesNeedingLostBitsAreRefused() {
+    // Block size times sets of 1 loses the top 2 address bits, of 2 the top one.
+    TraceList top_bit = Hierarchies.load("r 0\nr 8000000000000000\n");
+    TraceList second_bit = Hierarchies.load("r 0\nr 4000000000000000\n");
+    assertThrows(IllegalStateException.class, () -> run(new SimulationConfig(1, 8, 8, 0, 0, "0", 0), top_bit));
+    assertThrows(IllegalStateException.class, () -> run(new SimulationConfig(1, 8, 8, 0, 0, "0", 0), second_bit));
+    assertThrows(IllegalStateException.class, () -> run(new SimulationConfig(2, 8, 4, 0, 0, "0", 0), top_bit));
+    assertEquals(2, run(new SimulationConfig(2, 8, 4, 0, 0, "0", 0), second_bit).read_misses);
+    assertThrows(IllegalStateException.class, () -> run(new SimulationConfig(1, 64, 2, 4, 4, "0", 0), top_bit));
+  }
+
+  @Test
+  void smallestFullGeometriesKeepFullTags() {
+    // Direct mapped, 0 and 2^62 share a set and differ only in the top tag bits.
+    TraceList trace_list = Hierarchies.load("r 0\nr 4000000000000000\nr 0\nr 4000000000000000\n");
+    for (int block_size : new int[] {1, 2, 4}) {
+      assertEquals(4, run(new SimulationConfig(block_size, 4, 1, 0, 0, "0", 0), trace_list).read_misses);
+    }
+  }
+
+  @Test
+  void shardsMatchSerialRuns() throws Exception {
+    // Shard caches have fewer set index bits than the whole level, and may keep
+    // fewer than two below the tag. The second geometry does at full size.
+    Random random = new Random(3);
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 20000; i++) {
+      text.append(random.nextBoolean() ? "r " : "w ").append(Long.toHexString(random.nextLong() & ~0x3fL
+          | random.nextInt(64))).append('\n');
+    }
+    TraceList trace_list = Hierarchies.load(text.toString());
+    TraceList low_list = Hierarchies.load(text.toString().replaceAll("(?m)^(.) [89a-f]", "$1 "));
+    assertShardsMatch(new SimulationConfig(2, 16, 1, 64, 2, "0", 0), trace_list);
+    assertShardsMatch(new SimulationConfig(1, 2, 1, 8, 2, "0", 0), low_list);
+  }
+
+  private static void assertShardsMatch(SimulationConfig config, TraceList trace_list) throws Exception {
+    Cache serial = config.buildHierarchy(trace_list);
+    CacheSimulator.simulate(serial, trace_list);
+    Cache sharded = config.buildHierarchy(trace_list);
+    ShardedSimulation.simulate(config, sharded, trace_list, 8);
+    assertEquals(Hierarchies.state(serial, true), Hierarchies.state(sharded, true));
+  }
+
+  private static Cache run(SimulationConfig config, TraceList trace_list) {
+    Cache l1_cache = config.buildHierarchy(trace_list);
+    CacheSimulator.simulate(l1_cache, trace_list);
+    return l1_cache;
+  }
+
+  private static String counters(Cache level) {
+    return level.read_hits + " " + level.read_misses + " " + level.write_hits + " " + level.write_misses + " "
+        + level.write_back + " " + level.mem_trafic;
+  }
+}
@@ -0,0 +1,21 @@
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+class trace_convert {
+	public static void main(String[] args) {
+		// Converts a text trace to the binary format, "-d" for delta encoding.
+		if (args.length < 2 || args.length > 3 || (args.length == 3 && !args[2].equals("-d"))) {
+			System.out.println("<text_trace_file> <binary_trace_file> [-d]");
+			System.exit(0);
+		}
+		try {
+			Path source = Paths.get(args[0]);
+			TraceList trace_list = TraceLoader.load(source);
+			long bytes = BinaryTrace.write(trace_list, Paths.get(args[1]), args.length == 3);
+			System.out.println(trace_list.length + " records, " + source.toFile().length() + " -> " + bytes + " bytes");
+		} catch (Exception e) {
+			System.out.println("Error converting file");
+			System.out.println("Error: " + e);
+		}
+	}
+}